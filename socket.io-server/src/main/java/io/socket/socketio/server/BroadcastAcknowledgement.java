@@ -0,0 +1,161 @@
+package io.socket.socketio.server;
+
+import io.socket.socketio.server.utils.HashedTimingWheel;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects the acknowledgements of a broadcast.
+ * A single instance is registered on every recipient under the same packet id,
+ * so tracking a broadcast only needs one response slot per recipient.
+ * Once the broadcast completes, the instance is removed from recipients that have not responded.
+ */
+final class BroadcastAcknowledgement implements SocketIoSocket.ReceivedByRemoteAcknowledgementCallback {
+
+    private final int mPacketId;
+    private final CompletableFuture<List<Object[]>> mFuture = new CompletableFuture<>();
+    private final ArrayList<Object[]> mResponses = new ArrayList<>();
+    private final ArrayList<SocketIoSocket> mRecipients = new ArrayList<>();
+
+    private int mRecipientCount = -1;
+    private int mClosedCount = 0;
+    private boolean mIsDone = false;
+    private HashedTimingWheel.Timeout mTimeout;
+
+    /**
+     * Create acknowledgement tracking for a broadcast.
+     *
+     * @param packetId Id of the broadcast packet.
+     */
+    BroadcastAcknowledgement(int packetId) {
+        mPacketId = packetId;
+    }
+
+    /**
+     * Get the future that completes with all responses, or the responses received so far on timeout.
+     */
+    CompletableFuture<List<Object[]>> getFuture() {
+        return mFuture;
+    }
+
+    /**
+     * Start the timeout of this broadcast.
+     *
+     * @param timingWheel Timing wheel to schedule timeout on.
+     * @param timeout Timeout in milliseconds.
+     */
+    void scheduleTimeout(HashedTimingWheel timingWheel, long timeout) {
+        final HashedTimingWheel.Timeout timeoutHandle = timingWheel.newTimeout(this::onTimeout, timeout, TimeUnit.MILLISECONDS);
+        synchronized (this) {
+            mTimeout = timeoutHandle;
+        }
+    }
+
+    /**
+     * Set the number of sockets the broadcast was sent to.
+     *
+     * @param recipientCount Number of recipients.
+     */
+    void setRecipientCount(int recipientCount) {
+        final List<Object[]> result;
+        synchronized (this) {
+            mRecipientCount = recipientCount;
+            mResponses.ensureCapacity(recipientCount);
+            result = checkDone();
+        }
+        complete(result);
+    }
+
+    /**
+     * Called when this instance is registered on a recipient.
+     *
+     * @param socket Recipient socket.
+     * @return True if the broadcast waits for the recipient, false if it has already completed.
+     */
+    synchronized boolean addRecipient(SocketIoSocket socket) {
+        if (mIsDone) {
+            return false;
+        }
+
+        mRecipients.add(socket);
+        return true;
+    }
+
+    /**
+     * Called when a recipient closes before acknowledging.
+     */
+    void onRecipientClosed() {
+        final List<Object[]> result;
+        synchronized (this) {
+            mClosedCount++;
+            result = checkDone();
+        }
+        complete(result);
+    }
+
+    @Override
+    public void onReceivedByRemote(Object... args) {
+        final List<Object[]> result;
+        synchronized (this) {
+            if (mIsDone) {
+                return;
+            }
+
+            mResponses.add(args);
+            result = checkDone();
+        }
+        complete(result);
+    }
+
+    @Override
+    public void onTimeout() {
+        final List<Object[]> result;
+        synchronized (this) {
+            result = done();
+        }
+        complete(result);
+    }
+
+    private List<Object[]> checkDone() {
+        if (!mIsDone && mRecipientCount >= 0 && (mResponses.size() + mClosedCount) >= mRecipientCount) {
+            return done();
+        }
+        return null;
+    }
+
+    private List<Object[]> done() {
+        if (mIsDone) {
+            return null;
+        }
+
+        mIsDone = true;
+        if (mTimeout != null) {
+            mTimeout.cancel();
+        }
+        return Collections.unmodifiableList(new ArrayList<>(mResponses));
+    }
+
+    private void complete(List<Object[]> result) {
+        if (result == null) {
+            return;
+        }
+
+        // Recipients that did not respond must not keep this instance until they disconnect
+        final SocketIoSocket[] recipients;
+        synchronized (this) {
+            recipients = mRecipients.toArray(new SocketIoSocket[0]);
+            mRecipients.clear();
+            mRecipients.trimToSize();
+        }
+        for (SocketIoSocket socket : recipients) {
+            socket.unregisterAcknowledgement(mPacketId, this);
+        }
+
+        // Completed outside the lock since dependent stages run on this thread
+        mFuture.complete(result);
+    }
+}
@@ -0,0 +1,146 @@
+package io.socket.socketio.server;
+
+import java.util.Arrays;
+import java.util.BitSet;
+
+/**
+ * Mutable set of socket handles.
+ * Small or sparse sets are stored as a sorted int array, so a room with a single member
+ * costs a few ints no matter how large its handle is. A set switches to a bitset once the
+ * bitset is not larger than the array would be, and back when it becomes sparse again.
+ *
+ * Changes are made in place. Readers that must not block on changes use {@link #snapshot()},
+ * which builds an immutable sorted array on demand and reuses it until the next change.
+ */
+final class HandleSet {
+
+    static final int[] EMPTY = new int[0];
+
+    private static final int INITIAL_CAPACITY = 2;
+    private static final int MIN_DENSE_SIZE = 64;
+
+    private int[] mSparse = new int[INITIAL_CAPACITY];
+    private BitSet mDense = null;
+    private int mSize = 0;
+    private volatile int[] mSnapshot = EMPTY;
+
+    /**
+     * Add a handle to the set.
+     *
+     * @param handle Handle to add.
+     * @return True if the handle was added, false if it is already in the set.
+     */
+    synchronized boolean add(int handle) {
+        if (mDense != null) {
+            if (mDense.get(handle)) {
+                return false;
+            }
+            mDense.set(handle);
+        } else {
+            final int index = Arrays.binarySearch(mSparse, 0, mSize, handle);
+            if (index >= 0) {
+                return false;
+            }
+
+            final int insertIndex = -(index + 1);
+            if (mSize == mSparse.length) {
+                mSparse = Arrays.copyOf(mSparse, mSparse.length * 2);
+            }
+            System.arraycopy(mSparse, insertIndex, mSparse, insertIndex + 1, mSize - insertIndex);
+            mSparse[insertIndex] = handle;
+
+            if (mSize + 1 >= MIN_DENSE_SIZE && mSparse[mSize] < (mSize + 1) * 32) {
+                mDense = new BitSet(mSparse[mSize] + 1);
+                for (int i = 0; i <= mSize; i++) {
+                    mDense.set(mSparse[i]);
+                }
+                mSparse = null;
+            }
+        }
+
+        mSize++;
+        mSnapshot = null;
+        return true;
+    }
+
+    /**
+     * Remove a handle from the set.
+     *
+     * @param handle Handle to remove.
+     * @return True if the handle was removed, false if it is not in the set.
+     */
+    synchronized boolean remove(int handle) {
+        if (mDense != null) {
+            if (!mDense.get(handle)) {
+                return false;
+            }
+            mDense.clear(handle);
+
+            if (mSize - 1 < MIN_DENSE_SIZE / 2 || (mSize - 1) * 64 < mDense.length()) {
+                mSparse = toArray(mDense, Math.max(INITIAL_CAPACITY, mSize - 1));
+                mDense = null;
+            }
+        } else {
+            final int index = Arrays.binarySearch(mSparse, 0, mSize, handle);
+            if (index < 0) {
+                return false;
+            }
+            System.arraycopy(mSparse, index + 1, mSparse, index, mSize - index - 1);
+        }
+
+        mSize--;
+        mSnapshot = null;
+        return true;
+    }
+
+    /**
+     * Get the number of handles in the set.
+     */
+    synchronized int size() {
+        return mSize;
+    }
+
+    /**
+     * Get the lowest handle that is not in the set.
+     */
+    synchronized int nextClear() {
+        if (mDense != null) {
+            return mDense.nextClearBit(0);
+        }
+
+        for (int i = 0; i < mSize; i++) {
+            if (mSparse[i] != i) {
+                return i;
+            }
+        }
+        return mSize;
+    }
+
+    /**
+     * Get the handles in the set.
+     *
+     * @return Sorted array of handles. The array must not be modified.
+     */
+    int[] snapshot() {
+        int[] snapshot = mSnapshot;
+        if (snapshot == null) {
+            synchronized (this) {
+                snapshot = mSnapshot;
+                if (snapshot == null) {
+                    snapshot = (mDense != null)? toArray(mDense, mSize) : Arrays.copyOf(mSparse, mSize);
+                    mSnapshot = snapshot;
+                }
+            }
+        }
+        return snapshot;
+    }
+
+    private static int[] toArray(BitSet bits, int capacity) {
+        final int[] array = new int[capacity];
+        int i = 0;
+        for (int bit = bits.nextSetBit(0); bit >= 0; bit = bits.nextSetBit(bit + 1)) {
+            array[i++] = bit;
+        }
+        return array;
+    }
+}
@@ -0,0 +1,196 @@
+package io.socket.socketio.server;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Resolves the namespace group of a dynamic namespace.
+ * Patterns are matched with a single combined pattern instead of one matcher per pattern.
+ * Names rejected by all patterns are remembered in a bounded cache, so repeated probes of
+ * invalid namespaces do not run the patterns again. Other providers may depend on state
+ * outside of the server, so they are never cached and are checked after the patterns.
+ *
+ * Resolution reads an immutable snapshot of the providers and does not take any lock.
+ */
+final class NamespaceResolver {
+
+    /**
+     * Maximum number of rejected names remembered. The cache is cleared when full.
+     */
+    static final int MAX_REJECTED_NAMESPACES = 4096;
+
+    private volatile State mState = new State(new ArrayList<>(), new ArrayList<>());
+
+    /**
+     * Add a namespace provider.
+     *
+     * @param provider Provider to add.
+     * @param pattern Pattern the provider matches with or null if it is not pattern based.
+     * @param group Group creating the namespaces accepted by the provider.
+     */
+    synchronized void addProvider(SocketIoNamespaceProvider provider, Pattern pattern, SocketIoNamespaceGroupImpl group) {
+        final State state = mState;
+        final List<Entry> patternEntries = new ArrayList<>(state.patternEntries);
+        final List<Entry> providerEntries = new ArrayList<>(state.providerEntries);
+        if (pattern != null) {
+            patternEntries.add(new Entry(provider, pattern, group));
+        } else {
+            providerEntries.add(new Entry(provider, null, group));
+        }
+
+        // Rejected names are kept by the snapshot, so adding a provider also drops them
+        mState = new State(patternEntries, providerEntries);
+    }
+
+    /**
+     * Find the group of a dynamic namespace.
+     *
+     * @param namespace Name of namespace with '/' prefix.
+     * @return Group of the first provider accepting the namespace or null if none does.
+     */
+    SocketIoNamespaceGroupImpl resolve(String namespace) {
+        final State state = mState;
+        if (!state.rejected.contains(namespace)) {
+            final Entry entry = state.matchPatterns(namespace);
+            if (entry != null) {
+                return entry.group;
+            }
+
+            final Set<String> rejected = state.rejected;
+            if (rejected.size() >= MAX_REJECTED_NAMESPACES) {
+                rejected.clear();
+            }
+            rejected.add(namespace);
+        }
+
+        for (Entry entry : state.providerEntries) {
+            if (entry.provider.checkNamespace(namespace)) {
+                return entry.group;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the number of rejected names currently remembered.
+     */
+    int getRejectedCount() {
+        return mState.rejected.size();
+    }
+
+    private static final class Entry {
+
+        final SocketIoNamespaceProvider provider;
+        final Pattern pattern;
+        final SocketIoNamespaceGroupImpl group;
+
+        Entry(SocketIoNamespaceProvider provider, Pattern pattern, SocketIoNamespaceGroupImpl group) {
+            this.provider = provider;
+            this.pattern = pattern;
+            this.group = group;
+        }
+    }
+
+    private static final class State {
+
+        final List<Entry> patternEntries;
+        final List<Entry> providerEntries;
+        final Set<String> rejected = ConcurrentHashMap.newKeySet();
+
+        /**
+         * Pattern combining all patterns as capturing alternatives or null if they cannot be combined.
+         */
+        final Pattern combinedPattern;
+
+        /**
+         * Group index of each pattern in the combined pattern.
+         */
+        final int[] groupIndices;
+
+        State(List<Entry> patternEntries, List<Entry> providerEntries) {
+            this.patternEntries = patternEntries;
+            this.providerEntries = providerEntries;
+
+            final int[] indices = new int[patternEntries.size()];
+            Pattern combined = null;
+            if (patternEntries.size() > 1 && canCombine(patternEntries)) {
+                final StringBuilder regex = new StringBuilder();
+                int groupIndex = 1;
+                for (int i = 0; i < patternEntries.size(); i++) {
+                    final Pattern pattern = patternEntries.get(i).pattern;
+                    if (i > 0) {
+                        regex.append('|');
+                    }
+                    regex.append('(').append(pattern.pattern()).append(')');
+                    indices[i] = groupIndex;
+                    groupIndex += 1 + pattern.matcher("").groupCount();
+                }
+
+                try {
+                    combined = Pattern.compile(regex.toString());
+                } catch (PatternSyntaxException ignore) {
+                    // Patterns that only compile on their own, e.g. with duplicate group names
+                }
+            }
+            combinedPattern = combined;
+            groupIndices = indices;
+        }
+
+        Entry matchPatterns(String namespace) {
+            if (combinedPattern != null) {
+                final Matcher matcher = combinedPattern.matcher(namespace);
+                if (!matcher.matches()) {
+                    return null;
+                }
+                for (int i = 0; i < groupIndices.length; i++) {
+                    if (matcher.start(groupIndices[i]) >= 0) {
+                        return patternEntries.get(i);
+                    }
+                }
+                return null;
+            }
+
+            for (Entry entry : patternEntries) {
+                if (entry.pattern.matcher(namespace).matches()) {
+                    return entry;
+                }
+            }
+            return null;
+        }
+
+        /**
+         * Check if patterns keep their meaning as alternatives of a single pattern.
+         * Flags, inline flags, quoting and back references are not preserved when combining.
+         */
+        private static boolean canCombine(List<Entry> patternEntries) {
+            for (Entry entry : patternEntries) {
+                if (entry.pattern.flags() != 0) {
+                    return false;
+                }
+
+                final String regex = entry.pattern.pattern();
+                for (int i = 0; i < regex.length() - 1; i++) {
+                    if (regex.charAt(i) == '(' && regex.charAt(i + 1) == '?' && i + 2 < regex.length()) {
+                        // Inline flags
+                        final char next = regex.charAt(i + 2);
+                        if (Character.isLetter(next) || next == '-') {
+                            return false;
+                        }
+                    } else if (regex.charAt(i) == '\\') {
+                        final char next = regex.charAt(i + 1);
+                        if ((next >= '1' && next <= '9') || next == 'k' || next == 'Q') {
+                            return false;
+                        }
+                        i++;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -1,11 +1,8 @@
 package io.socket.socketio.server;
 
+import io.socket.socketio.server.parser.JsonCodec;
 import io.socket.socketio.server.parser.Packet;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-
-import java.util.Iterator;
+import io.socket.socketio.server.parser.Parser;
 
 @SuppressWarnings({"BooleanMethodIsAlwaysInverted"})
 final class PacketUtils {
@@ -15,6 +12,7 @@ final class PacketUtils {
     /**
      * Validate args and create packet.
      *
+     * @param jsonCodec Codec to create packet data with.
      * @param type Type of packet to create.
      * @param event Name of event.
      * @param args Data to set.
@@ -22,95 +20,113 @@ final class PacketUtils {
      * @throws IllegalArgumentException If args contain any invalid data type.
      */
     @SuppressWarnings("SameParameterValue")
-    static Packet<?> createDataPacket(int type, String event, Object[] args) throws IllegalArgumentException {
+    static Packet<?> createDataPacket(JsonCodec jsonCodec, int type, String event, Object[] args) throws IllegalArgumentException {
         if (args == null) {
             args = EMPTY_ARGS;
         }
 
-        final JSONArray array = new JSONArray();
+        final Object[] items;
         if (event != null) {
-            array.put(event);
-        }
-        for (Object arg : args) {
-            array.put(arg);
-        }
-        if (!PacketUtils.isPacketDataValid(array)) {
-            throw new IllegalArgumentException("args contain invalid data type.");
+            items = new Object[args.length + 1];
+            items[0] = event;
+            System.arraycopy(args, 0, items, 1, args.length);
+        } else {
+            items = args;
         }
 
-        final Packet<JSONArray> packet = new Packet<>();
+        final Packet<Object> packet = new Packet<>();
         packet.type = type;
-        packet.data = array;
+        packet.data = jsonCodec.createArray(items);
         return packet;
     }
 
-    @SuppressWarnings("Duplicates")
-    private static boolean isPacketDataValid(JSONArray array) {
-        try {
-            for (int idx = 0; idx < array.length(); idx++) {
-                final Object item = array.get(idx);
-
-                if (!isPacketDataValidType(item)) {
-                    return false;
-                }
-                if (item == null) {
-                    array.put(idx, JSONObject.NULL);
-                }
-                if ((item instanceof JSONArray) && !isPacketDataValid((JSONArray)item)) {
-                    return false;
-                }
-                if ((item instanceof JSONObject) && !isPacketDataValid((JSONObject)item)) {
-                    return false;
-                }
-            }
+    /**
+     * Unpack the arguments of an event or ack packet.
+     *
+     * @param jsonCodec Codec the packet data was created with.
+     * @param data Array data of the packet or null.
+     * @return Arguments with JSON null converted to null.
+     */
+    static Object[] unpackData(JsonCodec jsonCodec, Object data) {
+        if (data == null) {
+            return EMPTY_ARGS;
+        }
 
-            return true;
-        } catch (JSONException ignore) {
+        final Object[] result = new Object[jsonCodec.getArrayLength(data)];
+        for (int i = 0; i < result.length; i++) {
+            result[i] = jsonCodec.getArrayElement(data, i);
         }
-        return false;
+        return result;
     }
 
-    @SuppressWarnings("Duplicates")
-    private static boolean isPacketDataValid(JSONObject object) {
-        try {
-            final Iterator<?> keys = object.keys();
-            while (keys.hasNext()) {
-                final Object keyObj = keys.next();
-                if (!(keyObj instanceof String)) {
-                    return false;
-                }
+    /**
+     * Encode packet into engine.io packets ready to be sent over the transport.
+     * The returned packets can be shared between multiple clients and must not be modified.
+     *
+     * @param encoder Encoder to encode packet with.
+     * @param packet Packet to encode.
+     * @return Array of engine.io packets.
+     */
+    static io.socket.engineio.server.parser.Packet<?>[] encodePacket(Parser.Encoder encoder, Packet<?> packet) {
+        final io.socket.engineio.server.parser.Packet<?>[][] result = new io.socket.engineio.server.parser.Packet<?>[1][];
+        encoder.encode(packet, objects -> {
+            final io.socket.engineio.server.parser.Packet<?>[] engineIoPackets = new io.socket.engineio.server.parser.Packet<?>[objects.length];
+            for (int i = 0; i < objects.length; i++) {
+                engineIoPackets[i] = new io.socket.engineio.server.parser.Packet<>(io.socket.engineio.server.parser.Packet.MESSAGE, objects[i]);
+            }
+            result[0] = engineIoPackets;
+        });
+        return result[0];
+    }
 
-                final String key = (String)keyObj;
-                final Object item = object.get(key);
+    /**
+     * Copy a packet encoded by {@link io.socket.socketio.server.parser.IOParser.Encoder} without
+     * namespace and id, inserting the namespace and id into its header.
+     * Only the header frame is copied, binary attachments are shared with the original.
+     *
+     * @param encodedPacket Engine.io packets of the encoded packet.
+     * @param nsp Namespace of the copy.
+     * @param id Id of the copy or -1 for no id.
+     * @return Array of engine.io packets.
+     */
+    static io.socket.engineio.server.parser.Packet<?>[] withHeader(io.socket.engineio.server.parser.Packet<?>[] encodedPacket, String nsp, int id) {
+        final String header = (String) encodedPacket[0].data;
 
-                if (!isPacketDataValidType(item)) {
-                    return false;
-                }
-                if (item == null) {
-                    object.put(key, JSONObject.NULL);
-                }
-                if ((item instanceof JSONArray) && !isPacketDataValid((JSONArray)item)) {
-                    return false;
-                }
-                if ((item instanceof JSONObject) && !isPacketDataValid((JSONObject)item)) {
-                    return false;
-                }
-            }
+        // Namespace follows the type and, for binary packets, the attachment count
+        int index = 1;
+        final int type = header.charAt(0) - '0';
+        if (type == Parser.BINARY_EVENT || type == Parser.BINARY_ACK) {
+            index = header.indexOf('-', index) + 1;
+        }
 
-            return true;
-        } catch (JSONException ignore) {
+        final StringBuilder str = new StringBuilder(header.length() + nsp.length() + 12);
+        str.append(header, 0, index);
+        if (nsp.length() != 0 && !"/".equals(nsp)) {
+            str.append(nsp);
+            str.append(',');
         }
-        return false;
+        if (id >= 0) {
+            str.append(id);
+        }
+        str.append(header, index, header.length());
+
+        final io.socket.engineio.server.parser.Packet<?>[] result = encodedPacket.clone();
+        result[0] = new io.socket.engineio.server.parser.Packet<>(io.socket.engineio.server.parser.Packet.MESSAGE, str.toString());
+        return result;
     }
 
-    private static boolean isPacketDataValidType(Object object) {
-        return ((object == null) ||
-                (object == JSONObject.NULL) ||
-                (object instanceof JSONObject) ||
-                (object instanceof JSONArray) ||
-                (object instanceof CharSequence) ||
-                (object instanceof Number) ||
-                (object instanceof Boolean) ||
-                (object instanceof byte[]));
+    /**
+     * Get the approximate size of an encoded packet on the wire.
+     *
+     * @param packet Engine.io packet to measure.
+     * @return Size in bytes, counting string packets by their number of characters.
+     */
+    static int getEncodedSize(io.socket.engineio.server.parser.Packet<?> packet) {
+        if (packet.data instanceof String) {
+            return ((String) packet.data).length();
+        } else if (packet.data instanceof byte[]) {
+            return ((byte[]) packet.data).length;
+        }
+        return 0;
     }
-}
\ No newline at end of file
+}
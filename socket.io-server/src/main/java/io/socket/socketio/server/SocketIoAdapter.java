@@ -3,10 +3,13 @@ package io.socket.socketio.server;
 import io.socket.engineio.server.Emitter;
 import io.socket.socketio.server.parser.Packet;
 
+import java.util.Collections;
 import java.util.HashSet;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.IntConsumer;
 
 /**
  * Socket.io adapter class for broadcasts.
@@ -28,6 +31,97 @@ public abstract class SocketIoAdapter extends Emitter {
         SocketIoAdapter createAdapter(SocketIoNamespace namespace);
     }
 
+    /**
+     * Options of a broadcast.
+     * Instances are immutable and are usually created by {@link SocketIoBroadcastOperator}.
+     */
+    public static final class BroadcastOptions {
+
+        private final Set<String> mRooms;
+        private final Set<String> mExceptRooms;
+        private final Set<String> mExceptSockets;
+        private final boolean mVolatile;
+        private final boolean mCompress;
+        private final long mTimeout;
+
+        /**
+         * Create broadcast options.
+         *
+         * @param rooms Rooms to send packet to or empty set to send to all sockets.
+         * @param exceptRooms Rooms whose sockets must not receive the packet.
+         * @param exceptSockets Ids of sockets that must not receive the packet.
+         * @param isVolatile Whether the packet may be dropped if a client cannot take it right now.
+         * @param compress Whether the packet should be compressed, see {@link #isCompress()}.
+         * @param timeout Timeout (ms) for acknowledgements or -1 for no timeout.
+         * @throws IllegalArgumentException If any set is null.
+         */
+        public BroadcastOptions(Set<String> rooms,
+                                Set<String> exceptRooms,
+                                Set<String> exceptSockets,
+                                boolean isVolatile,
+                                boolean compress,
+                                long timeout) throws IllegalArgumentException {
+            if (rooms == null || exceptRooms == null || exceptSockets == null) {
+                throw new IllegalArgumentException("rooms, exceptRooms and exceptSockets must not be null.");
+            }
+
+            mRooms = Collections.unmodifiableSet(rooms);
+            mExceptRooms = Collections.unmodifiableSet(exceptRooms);
+            mExceptSockets = Collections.unmodifiableSet(exceptSockets);
+            mVolatile = isVolatile;
+            mCompress = compress;
+            mTimeout = timeout;
+        }
+
+        /**
+         * Gets the rooms to send packet to.
+         *
+         * @return Set of rooms or empty set if packet is sent to all sockets.
+         */
+        public Set<String> getRooms() {
+            return mRooms;
+        }
+
+        /**
+         * Gets the rooms whose sockets must not receive the packet.
+         */
+        public Set<String> getExceptRooms() {
+            return mExceptRooms;
+        }
+
+        /**
+         * Gets the ids of sockets that must not receive the packet.
+         */
+        public Set<String> getExceptSockets() {
+            return mExceptSockets;
+        }
+
+        /**
+         * Gets whether the packet may be dropped if a client cannot take it right now.
+         */
+        public boolean isVolatile() {
+            return mVolatile;
+        }
+
+        /**
+         * Gets whether the packet should be compressed.
+         * The flag is only carried for custom adapters, the engine.io transport
+         * does not support per-packet compression so it currently has no effect.
+         */
+        public boolean isCompress() {
+            return mCompress;
+        }
+
+        /**
+         * Gets the timeout (ms) for acknowledgements.
+         *
+         * @return Timeout value or -1 for no timeout.
+         */
+        public long getTimeout() {
+            return mTimeout;
+        }
+    }
+
     /**
      * The namespace that this adapter serves.
      */
@@ -70,6 +164,88 @@ public abstract class SocketIoAdapter extends Emitter {
      */
     public abstract void broadcast(Packet<?> packet, String[] rooms, String[] socketsExcluded) throws IllegalArgumentException;
 
+    /**
+     * Broadcast a packet to sockets selected by broadcast options.
+     * The default implementation expands except rooms into the list of
+     * excluded sockets and calls {@link #broadcast(Packet, String[], String[])}.
+     * Volatile broadcasts cannot be expressed that way, so they are sent to the recipients
+     * selected with {@link #listClients(String)} by the default implementation instead.
+     * Adapters should override this method to exclude rooms without listing their sockets.
+     *
+     * @param packet Packet to broadcast.
+     * @param options Options of the broadcast.
+     * @throws IllegalArgumentException If packet or options is null.
+     */
+    public void broadcastWithOptions(Packet<?> packet, BroadcastOptions options) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet must not be null.");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null.");
+        }
+
+        if (options.isVolatile()) {
+            final Set<SocketIoSocket> recipients = listRecipients(options);
+            if (recipients.size() > 0) {
+                final io.socket.engineio.server.parser.Packet<?>[] encodedPacket = encodePacket(packet);
+                for (SocketIoSocket socket : recipients) {
+                    socket.sendEncodedPacket(encodedPacket, true);
+                }
+            }
+            return;
+        }
+
+        final Set<String> socketsExcluded = new HashSet<>(options.getExceptSockets());
+        for (String room : options.getExceptRooms()) {
+            for (SocketIoSocket socket : listClients(room)) {
+                socketsExcluded.add(socket.getId());
+            }
+        }
+
+        broadcast(packet,
+                (options.getRooms().size() > 0)? options.getRooms().toArray(new String[0]) : null,
+                (socketsExcluded.size() > 0)? socketsExcluded.toArray(new String[0]) : null);
+    }
+
+    /**
+     * Broadcast a packet that expects acknowledgements from its recipients.
+     * The acknowledgement callback is registered on every recipient under the id of the packet,
+     * so the packet must have an id allocated from the namespace.
+     * The default implementation selects the recipients with {@link #listClients(String)},
+     * encodes the packet once and sends the same encoded packet to every recipient.
+     *
+     * @param packet Packet to broadcast.
+     * @param options Broadcast options.
+     * @param clientCountCallback Called with the number of sockets the packet was sent to.
+     * @param acknowledgementCallback Callback shared by all recipients.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public void broadcastWithAck(Packet<?> packet,
+                                 BroadcastOptions options,
+                                 IntConsumer clientCountCallback,
+                                 SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet must not be null.");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null.");
+        }
+        if (clientCountCallback == null || acknowledgementCallback == null) {
+            throw new IllegalArgumentException("clientCountCallback and acknowledgementCallback must not be null.");
+        }
+
+        final Set<SocketIoSocket> recipients = listRecipients(options);
+        if (recipients.size() > 0) {
+            // Encoding replaces binary data of the packet, so every recipient must get the same encoded packet
+            final io.socket.engineio.server.parser.Packet<?>[] encodedPacket = encodePacket(packet);
+            for (SocketIoSocket socket : recipients) {
+                socket.registerAcknowledgement(packet.id, 0, acknowledgementCallback);
+                socket.sendEncodedPacket(encodedPacket, options.isVolatile());
+            }
+        }
+        clientCountCallback.accept(recipients.size());
+    }
+
     /**
      * Add a socket to the specified room.
      *
@@ -105,4 +281,44 @@ public abstract class SocketIoAdapter extends Emitter {
      * @throws IllegalArgumentException If socket is null.
      */
     public abstract String[] listClientRooms(SocketIoSocket socket) throws IllegalArgumentException;
-}
\ No newline at end of file
+
+    /**
+     * Release the resources of this adapter.
+     * Called when the namespace of this adapter is removed from the server, after all sockets have left it.
+     * The default implementation removes all listeners.
+     */
+    public void close() {
+        off();
+    }
+
+    /**
+     * Get the connected sockets selected by broadcast options.
+     *
+     * @param options Options of the broadcast.
+     * @return Set of recipients.
+     */
+    private Set<SocketIoSocket> listRecipients(BroadcastOptions options) {
+        final Map<String, SocketIoSocket> connectedSockets = mNamespace.getConnectedSockets();
+        final Set<SocketIoSocket> recipients = new LinkedHashSet<>();
+        if (options.getRooms().size() > 0) {
+            for (String room : options.getRooms()) {
+                Collections.addAll(recipients, listClients(room));
+            }
+        } else {
+            recipients.addAll(connectedSockets.values());
+        }
+        for (String room : options.getExceptRooms()) {
+            for (SocketIoSocket socket : listClients(room)) {
+                recipients.remove(socket);
+            }
+        }
+        recipients.removeIf(socket -> options.getExceptSockets().contains(socket.getId()) ||
+                !connectedSockets.containsKey(socket.getId()));
+        return recipients;
+    }
+
+    private io.socket.engineio.server.parser.Packet<?>[] encodePacket(Packet<?> packet) {
+        packet.nsp = mNamespace.getName();
+        return PacketUtils.encodePacket(mNamespace.getServer().getEncoder(), packet);
+    }
+}
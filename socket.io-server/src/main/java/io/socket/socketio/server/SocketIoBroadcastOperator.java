@@ -0,0 +1,156 @@
+package io.socket.socketio.server;
+
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Immutable builder for broadcasts.
+ * Every method returns a new instance, so an operator can be stored and reused.
+ *
+ * Example: namespace.to("room1").except("room2").asVolatile().emit("foo", "bar");
+ */
+@SuppressWarnings("WeakerAccess")
+public final class SocketIoBroadcastOperator {
+
+    private final SocketIoNamespace mNamespace;
+    private final Set<String> mRooms;
+    private final Set<String> mExceptRooms;
+    private final Set<String> mExceptSockets;
+    private final boolean mVolatile;
+    private final boolean mCompress;
+    private final long mTimeout;
+
+    SocketIoBroadcastOperator(SocketIoNamespace namespace) {
+        this(namespace, Collections.emptySet(), Collections.emptySet(), Collections.emptySet(), false, true, -1);
+    }
+
+    SocketIoBroadcastOperator(SocketIoNamespace namespace, String socketExcluded) {
+        this(namespace, Collections.emptySet(), Collections.emptySet(), Collections.singleton(socketExcluded), false, true, -1);
+    }
+
+    private SocketIoBroadcastOperator(SocketIoNamespace namespace,
+                                      Set<String> rooms,
+                                      Set<String> exceptRooms,
+                                      Set<String> exceptSockets,
+                                      boolean isVolatile,
+                                      boolean compress,
+                                      long timeout) {
+        mNamespace = namespace;
+        mRooms = rooms;
+        mExceptRooms = exceptRooms;
+        mExceptSockets = exceptSockets;
+        mVolatile = isVolatile;
+        mCompress = compress;
+        mTimeout = timeout;
+    }
+
+    /**
+     * Target the specified rooms in addition to rooms already targeted.
+     * If no room is targeted, the broadcast is sent to all sockets.
+     *
+     * @param rooms Rooms to send message to.
+     * @return New operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator to(String... rooms) throws IllegalArgumentException {
+        return new SocketIoBroadcastOperator(mNamespace, union(mRooms, rooms), mExceptRooms, mExceptSockets, mVolatile, mCompress, mTimeout);
+    }
+
+    /**
+     * Alias of {@link #to(String...)}.
+     *
+     * @param rooms Rooms to send message to.
+     * @return New operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator in(String... rooms) throws IllegalArgumentException {
+        return to(rooms);
+    }
+
+    /**
+     * Exclude sockets that have joined the specified rooms.
+     *
+     * @param rooms Rooms to exclude.
+     * @return New operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator except(String... rooms) throws IllegalArgumentException {
+        return new SocketIoBroadcastOperator(mNamespace, mRooms, union(mExceptRooms, rooms), mExceptSockets, mVolatile, mCompress, mTimeout);
+    }
+
+    /**
+     * Mark the broadcast as volatile.
+     * A volatile message may be dropped for clients that cannot take it right now.
+     *
+     * @return New operator instance.
+     */
+    public SocketIoBroadcastOperator asVolatile() {
+        return new SocketIoBroadcastOperator(mNamespace, mRooms, mExceptRooms, mExceptSockets, true, mCompress, mTimeout);
+    }
+
+    /**
+     * Set whether the message should be compressed.
+     * The flag is passed to the adapter in the broadcast options. The engine.io transport does not
+     * support per-packet compression, so it has no effect on the built-in adapter.
+     *
+     * @param compress Compression flag.
+     * @return New operator instance.
+     */
+    public SocketIoBroadcastOperator compress(boolean compress) {
+        return new SocketIoBroadcastOperator(mNamespace, mRooms, mExceptRooms, mExceptSockets, mVolatile, compress, mTimeout);
+    }
+
+    /**
+     * Set the timeout for acknowledgements of the broadcast.
+     *
+     * @param timeout Timeout in milliseconds or -1 for no timeout.
+     * @return New operator instance.
+     */
+    public SocketIoBroadcastOperator timeout(long timeout) {
+        return new SocketIoBroadcastOperator(mNamespace, mRooms, mExceptRooms, mExceptSockets, mVolatile, mCompress, timeout);
+    }
+
+    /**
+     * Gets the adapter options of this broadcast.
+     */
+    public SocketIoAdapter.BroadcastOptions getOptions() {
+        return new SocketIoAdapter.BroadcastOptions(mRooms, mExceptRooms, mExceptSockets, mVolatile, mCompress, mTimeout);
+    }
+
+    /**
+     * Broadcast a message to the selected sockets.
+     *
+     * @param event Name of event to raise on remote client.
+     * @param args Arguments to send. Supported types are: JSONObject, JSONArray, null
+     * @throws IllegalArgumentException If event is null or argument is not of supported type.
+     */
+    public void emit(String event, Object... args) throws IllegalArgumentException {
+        mNamespace.broadcast(getOptions(), event, args);
+    }
+
+    /**
+     * Broadcast a message to the selected sockets and collect their acknowledgements.
+     * The timeout of this operator limits the time to wait for acknowledgements.
+     *
+     * @param event Name of event to raise on remote client.
+     * @param args Arguments to send. Supported types are: JSONObject, JSONArray, null
+     * @return Future that completes with all responses, or the responses received so far on timeout.
+     * @throws IllegalArgumentException If event is null or argument is not of supported type.
+     */
+    public CompletableFuture<List<Object[]>> emitWithAck(String event, Object... args) throws IllegalArgumentException {
+        return mNamespace.broadcastWithAck(getOptions(), event, args);
+    }
+
+    private static Set<String> union(Set<String> set, String[] items) throws IllegalArgumentException {
+        if (items == null) {
+            throw new IllegalArgumentException("rooms must not be null.");
+        }
+
+        final Set<String> result = new LinkedHashSet<>(set);
+        Collections.addAll(result, items);
+        return Collections.unmodifiableSet(result);
+    }
+}
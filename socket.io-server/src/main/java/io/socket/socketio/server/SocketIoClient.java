@@ -2,16 +2,21 @@ package io.socket.socketio.server;
 
 import io.socket.engineio.server.EngineIoSocket;
 import io.socket.engineio.server.ReadyState;
+import io.socket.socketio.server.parser.DecodingLimitException;
 import io.socket.socketio.server.parser.IOParser;
 import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
-import org.json.JSONException;
-import org.json.JSONObject;
 
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Represents connection to one client.
@@ -28,11 +33,30 @@ public final class SocketIoClient {
     private final Map<String, SocketIoSocket> mSockets = new ConcurrentHashMap<>();
     private final Map<String, SocketIoSocket> mNamespaceSockets = new ConcurrentHashMap<>();
 
+    /**
+     * Bytes handed to the engine.io socket since the transport was last drained.
+     */
+    private final AtomicLong mPendingBytes = new AtomicLong(0);
+    private final AtomicLong mDroppedVolatilePacketCount = new AtomicLong(0);
+    private final AtomicLong mDroppedPacketCount = new AtomicLong(0);
+
+    /**
+     * Packets waiting for the engine.io socket to drain, guarded by the queue itself.
+     */
+    private final ArrayDeque<OutboundEntry> mOutboundQueue = new ArrayDeque<>();
+    private long mOutboundQueueBytes = 0;
+    private boolean mIsFlushing = false;
+    private boolean mIsBackpressured = false;
+    private ScheduledFuture<?> mCoalesceFuture = null;
+
     SocketIoClient(SocketIoServer server, EngineIoSocket connection) {
         mServer = server;
         mConnection = connection;
         mEncoder = server.getEncoder();
-        mDecoder = new IOParser.Decoder();
+        mDecoder = server.getOptions().getParserFactory().createDecoder(
+                server.getOptions().getJsonCodec(),
+                server.getDecoderLimits(),
+                server.getOptions().isLazyEventDecoding());
         mId = connection.getId();
 
         setup();
@@ -65,16 +89,135 @@ public final class SocketIoClient {
      * @param packet Packet to send.
      */
     public void sendPacket(final Packet<?> packet) {
+        sendPacket(packet, false);
+    }
+
+    /**
+     * Get the number of volatile packets dropped because the transport could not take them.
+     */
+    public long getDroppedVolatilePacketCount() {
+        return mDroppedVolatilePacketCount.get();
+    }
+
+    /**
+     * Sends a packet over the transport.
+     * Volatile packets are dropped without encoding if the transport cannot take them right now.
+     *
+     * @param packet Packet to send.
+     * @param isVolatile Whether the packet can be dropped.
+     */
+    void sendPacket(final Packet<?> packet, boolean isVolatile) {
         if (mConnection.getReadyState() == ReadyState.OPEN) {
-            mEncoder.encode(packet, objects -> {
-                // TODO: Check for volatile flag
+            if (isVolatile && !isWritable()) {
+                mDroppedVolatilePacketCount.incrementAndGet();
+                return;
+            }
+
+            sendEncodedPacket(PacketUtils.encodePacket(mEncoder, packet), isVolatile);
+        }
+    }
+
+    /**
+     * Get the number of packets waiting in the outbound queue of this client.
+     * Packets are held in the queue while the transport is busy sending earlier data.
+     */
+    public int getOutboundQueueSize() {
+        synchronized (mOutboundQueue) {
+            return mOutboundQueue.size();
+        }
+    }
+
+    /**
+     * Get the number of bytes waiting in the outbound queue of this client.
+     */
+    public long getOutboundQueueBytes() {
+        synchronized (mOutboundQueue) {
+            return mOutboundQueueBytes;
+        }
+    }
 
-                for (Object item : objects) {
-                    final io.socket.engineio.server.parser.Packet<Object> engineIoPacket = new io.socket.engineio.server.parser.Packet<>(io.socket.engineio.server.parser.Packet.MESSAGE);
-                    engineIoPacket.data = item;
-                    mConnection.send(engineIoPacket);
+    /**
+     * Get the number of packets dropped because the outbound queue was full.
+     */
+    public long getDroppedPacketCount() {
+        return mDroppedPacketCount.get();
+    }
+
+    /**
+     * Sends an already encoded packet over the transport.
+     * The engine.io packets may be shared with other clients and are not modified.
+     *
+     * @param packets Engine.io packets of a single encoded socket.io packet.
+     * @param isVolatile Whether the packet can be dropped.
+     */
+    void sendEncodedPacket(io.socket.engineio.server.parser.Packet<?>[] packets, boolean isVolatile) {
+        if (mConnection.getReadyState() != ReadyState.OPEN) {
+            return;
+        }
+
+        final SocketIoServerOptions options = mServer.getOptions();
+        boolean notifyBackpressure = false;
+        boolean disconnect = false;
+        boolean flushNow = false;
+        synchronized (mOutboundQueue) {
+            if (isVolatile && !isWritable()) {
+                mDroppedVolatilePacketCount.incrementAndGet();
+                return;
+            }
+
+            final OutboundEntry entry = new OutboundEntry(packets, isVolatile);
+            mOutboundQueue.addLast(entry);
+            mOutboundQueueBytes += entry.size;
+
+            if (isOutboundQueueFull(options)) {
+                switch (options.getOutboundQueuePolicy()) {
+                    case DROP_OLDEST:
+                        while (isOutboundQueueFull(options) && !mOutboundQueue.isEmpty()) {
+                            removeOutboundEntry(mOutboundQueue.removeFirst());
+                        }
+                        break;
+                    case DROP_VOLATILE:
+                        final Iterator<OutboundEntry> iterator = mOutboundQueue.iterator();
+                        while (isOutboundQueueFull(options) && iterator.hasNext()) {
+                            final OutboundEntry queuedEntry = iterator.next();
+                            if (queuedEntry.isVolatile) {
+                                iterator.remove();
+                                removeOutboundEntry(queuedEntry);
+                            }
+                        }
+                        disconnect = isOutboundQueueFull(options);
+                        break;
+                    case DISCONNECT:
+                        disconnect = true;
+                        break;
+                    case NOTIFY:
+                        notifyBackpressure = !mIsBackpressured;
+                        mIsBackpressured = true;
+                        break;
                 }
-            });
+            }
+
+            if (disconnect) {
+                mDroppedPacketCount.addAndGet(mOutboundQueue.size());
+                mOutboundQueue.clear();
+                mOutboundQueueBytes = 0;
+            } else {
+                flushNow = shouldFlushOutboundQueue(options);
+            }
+        }
+
+        if (disconnect) {
+            close();
+            return;
+        }
+        if (notifyBackpressure) {
+            for (SocketIoSocket socket : mSockets.values()) {
+                socket.onBackpressure();
+            }
+        }
+
+        if (flushNow) {
+            flushOutboundQueue();
         }
     }
 
@@ -84,21 +227,43 @@ public final class SocketIoClient {
      * @param namespace Namespace to connect to.
      */
     public void connect(String namespace, Object data) {
-        if (mServer.hasNamespace(namespace) || mServer.checkNamespace(namespace)) {
-            doConnect(namespace, data);
-        } else {
-            final JSONObject errorData = new JSONObject();
-            try {
-                errorData.put("message", "Invalid namespace");
-            } catch (JSONException ignore) {
+        SocketIoNamespaceImpl nsp;
+        SocketIoSocket socket = null;
+        while ((nsp = mServer.findNamespace(namespace)) != null) {
+            // Null if the namespace was evicted after it was found, the next lookup creates it again
+            socket = nsp.createSocket(this, data);
+            if (socket != null) {
+                break;
             }
+        }
 
-            final Packet<Object> packet = new Packet<>(Parser.CONNECT_ERROR);
-            packet.nsp = namespace;
-            packet.data = errorData;
+        if (socket == null) {
+            sendConnectError(namespace, "Invalid namespace");
+            return;
+        }
 
-            sendPacket(packet);
+        if (!nsp.hasMiddlewares()) {
+            doConnect(nsp, socket, namespace);
+            return;
         }
+
+        final SocketIoNamespaceImpl pendingNamespace = nsp;
+        final SocketIoSocket pendingSocket = socket;
+        nsp.runMiddlewares(socket).whenComplete((ignore, error) -> {
+            if (error == null) {
+                try {
+                    doConnect(pendingNamespace, pendingSocket, namespace);
+                } catch (Exception ex) {
+                    onError(ex.getMessage());
+                }
+            } else {
+                // Rejected sockets never joined a room or received the connect packet
+                pendingNamespace.abort(pendingSocket);
+
+                final Throwable cause = (error instanceof CompletionException && error.getCause() != null)? error.getCause() : error;
+                sendConnectError(namespace, (cause.getMessage() != null)? cause.getMessage() : "Connection rejected");
+            }
+        });
     }
 
     /**
@@ -134,6 +299,98 @@ public final class SocketIoClient {
         return mConnection;
     }
 
+    /**
+     * Check if the transport can take more data right now.
+     * The transport is writable if the data pending in the engine.io write
+     * buffer and the outbound queue is within the volatile buffer threshold.
+     */
+    private boolean isWritable() {
+        synchronized (mOutboundQueue) {
+            return (mPendingBytes.get() + mOutboundQueueBytes) <= mServer.getOptions().getVolatileBufferThreshold();
+        }
+    }
+
+    private boolean isOutboundQueueFull(SocketIoServerOptions options) {
+        return ((options.getMaxOutboundQueueBytes() > 0) && (mOutboundQueueBytes > options.getMaxOutboundQueueBytes())) ||
+                ((options.getMaxOutboundQueuePackets() > 0) && (mOutboundQueue.size() > options.getMaxOutboundQueuePackets()));
+    }
+
+    private void removeOutboundEntry(OutboundEntry entry) {
+        mOutboundQueueBytes -= entry.size;
+        mDroppedPacketCount.incrementAndGet();
+    }
+
+    /**
+     * Check if the queue should be handed to the transport right away.
+     * With coalescing enabled, the first queued packet schedules a flush after the coalesce
+     * delay so that packets of a burst are handed to the transport together.
+     * Must be called while holding the queue lock.
+     */
+    private boolean shouldFlushOutboundQueue(SocketIoServerOptions options) {
+        final long coalesceDelay = options.getCoalesceDelayMicros();
+        if ((coalesceDelay == 0) ||
+                ((options.getCoalesceMaxBytes() > 0) && (mOutboundQueueBytes >= options.getCoalesceMaxBytes()))) {
+            return true;
+        }
+
+        if (mCoalesceFuture == null) {
+            mCoalesceFuture = mServer.getScheduledExecutor().schedule(() -> {
+                synchronized (mOutboundQueue) {
+                    mCoalesceFuture = null;
+                }
+                flushOutboundQueue();
+            }, coalesceDelay, TimeUnit.MICROSECONDS);
+        }
+        return false;
+    }
+
+    /**
+     * Hand the queued packets to the engine.io socket if it has drained all earlier data.
+     * Only one thread hands packets over at a time and the queue lock is never held while
+     * calling into the engine.io socket, since the socket emits "drain" while holding its own lock.
+     */
+    private void flushOutboundQueue() {
+        while (true) {
+            final OutboundEntry[] entries;
+            boolean notifyDrain = false;
+            synchronized (mOutboundQueue) {
+                if (mIsFlushing || (mPendingBytes.get() > 0) || mOutboundQueue.isEmpty()) {
+                    return;
+                }
+
+                entries = mOutboundQueue.toArray(new OutboundEntry[0]);
+                mOutboundQueue.clear();
+                mOutboundQueueBytes = 0;
+                mIsFlushing = true;
+
+                if (mIsBackpressured) {
+                    mIsBackpressured = false;
+                    notifyDrain = true;
+                }
+            }
+
+            try {
+                for (OutboundEntry entry : entries) {
+                    for (io.socket.engineio.server.parser.Packet<?> engineIoPacket : entry.packets) {
+                        // Added before sending since the transport may flush and drain synchronously
+                        mPendingBytes.addAndGet(PacketUtils.getEncodedSize(engineIoPacket));
+                        mConnection.send(engineIoPacket);
+                    }
+                }
+            } finally {
+                synchronized (mOutboundQueue) {
+                    mIsFlushing = false;
+                }
+            }
+
+            if (notifyDrain) {
+                for (SocketIoSocket socket : mSockets.values()) {
+                    socket.onDrain();
+                }
+            }
+        }
+    }
+
     /**
      * Close the connection.
      */
@@ -173,12 +430,19 @@ public final class SocketIoClient {
                 } else if(data instanceof byte[]) {
                     mDecoder.add((byte[]) data);
                 }
+            } catch (DecodingLimitException ex) {
+                mServer.onDecoderLimitExceeded();
+                onError(ex.getMessage());
             } catch (Exception ex) {
                 onError(ex.getMessage());
             }
         });
         mConnection.on("error", args -> onError((String) args[0]));
         mConnection.on("close", args -> onClose((String) args[0]));
+        mConnection.on("drain", args -> {
+            mPendingBytes.set(0);
+            flushOutboundQueue();
+        });
 
         mServer.getScheduledExecutor().schedule(() -> {
             if (mNamespaceSockets.isEmpty()) {
@@ -187,19 +451,34 @@ public final class SocketIoClient {
         }, mServer.getOptions().getConnectionTimeout(), TimeUnit.MILLISECONDS);
     }
 
+    private void doConnect(SocketIoNamespaceImpl nsp, SocketIoSocket socket, String namespace) {
+        // Registered before adding so that a connection closing meanwhile closes the socket as well
+        mSockets.put(socket.getId(), socket);
+        mNamespaceSockets.put(namespace, socket);
+
+        nsp.add(socket);
+        if (!socket.isConnected()) {
+            mSockets.remove(socket.getId(), socket);
+            mNamespaceSockets.remove(namespace, socket);
+        } else if (mConnection.getReadyState() != ReadyState.OPEN) {
+            // Connection closed before the socket was connected, so closing the client skipped it
+            socket.onClose("transport close");
+        }
+    }
+
+    private void sendConnectError(String namespace, String message) {
+        final Packet<Object> packet = new Packet<>(Parser.CONNECT_ERROR);
+        packet.nsp = namespace;
+        packet.data = mServer.getOptions().getJsonCodec().createObject(Collections.singletonMap("message", message));
+
+        sendPacket(packet);
+    }
+
     private void destroy() {
         mConnection.off("data");
         mConnection.off("error");
         mConnection.off("close");
-    }
-
-    private void doConnect(String namespace, Object data) {
-        final SocketIoNamespaceImpl nsp = (SocketIoNamespaceImpl)mServer.namespace(namespace);
-        final SocketIoSocket socket = nsp.add(this, data);
-        if (socket.isConnected()) {
-            mSockets.put(socket.getId(), socket);
-            mNamespaceSockets.put(namespace, socket);
-        }
+        mConnection.off("drain");
     }
 
     private void onClose(String reason) {
@@ -210,6 +489,16 @@ public final class SocketIoClient {
         }
         mSockets.clear();
 
+        synchronized (mOutboundQueue) {
+            mOutboundQueue.clear();
+            mOutboundQueueBytes = 0;
+
+            if (mCoalesceFuture != null) {
+                mCoalesceFuture.cancel(false);
+                mCoalesceFuture = null;
+            }
+        }
+
         mDecoder.destroy();
     }
 
@@ -220,4 +509,22 @@ public final class SocketIoClient {
 
         mConnection.close();
     }
-}
\ No newline at end of file
+
+    private static final class OutboundEntry {
+
+        final io.socket.engineio.server.parser.Packet<?>[] packets;
+        final int size;
+        final boolean isVolatile;
+
+        OutboundEntry(io.socket.engineio.server.parser.Packet<?>[] packets, boolean isVolatile) {
+            int size = 0;
+            for (io.socket.engineio.server.parser.Packet<?> packet : packets) {
+                size += PacketUtils.getEncodedSize(packet);
+            }
+
+            this.packets = packets;
+            this.size = size;
+            this.isVolatile = isVolatile;
+        }
+    }
+}
@@ -3,14 +3,35 @@ package io.socket.socketio.server;
 import io.socket.socketio.server.parser.Packet;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 /**
  * In-memory adapter class.
  * This is the default adapter used.
+ *
+ * Every socket in the namespace is given a dense int handle and rooms are stored
+ * as sets of handles. Membership changes update the affected room in place under the
+ * adapter lock. Broadcasts read immutable snapshots of the rooms, which are only rebuilt
+ * after a change, so they run in parallel with each other and with membership changes.
+ * A broadcast sees a weakly consistent view of the rooms:
+ * sockets joining or leaving during a broadcast may or may not receive the packet,
+ * but no socket receives it more than once.
  */
 public final class SocketIoMemoryAdapter extends SocketIoAdapter {
 
-    private static final String[] EMPTY_SOCKET_EXCLUSION = new String[0];
+    private static final int INITIAL_HANDLE_CAPACITY = 64;
+
+    /**
+     * Scratch bitset used to compute the recipients of a broadcast.
+     * Taken out of the thread local while in use, so re-entrant broadcasts get their own.
+     */
+    private static final ThreadLocal<BitSet> SCRATCH_BITS = new ThreadLocal<>();
 
     /**
      * Factory for {@link SocketIoMemoryAdapter} class.
@@ -23,48 +44,133 @@ public final class SocketIoMemoryAdapter extends SocketIoAdapter {
         }
     }
 
+    /**
+     * Handle assigned to a socket while it is in at least one room.
+     */
+    private static final class SocketHandle {
+
+        final SocketIoSocket socket;
+        final int handle;
+        final long version;
+
+        SocketHandle(SocketIoSocket socket, int handle, long version) {
+            this.socket = socket;
+            this.handle = handle;
+            this.version = version;
+        }
+    }
+
+    /**
+     * Set of rooms joined by a socket.
+     * Kept apart from {@link #mSocketRooms} because the sets are read without the adapter lock.
+     */
+    private final Map<String, Set<String>> mSocketRoomSets = new ConcurrentHashMap<>();
+    private final Map<String, HandleSet> mRoomHandles = new ConcurrentHashMap<>();
+    private final Map<String, SocketHandle> mSocketHandles = new ConcurrentHashMap<>();
+
+    private volatile AtomicReferenceArray<SocketHandle> mHandleTable = new AtomicReferenceArray<>(INITIAL_HANDLE_CAPACITY);
+    private final HandleSet mAllHandles = new HandleSet();
+    private volatile long mHandleVersion = 0;
+
     private SocketIoMemoryAdapter(SocketIoNamespace namespace) {
         super(namespace);
     }
 
     @Override
-    public synchronized void broadcast(Packet<?> packet, String[] rooms, String[] socketsExcluded) throws IllegalArgumentException {
+    public void broadcast(Packet<?> packet, String[] rooms, String[] socketsExcluded) throws IllegalArgumentException {
         if (packet == null) {
             throw new IllegalArgumentException("packet must not be null.");
         }
 
-        socketsExcluded = (socketsExcluded != null)? socketsExcluded : EMPTY_SOCKET_EXCLUSION;
-        final Set<String> socketsExcludedSet = new HashSet<>();
-        Collections.addAll(socketsExcludedSet, socketsExcluded);
+        broadcast(packet.id,
+                () -> encodePacket(packet),
+                (rooms != null)? Arrays.asList(rooms) : null,
+                Collections.emptySet(),
+                (socketsExcluded != null)? Arrays.asList(socketsExcluded) : Collections.emptySet(),
+                false,
+                null);
+    }
 
-        final Map<String, SocketIoSocket> connectedSockets = mNamespace.getConnectedSockets();
+    @Override
+    public void broadcastWithOptions(Packet<?> packet, BroadcastOptions options) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet must not be null.");
+        }
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null.");
+        }
 
-        if (rooms != null) {
-            final Set<String> sentSocketIds = new HashSet<>();  // To ensure only one packet is sent if socket is added to multiple rooms
-
-            for (String room : rooms) {
-                if (mRoomSockets.containsKey(room)) {
-                    final Set<SocketIoSocket> sockets = mRoomSockets.get(room);
-                    for (SocketIoSocket socket : sockets) {
-                        if (!socketsExcludedSet.contains(socket.getId()) &&
-                                !sentSocketIds.contains(socket.getId()) &&
-                                connectedSockets.containsKey(socket.getId())) {
-                            socket.sendPacket(packet);
-                            sentSocketIds.add(socket.getId());
-                        }
-                    }
-                }
-            }
-        } else {
-            for (String socketId : mSocketRooms.keySet()) {
-                if (!socketsExcludedSet.contains(socketId)) {
-                    final SocketIoSocket socket = connectedSockets.get(socketId);
-                    if (socket != null) {
-                        socket.sendPacket(packet);
-                    }
-                }
-            }
+        broadcast(packet.id,
+                () -> encodePacket(packet),
+                (options.getRooms().size() > 0)? options.getRooms() : null,
+                options.getExceptRooms(),
+                options.getExceptSockets(),
+                options.isVolatile(),
+                null);
+    }
+
+    @Override
+    public void broadcastWithAck(Packet<?> packet,
+                                 BroadcastOptions options,
+                                 IntConsumer clientCountCallback,
+                                 SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) throws IllegalArgumentException {
+        if (packet == null) {
+            throw new IllegalArgumentException("packet must not be null.");
         }
+        if (options == null) {
+            throw new IllegalArgumentException("options must not be null.");
+        }
+        if (clientCountCallback == null || acknowledgementCallback == null) {
+            throw new IllegalArgumentException("clientCountCallback and acknowledgementCallback must not be null.");
+        }
+
+        clientCountCallback.accept(broadcast(packet.id,
+                () -> encodePacket(packet),
+                (options.getRooms().size() > 0)? options.getRooms() : null,
+                options.getExceptRooms(),
+                options.getExceptSockets(),
+                options.isVolatile(),
+                acknowledgementCallback));
+    }
+
+    /**
+     * Broadcast a packet that was encoded without namespace and id.
+     * Namespace groups encode a packet once and share it between their children this way,
+     * every child only inserts its namespace and the id into the header.
+     *
+     * @param encodedPacket Engine.io packets of the packet encoded without namespace and id.
+     * @param packetId Id of the packet or -1 for no id.
+     * @param options Options of the broadcast.
+     * @param acknowledgementCallback Callback to register on every recipient under the packet id or null.
+     * @return Number of sockets the packet was sent to.
+     */
+    int broadcastEncoded(io.socket.engineio.server.parser.Packet<?>[] encodedPacket,
+                         int packetId,
+                         BroadcastOptions options,
+                         SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) {
+        return broadcast(packetId,
+                () -> PacketUtils.withHeader(encodedPacket, mNamespace.getName(), packetId),
+                (options.getRooms().size() > 0)? options.getRooms() : null,
+                options.getExceptRooms(),
+                options.getExceptSockets(),
+                options.isVolatile(),
+                acknowledgementCallback);
+    }
+
+    /**
+     * Broadcast a packet that was encoded without namespace and id to sockets in rooms.
+     *
+     * @param encodedPacket Engine.io packets of the packet encoded without namespace and id.
+     * @param rooms Rooms to send packet to or null to send to all sockets.
+     */
+    void broadcastEncoded(io.socket.engineio.server.parser.Packet<?>[] encodedPacket, String[] rooms) {
+        broadcast(-1,
+                () -> PacketUtils.withHeader(encodedPacket, mNamespace.getName(), -1),
+                (rooms != null)? Arrays.asList(rooms) : null,
+                Collections.emptySet(),
+                Collections.emptySet(),
+                false,
+                null);
     }
 
     @Override
@@ -76,15 +182,14 @@ public final class SocketIoMemoryAdapter extends SocketIoAdapter {
             throw new IllegalArgumentException("socket must not be null.");
         }
 
-        if (!mSocketRooms.containsKey(socket.getId())) {
-            mSocketRooms.put(socket.getId(), new HashSet<>());
-        }
-        if (!mRoomSockets.containsKey(room)) {
-            mRoomSockets.put(room, new HashSet<>());
+        SocketHandle socketHandle = mSocketHandles.get(socket.getId());
+        if (socketHandle == null) {
+            socketHandle = allocateHandle(socket);
         }
 
-        mSocketRooms.get(socket.getId()).add(room);
-        mRoomSockets.get(room).add(socket);
+        mSocketRoomSets.computeIfAbsent(socket.getId(), socketId -> ConcurrentHashMap.newKeySet()).add(room);
+
+        mRoomHandles.computeIfAbsent(room, roomName -> new HandleSet()).add(socketHandle.handle);
     }
 
     @Override
@@ -96,20 +201,22 @@ public final class SocketIoMemoryAdapter extends SocketIoAdapter {
             throw new IllegalArgumentException("socket must not be null.");
         }
 
-        if (mRoomSockets.containsKey(room)) {
-            final Set<SocketIoSocket> roomSockets = mRoomSockets.get(room);
+        final SocketHandle socketHandle = mSocketHandles.get(socket.getId());
+        if (socketHandle == null) {
+            return;
+        }
 
-            roomSockets.remove(socket);
-            if (roomSockets.size() == 0) {
-                mRoomSockets.remove(room);
-            }
+        final HandleSet roomHandles = mRoomHandles.get(room);
+        if (roomHandles != null && roomHandles.remove(socketHandle.handle) && roomHandles.size() == 0) {
+            mRoomHandles.remove(room);
         }
-        if (mSocketRooms.containsKey(socket.getId())) {
-            final Set<String> socketRooms = mSocketRooms.get(socket.getId());
 
+        final Set<String> socketRooms = mSocketRoomSets.get(socket.getId());
+        if (socketRooms != null) {
             socketRooms.remove(room);
             if (socketRooms.size() == 0) {
-                mSocketRooms.remove(socket.getId());
+                mSocketRoomSets.remove(socket.getId());
+                releaseHandle(socketHandle);
             }
         }
     }
@@ -120,11 +227,16 @@ public final class SocketIoMemoryAdapter extends SocketIoAdapter {
             throw new IllegalArgumentException("room must not be null.");
         }
 
-        if (mRoomSockets.containsKey(room)) {
-            return mRoomSockets.get(room).toArray(new SocketIoSocket[0]);
-        } else {
-            return new SocketIoSocket[0];
+        final int[] roomHandles = getRoomHandles(room);
+        final AtomicReferenceArray<SocketHandle> handleTable = mHandleTable;
+        final List<SocketIoSocket> sockets = new ArrayList<>(roomHandles.length);
+        for (int handle : roomHandles) {
+            final SocketHandle socketHandle = (handle < handleTable.length())? handleTable.get(handle) : null;
+            if (socketHandle != null) {
+                sockets.add(socketHandle.socket);
+            }
         }
+        return sockets.toArray(new SocketIoSocket[0]);
     }
 
     @Override
@@ -133,10 +245,218 @@ public final class SocketIoMemoryAdapter extends SocketIoAdapter {
             throw new IllegalArgumentException("socket must not be null.");
         }
 
-        if (mSocketRooms.containsKey(socket.getId())) {
-            return mSocketRooms.get(socket.getId()).toArray(new String[0]);
+        final Set<String> rooms = mSocketRoomSets.get(socket.getId());
+        return (rooms != null)? rooms.toArray(new String[0]) : new String[0];
+    }
+
+    /**
+     * Broadcast packet to sockets in rooms, excluding sockets in except rooms and excluded sockets.
+     *
+     * @param packetId Id of the packet or -1 for no id.
+     * @param packetEncoder Encoder of the packet, only called if there are recipients.
+     * @param rooms Rooms to send packet to or null to send to all sockets.
+     * @param exceptRooms Rooms whose sockets must not receive the packet.
+     * @param socketsExcluded Ids of sockets that must not receive the packet.
+     * @param isVolatile Whether the packet can be dropped for clients that cannot take it.
+     * @param acknowledgementCallback Callback to register on every recipient under the packet id or null.
+     * @return Number of sockets the packet was sent to.
+     */
+    private int broadcast(int packetId,
+                          Supplier<io.socket.engineio.server.parser.Packet<?>[]> packetEncoder,
+                          Collection<String> rooms,
+                          Collection<String> exceptRooms,
+                          Collection<String> socketsExcluded,
+                          boolean isVolatile,
+                          SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) {
+        // Handles assigned after this point may have been recycled from sockets in the room snapshots
+        final long version = mHandleVersion;
+        final AtomicReferenceArray<SocketHandle> handleTable = mHandleTable;
+
+        int[] recipients = null;
+        if (rooms == null) {
+            recipients = mAllHandles.snapshot();
+        } else if (rooms.size() == 1) {
+            recipients = getRoomHandles(rooms.iterator().next());
+        }
+
+        if (recipients == null || exceptRooms.size() > 0 || socketsExcluded.size() > 0) {
+            final BitSet scratch = takeScratchBits();
+            try {
+                if (recipients != null) {
+                    setBits(scratch, recipients);
+                } else {
+                    // Union of rooms ensures only one packet is sent if socket is added to multiple rooms
+                    for (String room : rooms) {
+                        setBits(scratch, getRoomHandles(room));
+                    }
+                }
+                for (String room : exceptRooms) {
+                    for (int handle : getRoomHandles(room)) {
+                        scratch.clear(handle);
+                    }
+                }
+                for (String socketId : socketsExcluded) {
+                    final SocketHandle socketHandle = mSocketHandles.get(socketId);
+                    if (socketHandle != null) {
+                        scratch.clear(socketHandle.handle);
+                    }
+                }
+                recipients = scratch.stream().toArray();
+            } finally {
+                releaseScratchBits(scratch);
+            }
+        }
+
+        if (recipients.length == 0) {
+            return 0;
+        }
+
+        final Map<String, SocketIoSocket> connectedSockets = mNamespace.getConnectedSockets();
+
+        // Encode only once, every recipient gets the same engine.io packets
+        final io.socket.engineio.server.parser.Packet<?>[] encodedPacket = packetEncoder.get();
+
+        final SocketIoServerOptions serverOptions = mNamespace.getServer().getOptions();
+        final int fanOutThreshold = serverOptions.getBroadcastFanOutThreshold();
+        if (fanOutThreshold > 0 && recipients.length > fanOutThreshold) {
+            return fanOut(recipients, serverOptions, handleTable, version, connectedSockets, packetId, encodedPacket, isVolatile, acknowledgementCallback);
         } else {
-            return new String[0];
+            return deliver(recipients, 0, recipients.length, handleTable, version, connectedSockets, packetId, encodedPacket, isVolatile, acknowledgementCallback);
         }
     }
-}
\ No newline at end of file
+
+    private io.socket.engineio.server.parser.Packet<?>[] encodePacket(Packet<?> packet) {
+        packet.nsp = mNamespace.getName();
+        return PacketUtils.encodePacket(mNamespace.getServer().getEncoder(), packet);
+    }
+
+    /**
+     * Split recipients into chunks and deliver them in parallel.
+     * The calling thread delivers the last chunk and waits for the others to complete.
+     */
+    private int fanOut(final int[] recipients,
+                       SocketIoServerOptions options,
+                       final AtomicReferenceArray<SocketHandle> handleTable,
+                       final long version,
+                       final Map<String, SocketIoSocket> connectedSockets,
+                       final int packetId,
+                       final io.socket.engineio.server.parser.Packet<?>[] encodedPacket,
+                       final boolean isVolatile,
+                       final SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) {
+        final Executor executor = (options.getBroadcastFanOutExecutor() != null)?
+                options.getBroadcastFanOutExecutor() : ForkJoinPool.commonPool();
+        final int chunkSize = options.getBroadcastFanOutChunkSize();
+
+        final List<CompletableFuture<Integer>> futures = new ArrayList<>();
+        int fromIndex = 0;
+        for (; recipients.length - fromIndex > chunkSize; fromIndex += chunkSize) {
+            final int chunkFromIndex = fromIndex;
+            futures.add(CompletableFuture.supplyAsync(
+                    () -> deliver(recipients, chunkFromIndex, chunkFromIndex + chunkSize, handleTable, version, connectedSockets, packetId, encodedPacket, isVolatile, acknowledgementCallback),
+                    executor));
+        }
+
+        int recipientCount = deliver(recipients, fromIndex, recipients.length, handleTable, version, connectedSockets, packetId, encodedPacket, isVolatile, acknowledgementCallback);
+        for (CompletableFuture<Integer> future : futures) {
+            recipientCount += future.join();
+        }
+        return recipientCount;
+    }
+
+    /**
+     * Deliver encoded packet to recipients at indices in range [fromIndex, toIndex).
+     *
+     * @return Number of sockets the packet was sent to.
+     */
+    private static int deliver(int[] recipients,
+                               int fromIndex,
+                               int toIndex,
+                               AtomicReferenceArray<SocketHandle> handleTable,
+                               long version,
+                               Map<String, SocketIoSocket> connectedSockets,
+                               int packetId,
+                               io.socket.engineio.server.parser.Packet<?>[] encodedPacket,
+                               boolean isVolatile,
+                               SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) {
+        int recipientCount = 0;
+        for (int i = fromIndex; i < toIndex; i++) {
+            final int handle = recipients[i];
+            final SocketHandle socketHandle = (handle < handleTable.length())? handleTable.get(handle) : null;
+            if (socketHandle != null &&
+                    socketHandle.version <= version &&
+                    connectedSockets.containsKey(socketHandle.socket.getId())) {
+                if (acknowledgementCallback != null) {
+                    // Registered before sending so a fast acknowledgement is not missed
+                    socketHandle.socket.registerAcknowledgement(packetId, 0, acknowledgementCallback);
+                }
+                socketHandle.socket.sendEncodedPacket(encodedPacket, isVolatile);
+                recipientCount++;
+            }
+        }
+        return recipientCount;
+    }
+
+    /**
+     * Assign the lowest free handle to a socket.
+     * Must be called with the adapter lock held.
+     */
+    private SocketHandle allocateHandle(SocketIoSocket socket) {
+        final int handle = mAllHandles.nextClear();
+
+        AtomicReferenceArray<SocketHandle> handleTable = mHandleTable;
+        if (handle >= handleTable.length()) {
+            final AtomicReferenceArray<SocketHandle> newHandleTable = new AtomicReferenceArray<>(handleTable.length() * 2);
+            for (int i = 0; i < handleTable.length(); i++) {
+                newHandleTable.set(i, handleTable.get(i));
+            }
+            handleTable = newHandleTable;
+            mHandleTable = newHandleTable;
+        }
+
+        final SocketHandle socketHandle = new SocketHandle(socket, handle, ++mHandleVersion);
+        handleTable.set(handle, socketHandle);
+        mSocketHandles.put(socket.getId(), socketHandle);
+        mAllHandles.add(handle);
+
+        return socketHandle;
+    }
+
+    /**
+     * Free the handle of a socket that left all rooms.
+     * Must be called with the adapter lock held.
+     */
+    private void releaseHandle(SocketHandle socketHandle) {
+        mAllHandles.remove(socketHandle.handle);
+        mSocketHandles.remove(socketHandle.socket.getId());
+        mHandleTable.compareAndSet(socketHandle.handle, socketHandle, null);
+    }
+
+    /**
+     * Get the snapshot of the handles in a room.
+     */
+    private int[] getRoomHandles(String room) {
+        final HandleSet roomHandles = mRoomHandles.get(room);
+        return (roomHandles != null)? roomHandles.snapshot() : HandleSet.EMPTY;
+    }
+
+    private static void setBits(BitSet bits, int[] handles) {
+        for (int handle : handles) {
+            bits.set(handle);
+        }
+    }
+
+    private static BitSet takeScratchBits() {
+        final BitSet bits = SCRATCH_BITS.get();
+        if (bits == null) {
+            return new BitSet();
+        }
+
+        SCRATCH_BITS.set(null);
+        return bits;
+    }
+
+    private static void releaseScratchBits(BitSet bits) {
+        bits.clear();
+        SCRATCH_BITS.set(bits);
+    }
+}
@@ -2,7 +2,10 @@ package io.socket.socketio.server;
 
 import io.socket.engineio.server.Emitter;
 
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * Socket.io namespace class.
@@ -11,10 +14,29 @@ import java.util.Map;
 @SuppressWarnings("WeakerAccess")
 public abstract class SocketIoNamespace extends Emitter {
 
+    /**
+     * Middleware run for every socket connecting to a namespace.
+     */
+    @FunctionalInterface
+    public interface Middleware {
+
+        /**
+         * Check a connecting socket.
+         * The socket has not joined any room and has not been sent the connect packet yet.
+         *
+         * @param socket Socket that is connecting.
+         * @return Future completed to let the socket connect or completed exceptionally to reject it,
+         * in which case the client receives the message of the exception. Null lets the socket connect.
+         */
+        CompletableFuture<Void> call(SocketIoSocket socket);
+    }
+
     protected final SocketIoServer mServer;
     protected final String mName;
     protected final SocketIoAdapter mAdapter;
 
+    private final List<Middleware> mMiddlewares = new CopyOnWriteArrayList<>();
+
     SocketIoNamespace(SocketIoServer server, String name) {
         mServer = server;
         mName = name;
@@ -48,6 +70,31 @@ public abstract class SocketIoNamespace extends Emitter {
         return mAdapter;
     }
 
+    /**
+     * Add a middleware run for every socket connecting to this namespace.
+     * Middlewares run in the order they were added, each after the previous one has completed.
+     * Middlewares of a namespace for a provider or pattern run for all of its dynamic namespaces.
+     *
+     * @param middleware Middleware to add.
+     * @return Instance for chaining.
+     * @throws IllegalArgumentException If middleware is null.
+     */
+    public SocketIoNamespace use(Middleware middleware) throws IllegalArgumentException {
+        if (middleware == null) {
+            throw new IllegalArgumentException("middleware must not be null.");
+        }
+
+        mMiddlewares.add(middleware);
+        return this;
+    }
+
+    /**
+     * Get the middlewares added to this namespace.
+     */
+    List<Middleware> getMiddlewares() {
+        return mMiddlewares;
+    }
+
     /**
      * Broadcast a message to all clients in this namespace that
      * have joined specified room.
@@ -71,5 +118,83 @@ public abstract class SocketIoNamespace extends Emitter {
      */
     public abstract void broadcast(String[] rooms, String event, Object[] args) throws IllegalArgumentException;
 
+    /**
+     * Create a broadcast operator targeting all sockets in this namespace.
+     *
+     * @return Broadcast operator instance.
+     */
+    public SocketIoBroadcastOperator broadcast() {
+        return new SocketIoBroadcastOperator(this);
+    }
+
+    /**
+     * Create a broadcast operator targeting sockets that have joined specified rooms.
+     *
+     * @param rooms Rooms to send message to.
+     * @return Broadcast operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator to(String... rooms) throws IllegalArgumentException {
+        return broadcast().to(rooms);
+    }
+
+    /**
+     * Alias of {@link #to(String...)}.
+     *
+     * @param rooms Rooms to send message to.
+     * @return Broadcast operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator in(String... rooms) throws IllegalArgumentException {
+        return broadcast().in(rooms);
+    }
+
+    /**
+     * Create a broadcast operator excluding sockets that have joined specified rooms.
+     *
+     * @param rooms Rooms to exclude.
+     * @return Broadcast operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator except(String... rooms) throws IllegalArgumentException {
+        return broadcast().except(rooms);
+    }
+
+    /**
+     * Broadcast a message to sockets selected by broadcast options.
+     *
+     * @param options Options of the broadcast.
+     * @param event Name of event to raise on remote client.
+     * @param args Array of arguments to send.
+     * @throws IllegalArgumentException If event is null or argument is not of supported type.
+     */
+    abstract void broadcast(SocketIoAdapter.BroadcastOptions options, String event, Object[] args) throws IllegalArgumentException;
+
+    /**
+     * Broadcast a message to sockets in rooms and collect their acknowledgements.
+     *
+     * @param rooms Rooms to send message to or null to send to all sockets.
+     * @param event Name of event to raise on remote client.
+     * @param args Array of arguments to send. Supported types are: JSONObject, JSONArray, null
+     * @param timeout Time in milliseconds to wait for acknowledgements or -1 to wait for all recipients.
+     * @return Future that completes with all responses, or the responses received so far on timeout.
+     * @throws IllegalArgumentException If event is null or argument is not of supported type.
+     */
+    public final CompletableFuture<List<Object[]>> broadcastWithAck(String[] rooms, String event, Object[] args, long timeout) throws IllegalArgumentException {
+        final SocketIoBroadcastOperator operator = broadcast().timeout(timeout);
+        return ((rooms != null)? operator.to(rooms) : operator).emitWithAck(event, args);
+    }
+
+    /**
+     * Broadcast a message to sockets selected by broadcast options and collect their acknowledgements.
+     *
+     * @param options Options of the broadcast.
+     * @param event Name of event to raise on remote client.
+     * @param args Array of arguments to send.
+     * @return Future that completes with all responses, or the responses received so far on timeout.
+     * @throws IllegalArgumentException If event is null or argument is not of supported type.
+     */
+    abstract CompletableFuture<List<Object[]>> broadcastWithAck(SocketIoAdapter.BroadcastOptions options, String event, Object[] args) throws IllegalArgumentException;
+
     abstract Map<String, SocketIoSocket> getConnectedSockets();
 }
\ No newline at end of file
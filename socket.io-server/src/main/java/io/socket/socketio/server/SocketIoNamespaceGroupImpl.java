@@ -1,17 +1,34 @@
 package io.socket.socketio.server;
 
 import io.socket.engineio.server.Emitter;
+import io.socket.socketio.server.parser.IOParser;
+import io.socket.socketio.server.parser.Packet;
+import io.socket.socketio.server.parser.Parser;
 
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Namespace grouping the dynamic namespaces created by a namespace provider.
+ * Children are added from I/O threads while broadcasts iterate them, so the children are
+ * kept in a concurrent set and broadcasts see a weakly consistent view of them.
+ */
 final class SocketIoNamespaceGroupImpl extends SocketIoNamespace {
 
     private static final AtomicInteger NAME_COUNTER = new AtomicInteger(0);
 
-    private final HashSet<SocketIoNamespaceImpl> mChildNamespaces = new HashSet<>();
+    private final Set<SocketIoNamespaceImpl> mChildNamespaces = ConcurrentHashMap.newKeySet();
+    private final Map<String, SocketIoSocket> mConnectedSockets = new ConnectedSocketsView();
 
     SocketIoNamespaceGroupImpl(SocketIoServer server) {
         super(server, "/_" + NAME_COUNTER.incrementAndGet());
@@ -19,22 +36,68 @@ final class SocketIoNamespaceGroupImpl extends SocketIoNamespace {
 
     @Override
     public void broadcast(String[] rooms, String event, Object[] args) throws IllegalArgumentException {
+        final Packet<?> packet = createPacket(event, args);
+        final SharedPacket sharedPacket = new SharedPacket(packet);
         for (SocketIoNamespaceImpl namespace : mChildNamespaces) {
-            namespace.broadcast(rooms, event, args);
+            final io.socket.engineio.server.parser.Packet<?>[] encodedPacket = sharedPacket.get(namespace);
+            if (encodedPacket != null) {
+                ((SocketIoMemoryAdapter) namespace.getAdapter()).broadcastEncoded(encodedPacket, rooms);
+            } else {
+                namespace.getAdapter().broadcast(copyPacket(packet), rooms);
+            }
         }
     }
 
     @Override
-    Map<String, SocketIoSocket> getConnectedSockets() {
-        final Map<String, SocketIoSocket> sockets = new HashMap<>();
+    void broadcast(SocketIoAdapter.BroadcastOptions options, String event, Object[] args) throws IllegalArgumentException {
+        final Packet<?> packet = createPacket(event, args);
+        final SharedPacket sharedPacket = new SharedPacket(packet);
+        for (SocketIoNamespaceImpl namespace : mChildNamespaces) {
+            final io.socket.engineio.server.parser.Packet<?>[] encodedPacket = sharedPacket.get(namespace);
+            if (encodedPacket != null) {
+                ((SocketIoMemoryAdapter) namespace.getAdapter()).broadcastEncoded(encodedPacket, -1, options, null);
+            } else {
+                namespace.getAdapter().broadcastWithOptions(copyPacket(packet), options);
+            }
+        }
+    }
+
+    @Override
+    CompletableFuture<List<Object[]>> broadcastWithAck(SocketIoAdapter.BroadcastOptions options, String event, Object[] args) throws IllegalArgumentException {
+        final Packet<?> packet = createPacket(event, args);
+        final SharedPacket sharedPacket = new SharedPacket(packet);
+        final List<CompletableFuture<List<Object[]>>> futures = new ArrayList<>();
         for (SocketIoNamespaceImpl namespace : mChildNamespaces) {
-            sockets.putAll(namespace.getConnectedSockets());
+            final io.socket.engineio.server.parser.Packet<?>[] encodedPacket = sharedPacket.get(namespace);
+            if (encodedPacket != null) {
+                futures.add(namespace.broadcastEncodedWithAck(encodedPacket, options));
+            } else {
+                futures.add(namespace.broadcastWithAck(copyPacket(packet), options));
+            }
         }
-        return sockets;
+
+        return CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).thenApply(ignore -> {
+            final List<Object[]> responses = new ArrayList<>();
+            for (CompletableFuture<List<Object[]>> future : futures) {
+                responses.addAll(future.join());
+            }
+            return Collections.unmodifiableList(responses);
+        });
+    }
+
+    /**
+     * Get the connected sockets of all children.
+     * The returned map is a read-only view over the children, it does not copy any sockets.
+     *
+     * @return Map of socket id to connected socket.
+     */
+    @Override
+    Map<String, SocketIoSocket> getConnectedSockets() {
+        return mConnectedSockets;
     }
 
     SocketIoNamespaceImpl createChild(String name) {
-        final SocketIoNamespaceImpl nsp = new SocketIoNamespaceImpl(getServer(), name);
+        final SocketIoNamespaceImpl nsp = new SocketIoNamespaceImpl(getServer(), name, this);
         for (Emitter.Listener listener : listeners("connect")) {
             nsp.on("connect", listener);
         }
@@ -44,4 +107,127 @@ final class SocketIoNamespaceGroupImpl extends SocketIoNamespace {
         mChildNamespaces.add(nsp);
         return nsp;
     }
+
+    void removeChild(SocketIoNamespaceImpl nsp) {
+        mChildNamespaces.remove(nsp);
+    }
+
+    int getChildCount() {
+        return mChildNamespaces.size();
+    }
+
+    /**
+     * Validate args and create the packet shared by all children.
+     * Arguments are converted once, children using the memory adapter share a single encoding
+     * and other children encode a copy with their own namespace.
+     */
+    private Packet<?> createPacket(String event, Object[] args) throws IllegalArgumentException {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null.");
+        }
+
+        return PacketUtils.createDataPacket(getServer().getOptions().getJsonCodec(), Parser.EVENT, event, args);
+    }
+
+    private static Packet<?> copyPacket(Packet<?> packet) {
+        // Encoding replaces the data of a packet but never modifies the data itself
+        return new Packet<>(packet.type, packet.data);
+    }
+
+    /**
+     * Packet of a group broadcast encoded once for all children using the memory adapter.
+     * It is encoded without namespace and id when the first such child is reached.
+     */
+    private final class SharedPacket {
+
+        private final Packet<?> mPacket;
+        private io.socket.engineio.server.parser.Packet<?>[] mEncodedPacket = null;
+
+        SharedPacket(Packet<?> packet) {
+            mPacket = packet;
+        }
+
+        /**
+         * Get the shared encoding for a child.
+         *
+         * @param namespace Child to broadcast to.
+         * @return Encoded packet or null if the child must encode the packet itself.
+         */
+        io.socket.engineio.server.parser.Packet<?>[] get(SocketIoNamespaceImpl namespace) {
+            final Parser.Encoder encoder = getServer().getEncoder();
+            if (!(encoder instanceof IOParser.Encoder) || !(namespace.getAdapter() instanceof SocketIoMemoryAdapter)) {
+                return null;
+            }
+
+            if (mEncodedPacket == null) {
+                mEncodedPacket = PacketUtils.encodePacket(encoder, copyPacket(mPacket));
+            }
+            return mEncodedPacket;
+        }
+    }
+
+    private final class ConnectedSocketsView extends AbstractMap<String, SocketIoSocket> {
+
+        private final Set<Entry<String, SocketIoSocket>> mEntrySet = new AbstractSet<Entry<String, SocketIoSocket>>() {
+            @Override
+            public Iterator<Entry<String, SocketIoSocket>> iterator() {
+                final Iterator<SocketIoNamespaceImpl> namespaces = mChildNamespaces.iterator();
+                return new Iterator<Entry<String, SocketIoSocket>>() {
+
+                    private Iterator<Entry<String, SocketIoSocket>> mCurrent = Collections.emptyIterator();
+
+                    @Override
+                    public boolean hasNext() {
+                        while (!mCurrent.hasNext() && namespaces.hasNext()) {
+                            mCurrent = namespaces.next().getConnectedSockets().entrySet().iterator();
+                        }
+                        return mCurrent.hasNext();
+                    }
+
+                    @Override
+                    public Entry<String, SocketIoSocket> next() {
+                        if (!hasNext()) {
+                            throw new NoSuchElementException();
+                        }
+                        return mCurrent.next();
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return ConnectedSocketsView.this.size();
+            }
+        };
+
+        @Override
+        public Set<Entry<String, SocketIoSocket>> entrySet() {
+            return mEntrySet;
+        }
+
+        @Override
+        public int size() {
+            int size = 0;
+            for (SocketIoNamespaceImpl namespace : mChildNamespaces) {
+                size += namespace.getConnectedSockets().size();
+            }
+            return size;
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public SocketIoSocket get(Object key) {
+            for (SocketIoNamespaceImpl namespace : mChildNamespaces) {
+                final SocketIoSocket socket = namespace.getConnectedSockets().get(key);
+                if (socket != null) {
+                    return socket;
+                }
+            }
+            return null;
+        }
+    }
 }
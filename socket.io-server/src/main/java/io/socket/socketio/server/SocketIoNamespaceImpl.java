@@ -3,9 +3,15 @@ package io.socket.socketio.server;
 import io.socket.engineio.server.ReadyState;
 import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
+import io.socket.socketio.server.utils.HashedTimingWheel;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -17,9 +23,27 @@ final class SocketIoNamespaceImpl extends SocketIoNamespace {
     private final Map<String, SocketIoSocket> mSockets = new ConcurrentHashMap<>();
     private final Map<String, SocketIoSocket> mConnectedSockets = new ConcurrentHashMap<>();
     private final AtomicInteger mAckId = new AtomicInteger(0);
+    private final SocketIoNamespaceGroupImpl mGroup;
+
+    private int mPendingSocketCount;
+    private HashedTimingWheel.Timeout mEvictionTimeout;
+    private int mEvictionGeneration;
+    private boolean mEvicted;
 
     SocketIoNamespaceImpl(SocketIoServer server, String name) {
+        this(server, name, null);
+    }
+
+    /**
+     * Create namespace.
+     *
+     * @param server Server of the namespace.
+     * @param name Name of the namespace.
+     * @param group Group that created this dynamic namespace or null for a namespace created by name.
+     */
+    SocketIoNamespaceImpl(SocketIoServer server, String name, SocketIoNamespaceGroupImpl group) {
         super(server, name);
+        mGroup = group;
     }
 
     @Override
@@ -28,10 +52,70 @@ final class SocketIoNamespaceImpl extends SocketIoNamespace {
             throw new IllegalArgumentException("event cannot be null.");
         }
 
-        final Packet packet = PacketUtils.createDataPacket(Parser.EVENT, event, args);
+        final Packet packet = PacketUtils.createDataPacket(getServer().getOptions().getJsonCodec(), Parser.EVENT, event, args);
         mAdapter.broadcast(packet, rooms);
     }
 
+    @Override
+    void broadcast(SocketIoAdapter.BroadcastOptions options, String event, Object[] args) throws IllegalArgumentException {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null.");
+        }
+
+        final Packet<?> packet = PacketUtils.createDataPacket(getServer().getOptions().getJsonCodec(), Parser.EVENT, event, args);
+        mAdapter.broadcastWithOptions(packet, options);
+    }
+
+    @Override
+    CompletableFuture<List<Object[]>> broadcastWithAck(SocketIoAdapter.BroadcastOptions options, String event, Object[] args) throws IllegalArgumentException {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null.");
+        }
+
+        final Packet<?> packet = PacketUtils.createDataPacket(getServer().getOptions().getJsonCodec(), Parser.EVENT, event, args);
+        return broadcastWithAck(packet, options);
+    }
+
+    /**
+     * Broadcast an already created packet and wait for acknowledgements.
+     *
+     * @param packet Packet to broadcast, its id is assigned by this namespace.
+     * @param options Options of the broadcast.
+     * @return Future completed with the responses of all recipients.
+     */
+    CompletableFuture<List<Object[]>> broadcastWithAck(Packet<?> packet, SocketIoAdapter.BroadcastOptions options) {
+        packet.id = nextId();
+
+        final BroadcastAcknowledgement acknowledgement = createAcknowledgement(packet.id, options);
+        mAdapter.broadcastWithAck(packet, options, acknowledgement::setRecipientCount, acknowledgement);
+        return acknowledgement.getFuture();
+    }
+
+    /**
+     * Broadcast a packet encoded without namespace and id by the group of this namespace and wait for acknowledgements.
+     * Must only be called if the adapter of this namespace is a {@link SocketIoMemoryAdapter}.
+     *
+     * @param encodedPacket Engine.io packets of the packet encoded without namespace and id.
+     * @param options Options of the broadcast.
+     * @return Future completed with the responses of all recipients.
+     */
+    CompletableFuture<List<Object[]>> broadcastEncodedWithAck(io.socket.engineio.server.parser.Packet<?>[] encodedPacket,
+                                                              SocketIoAdapter.BroadcastOptions options) {
+        final int packetId = nextId();
+
+        final BroadcastAcknowledgement acknowledgement = createAcknowledgement(packetId, options);
+        acknowledgement.setRecipientCount(((SocketIoMemoryAdapter) mAdapter).broadcastEncoded(encodedPacket, packetId, options, acknowledgement));
+        return acknowledgement.getFuture();
+    }
+
+    private BroadcastAcknowledgement createAcknowledgement(int packetId, SocketIoAdapter.BroadcastOptions options) {
+        final BroadcastAcknowledgement acknowledgement = new BroadcastAcknowledgement(packetId);
+        if (options.getTimeout() > 0) {
+            acknowledgement.scheduleTimeout(getServer().getTimingWheel(), options.getTimeout());
+        }
+        return acknowledgement;
+    }
+
     @Override
     Map<String, SocketIoSocket> getConnectedSockets() {
         return mConnectedSockets;
@@ -47,23 +131,87 @@ final class SocketIoNamespaceImpl extends SocketIoNamespace {
     }
 
     /**
-     * Add a client instance to this namespace.
+     * Create a socket for a client connecting to this namespace.
+     * The socket is pending until it is added or aborted, and the namespace is not evicted while it is pending.
      *
-     * @param client Client instance to add.
+     * @param client Client instance to create socket for.
      * @param data Data sent with the CONNECT packet.
-     * @return Socket instance created from client.
+     * @return Socket instance created from client or null if this namespace has been evicted.
+     */
+    synchronized SocketIoSocket createSocket(SocketIoClient client, Object data) {
+        if (mEvicted) {
+            return null;
+        }
+
+        cancelEviction();
+        mPendingSocketCount++;
+        return new SocketIoSocket(this, client, data);
+    }
+
+    /**
+     * Check if any middleware runs for sockets connecting to this namespace.
      */
-    synchronized SocketIoSocket add(SocketIoClient client, Object data) {
-        final SocketIoSocket socket = new SocketIoSocket(this, client, data);
-        if (client.getConnection().getReadyState() == ReadyState.OPEN) {
-            mSockets.put(socket.getId(), socket);
+    boolean hasMiddlewares() {
+        return !getMiddlewares().isEmpty() || (mGroup != null && !mGroup.getMiddlewares().isEmpty());
+    }
+
+    /**
+     * Run the middlewares of the group of this namespace and of this namespace for a pending socket.
+     *
+     * @param socket Socket created by {@link #createSocket(SocketIoClient, Object)}.
+     * @return Future completed when all middlewares accepted the socket or exceptionally when one rejected it.
+     */
+    CompletableFuture<Void> runMiddlewares(SocketIoSocket socket) {
+        final List<Middleware> middlewares = new ArrayList<>();
+        if (mGroup != null) {
+            middlewares.addAll(mGroup.getMiddlewares());
+        }
+        middlewares.addAll(getMiddlewares());
+
+        final Executor executor = getServer().getOptions().getMiddlewareExecutor();
+        CompletableFuture<Void> future = CompletableFuture.completedFuture(null);
+        for (Middleware middleware : middlewares) {
+            future = (executor != null)?
+                    future.thenComposeAsync(ignore -> callMiddleware(middleware, socket), executor) :
+                    future.thenCompose(ignore -> callMiddleware(middleware, socket));
+        }
+        return future;
+    }
+
+    /**
+     * Add a pending socket to this namespace.
+     * The socket is registered under the namespace lock, listeners are called after releasing it.
+     *
+     * @param socket Socket created by {@link #createSocket(SocketIoClient, Object)}.
+     */
+    void add(SocketIoSocket socket) {
+        final boolean isOpen;
+        synchronized (this) {
+            mPendingSocketCount--;
+            isOpen = socket.getClient().getConnection().getReadyState() == ReadyState.OPEN;
+            if (isOpen) {
+                mSockets.put(socket.getId(), socket);
+            }
+
+            scheduleEvictionIfIdle();
+        }
+
+        if (isOpen) {
             socket.onConnect();
 
             emit("connect", socket);
             emit("connection", socket);
         }
+    }
 
-        return socket;
+    /**
+     * Drop a pending socket rejected by a middleware.
+     *
+     * @param socket Socket created by {@link #createSocket(SocketIoClient, Object)}.
+     */
+    synchronized void abort(SocketIoSocket socket) {
+        mPendingSocketCount--;
+        scheduleEvictionIfIdle();
     }
 
     /**
@@ -73,6 +221,7 @@ final class SocketIoNamespaceImpl extends SocketIoNamespace {
      */
     synchronized void remove(SocketIoSocket socket) {
         mSockets.remove(socket.getId());
+        scheduleEvictionIfIdle();
     }
 
     /**
@@ -92,4 +241,60 @@ final class SocketIoNamespaceImpl extends SocketIoNamespace {
     synchronized void removeConnected(SocketIoSocket socket) {
         mConnectedSockets.remove(socket.getId());
     }
+
+    /**
+     * Schedule removal of this dynamic namespace if it has no sockets.
+     * Must be called while holding the namespace lock.
+     */
+    private void scheduleEvictionIfIdle() {
+        final long idleTimeout = getServer().getOptions().getDynamicNamespaceIdleTimeout();
+        if (mGroup == null || idleTimeout == 0 || mEvicted || mEvictionTimeout != null || !mSockets.isEmpty() || mPendingSocketCount > 0) {
+            return;
+        }
+
+        final int generation = ++mEvictionGeneration;
+        mEvictionTimeout = getServer().getTimingWheel().newTimeout(() -> evict(generation), idleTimeout, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Cancel a scheduled removal.
+     * Must be called while holding the namespace lock.
+     */
+    private void cancelEviction() {
+        if (mEvictionTimeout != null) {
+            mEvictionTimeout.cancel();
+            mEvictionTimeout = null;
+
+            // A timeout that is already running must not evict
+            mEvictionGeneration++;
+        }
+    }
+
+    private synchronized void evict(int generation) {
+        if (generation != mEvictionGeneration) {
+            return;
+        }
+        mEvictionTimeout = null;
+        if (mEvicted || !mSockets.isEmpty() || mPendingSocketCount > 0) {
+            return;
+        }
+
+        // Connections resolving the namespace concurrently find it evicted in add and resolve it again
+        mEvicted = true;
+        getServer().removeNamespace(this);
+        mGroup.removeChild(this);
+        off();
+        mAdapter.close();
+    }
+
+    private static CompletableFuture<Void> callMiddleware(Middleware middleware, SocketIoSocket socket) {
+        try {
+            final CompletableFuture<Void> future = middleware.call(socket);
+            return (future != null)? future : CompletableFuture.completedFuture(null);
+        } catch (RuntimeException e) {
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(e);
+            return future;
+        }
+    }
 }
\ No newline at end of file
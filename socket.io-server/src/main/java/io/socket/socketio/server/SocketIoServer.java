@@ -2,12 +2,17 @@ package io.socket.socketio.server;
 
 import io.socket.engineio.server.EngineIoServer;
 import io.socket.engineio.server.EngineIoSocket;
+import io.socket.socketio.server.parser.DecoderLimits;
 import io.socket.socketio.server.parser.IOParser;
+import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
+import io.socket.socketio.server.utils.HashedTimingWheel;
 
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Pattern;
 
 /**
@@ -21,8 +26,14 @@ public final class SocketIoServer {
     private final Map<Pattern, SocketIoNamespaceProvider> mNamespaceRegexProviderMap = new ConcurrentHashMap<>();
     private final Map<SocketIoNamespaceProvider, SocketIoNamespaceGroupImpl> mNamespaceGroups = new ConcurrentHashMap<>();
     private final Map<String, SocketIoNamespaceImpl> mNamespaces = new ConcurrentHashMap<>();
-    private final Parser.Encoder mEncoder = new IOParser.Encoder();
+    private final NamespaceResolver mNamespaceResolver = new NamespaceResolver();
+    private final Parser.Encoder mEncoder;
+    private final DecoderLimits mDecoderLimits;
+    private final AtomicLong mDecoderLimitExceededCount = new AtomicLong(0);
+    private final AtomicLong mSkippedEventPayloadBytes = new AtomicLong(0);
+    private final AtomicLong mEvictedNamespaceCount = new AtomicLong(0);
     private final ScheduledExecutorService mScheduledExecutor;
+    private final HashedTimingWheel mTimingWheel;
 
     /**
      * Create instance of server with default options.
@@ -42,7 +53,14 @@ public final class SocketIoServer {
     public SocketIoServer(EngineIoServer server, SocketIoServerOptions options) {
         mOptions = options;
         mOptions.lock();
+        mEncoder = mOptions.getParserFactory().createEncoder(mOptions.getJsonCodec());
+        mDecoderLimits = new DecoderLimits(
+                mOptions.getMaxFrameSize(),
+                mOptions.getMaxAttachments(),
+                mOptions.getMaxNestingDepth(),
+                mOptions.getMaxPendingBinaryBytes());
         mScheduledExecutor = server.getScheduledExecutor();
+        mTimingWheel = new HashedTimingWheel(mScheduledExecutor, 100, TimeUnit.MILLISECONDS, 512);
 
         namespace("/");
 
@@ -63,6 +81,13 @@ public final class SocketIoServer {
         return mScheduledExecutor;
     }
 
+    /**
+     * Get the timing wheel shared by all timeouts of this server.
+     */
+    HashedTimingWheel getTimingWheel() {
+        return mTimingWheel;
+    }
+
     /**
      * Get the packet encoder of this server.
      *
@@ -72,6 +97,48 @@ public final class SocketIoServer {
         return mEncoder;
     }
 
+    /**
+     * Get the limits enforced by the packet decoders of this server.
+     */
+    DecoderLimits getDecoderLimits() {
+        return mDecoderLimits;
+    }
+
+    /**
+     * Record a client disconnected for exceeding a decoder limit.
+     */
+    void onDecoderLimitExceeded() {
+        mDecoderLimitExceededCount.incrementAndGet();
+    }
+
+    /**
+     * Get the number of clients disconnected for exceeding a decoder limit.
+     *
+     * @return Number of decoder limit violations.
+     */
+    public long getDecoderLimitExceededCount() {
+        return mDecoderLimitExceededCount.get();
+    }
+
+    /**
+     * Record an event payload skipped because the event had no listeners.
+     *
+     * @param size Size of the skipped payload.
+     */
+    void onEventPayloadSkipped(int size) {
+        mSkippedEventPayloadBytes.addAndGet(size);
+    }
+
+    /**
+     * Get the total size of event payloads that were not parsed because the event had no listeners.
+     * Only counted when lazy event decoding is enabled.
+     *
+     * @return Skipped payload size in characters.
+     */
+    public long getSkippedEventPayloadBytes() {
+        return mSkippedEventPayloadBytes.get();
+    }
+
     /**
      * Gets the adapter factory of this server.
      *
@@ -86,15 +153,97 @@ public final class SocketIoServer {
             namespace = "/" + namespace;
         }
 
-        for (SocketIoNamespaceProvider provider : mNamespaceGroups.keySet()) {
-            if (provider.checkNamespace(namespace)) {
-                SocketIoNamespaceGroupImpl namespaceGroup = mNamespaceGroups.get(provider);
-                SocketIoNamespaceImpl nsp = namespaceGroup.createChild(namespace);
-                mNamespaces.put(namespace, nsp);
-                return true;
+        return createDynamicNamespace(namespace) != null;
+    }
+
+    /**
+     * Find the namespace a client connects to.
+     * Dynamic namespaces are created if a namespace provider accepts the name.
+     *
+     * @param namespace Name of namespace with or without '/' prefix.
+     * @return Namespace instance or null if there is no such namespace.
+     */
+    SocketIoNamespaceImpl findNamespace(String namespace) {
+        if (namespace.charAt(0) != '/') {
+            namespace = "/" + namespace;
+        }
+
+        final SocketIoNamespaceImpl nsp = mNamespaces.get(namespace);
+        return (nsp != null)? nsp : createDynamicNamespace(namespace);
+    }
+
+    /**
+     * Remove an evicted dynamic namespace.
+     *
+     * @param namespace Namespace to remove.
+     */
+    void removeNamespace(SocketIoNamespaceImpl namespace) {
+        if (mNamespaces.remove(namespace.getName(), namespace)) {
+            mEvictedNamespaceCount.incrementAndGet();
+        }
+    }
+
+    /**
+     * Get the number of dynamic namespaces created for namespace providers and patterns.
+     *
+     * @return Number of live dynamic namespaces.
+     */
+    public int getDynamicNamespaceCount() {
+        int count = 0;
+        for (SocketIoNamespaceGroupImpl namespaceGroup : mNamespaceGroups.values()) {
+            count += namespaceGroup.getChildCount();
+        }
+        return count;
+    }
+
+    /**
+     * Get the number of dynamic namespaces removed after being idle.
+     *
+     * @return Number of evicted dynamic namespaces.
+     */
+    public long getEvictedNamespaceCount() {
+        return mEvictedNamespaceCount.get();
+    }
+
+    private SocketIoNamespaceImpl createDynamicNamespace(String namespace) {
+        final SocketIoNamespaceGroupImpl namespaceGroup = mNamespaceResolver.resolve(namespace);
+        if (namespaceGroup == null) {
+            return null;
+        }
+
+        // Connections to the same new namespace may race, only one of them creates the child
+        return mNamespaces.computeIfAbsent(namespace, namespaceGroup::createChild);
+    }
+
+    /**
+     * Broadcast an event to the sockets of every namespace, including dynamic namespaces.
+     * The arguments are converted once. Namespaces using {@link SocketIoMemoryAdapter} share a single
+     * encoding that only differs in the namespace prefix, other adapters receive a packet with the converted arguments.
+     *
+     * @param rooms Rooms to broadcast to in every namespace or null to broadcast to all sockets.
+     * @param event Name of event.
+     * @param args Arguments to send.
+     * @throws IllegalArgumentException If event is null or args contain invalid data type.
+     */
+    public void broadcastAll(String[] rooms, String event, Object... args) throws IllegalArgumentException {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null.");
+        }
+
+        final Packet<?> packet = PacketUtils.createDataPacket(mOptions.getJsonCodec(), Parser.EVENT, event, args);
+        io.socket.engineio.server.parser.Packet<?>[] encodedPacket = null;
+        for (SocketIoNamespaceImpl namespace : mNamespaces.values()) {
+            final SocketIoAdapter adapter = namespace.getAdapter();
+            if ((mEncoder instanceof IOParser.Encoder) && (adapter instanceof SocketIoMemoryAdapter)) {
+                // Frames of all namespaces share the encoding and only differ in the namespace prefix
+                if (encodedPacket == null) {
+                    encodedPacket = PacketUtils.encodePacket(mEncoder, new Packet<>(packet.type, packet.data));
+                }
+                ((SocketIoMemoryAdapter) adapter).broadcastEncoded(encodedPacket, rooms);
+            } else {
+                adapter.broadcast(new Packet<>(packet.type, packet.data), rooms);
             }
         }
-        return false;
     }
 
     /**
@@ -133,19 +282,31 @@ public final class SocketIoServer {
     }
 
     public synchronized SocketIoNamespace namespace(SocketIoNamespaceProvider namespaceProvider) {
+        return namespaceGroup(namespaceProvider, null);
+    }
+
+    public synchronized SocketIoNamespace namespace(final Pattern namespaceRegex) {
+        final SocketIoNamespaceProvider provider = mNamespaceRegexProviderMap.computeIfAbsent(
+                namespaceRegex,
+                r -> namespace -> r.matcher(namespace).matches());
+        return namespaceGroup(provider, namespaceRegex);
+    }
+
+    /**
+     * Get the namespace group of a provider, creating it if not already present.
+     *
+     * @param namespaceProvider Provider of the group.
+     * @param namespaceRegex Pattern the provider matches with or null if it is not pattern based.
+     * @return Namespace group instance.
+     */
+    private SocketIoNamespaceGroupImpl namespaceGroup(SocketIoNamespaceProvider namespaceProvider, Pattern namespaceRegex) {
         SocketIoNamespaceGroupImpl nsp = mNamespaceGroups.get(namespaceProvider);
         if (nsp == null) {
             nsp = new SocketIoNamespaceGroupImpl(this);
             mNamespaceGroups.put(namespaceProvider, nsp);
+            mNamespaceResolver.addProvider(namespaceProvider, namespaceRegex, nsp);
         }
 
         return nsp;
     }
-
-    public synchronized SocketIoNamespace namespace(final Pattern namespaceRegex) {
-        final SocketIoNamespaceProvider provider = mNamespaceRegexProviderMap.computeIfAbsent(
-                namespaceRegex,
-                r -> namespace -> r.matcher(namespace).matches());
-        return namespace(provider);
-    }
 }
\ No newline at end of file
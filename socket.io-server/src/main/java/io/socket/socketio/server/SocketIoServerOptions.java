@@ -1,5 +1,12 @@
 package io.socket.socketio.server;
 
+import io.socket.socketio.server.parser.JsonCodec;
+import io.socket.socketio.server.parser.IOParser;
+import io.socket.socketio.server.parser.OrgJsonCodec;
+import io.socket.socketio.server.parser.ParserFactory;
+
+import java.util.concurrent.Executor;
+
 /**
  * Options for {@link SocketIoServer}
  */
@@ -11,6 +18,25 @@ public final class SocketIoServerOptions {
      * This instance is locked and cannot be modified.
      *
      * adapter factory: {@link SocketIoMemoryAdapter.Factory}
+     * broadcast fan-out threshold: 0 (disabled)
+     * broadcast fan-out chunk size: 1024
+     * broadcast fan-out executor: null ({@link java.util.concurrent.ForkJoinPool#commonPool()})
+     * volatile buffer threshold: 0
+     * max outbound queue bytes: 0 (unlimited)
+     * max outbound queue packets: 0 (unlimited)
+     * outbound queue policy: {@link OutboundQueuePolicy#DROP_OLDEST}
+     * coalesce delay: 0 (disabled)
+     * coalesce max bytes: 65536
+     * ack timeout: 0 (no timeout)
+     * json codec: {@link OrgJsonCodec}
+     * parser factory: {@link IOParser#FACTORY}
+     * max frame size: 0 (unlimited)
+     * max attachments: 100
+     * max nesting depth: 1000
+     * max pending binary bytes: 0 (unlimited)
+     * lazy event decoding: false
+     * dynamic namespace idle timeout: 0 (disabled)
+     * middleware executor: null (thread receiving the connect packet)
      */
     public static final SocketIoServerOptions DEFAULT = new SocketIoServerOptions();
 
@@ -19,12 +45,50 @@ public final class SocketIoServerOptions {
     static {
         DEFAULT.setAdapterFactory(MEMORY_ADAPTER_FACTORY);
         DEFAULT.setConnectionTimeout(45000);
+        DEFAULT.setBroadcastFanOutThreshold(0);
+        DEFAULT.setBroadcastFanOutChunkSize(1024);
+        DEFAULT.setBroadcastFanOutExecutor(null);
+        DEFAULT.setVolatileBufferThreshold(0);
+        DEFAULT.setMaxOutboundQueueBytes(0);
+        DEFAULT.setMaxOutboundQueuePackets(0);
+        DEFAULT.setOutboundQueuePolicy(OutboundQueuePolicy.DROP_OLDEST);
+        DEFAULT.setCoalesceDelayMicros(0);
+        DEFAULT.setCoalesceMaxBytes(65536);
+        DEFAULT.setAckTimeout(0);
+        DEFAULT.setJsonCodec(OrgJsonCodec.INSTANCE);
+        DEFAULT.setParserFactory(IOParser.FACTORY);
+        DEFAULT.setMaxFrameSize(0);
+        DEFAULT.setMaxAttachments(100);
+        DEFAULT.setMaxNestingDepth(1000);
+        DEFAULT.setMaxPendingBinaryBytes(0);
+        DEFAULT.setLazyEventDecoding(false);
+        DEFAULT.setDynamicNamespaceIdleTimeout(0);
+        DEFAULT.setMiddlewareExecutor(null);
         DEFAULT.lock();
     }
 
     private boolean mIsLocked;
     private long mConnectionTimeout;
     private SocketIoAdapter.AdapterFactory mAdapterFactory;
+    private int mBroadcastFanOutThreshold;
+    private int mBroadcastFanOutChunkSize;
+    private Executor mBroadcastFanOutExecutor;
+    private long mVolatileBufferThreshold;
+    private long mMaxOutboundQueueBytes;
+    private int mMaxOutboundQueuePackets;
+    private OutboundQueuePolicy mOutboundQueuePolicy;
+    private long mCoalesceDelayMicros;
+    private long mCoalesceMaxBytes;
+    private long mAckTimeout;
+    private JsonCodec mJsonCodec;
+    private ParserFactory mParserFactory;
+    private int mMaxFrameSize;
+    private int mMaxAttachments;
+    private int mMaxNestingDepth;
+    private long mMaxPendingBinaryBytes;
+    private boolean mLazyEventDecoding;
+    private long mDynamicNamespaceIdleTimeout;
+    private Executor mMiddlewareExecutor;
 
     private SocketIoServerOptions() {
         mIsLocked = false;
@@ -39,7 +103,26 @@ public final class SocketIoServerOptions {
     public static SocketIoServerOptions newFromDefault() {
         return (new SocketIoServerOptions())
                 .setConnectionTimeout(DEFAULT.getConnectionTimeout())
-                .setAdapterFactory(DEFAULT.getAdapterFactory());
+                .setAdapterFactory(DEFAULT.getAdapterFactory())
+                .setBroadcastFanOutThreshold(DEFAULT.getBroadcastFanOutThreshold())
+                .setBroadcastFanOutChunkSize(DEFAULT.getBroadcastFanOutChunkSize())
+                .setBroadcastFanOutExecutor(DEFAULT.getBroadcastFanOutExecutor())
+                .setVolatileBufferThreshold(DEFAULT.getVolatileBufferThreshold())
+                .setMaxOutboundQueueBytes(DEFAULT.getMaxOutboundQueueBytes())
+                .setMaxOutboundQueuePackets(DEFAULT.getMaxOutboundQueuePackets())
+                .setOutboundQueuePolicy(DEFAULT.getOutboundQueuePolicy())
+                .setCoalesceDelayMicros(DEFAULT.getCoalesceDelayMicros())
+                .setCoalesceMaxBytes(DEFAULT.getCoalesceMaxBytes())
+                .setAckTimeout(DEFAULT.getAckTimeout())
+                .setJsonCodec(DEFAULT.getJsonCodec())
+                .setParserFactory(DEFAULT.getParserFactory())
+                .setMaxFrameSize(DEFAULT.getMaxFrameSize())
+                .setMaxAttachments(DEFAULT.getMaxAttachments())
+                .setMaxNestingDepth(DEFAULT.getMaxNestingDepth())
+                .setMaxPendingBinaryBytes(DEFAULT.getMaxPendingBinaryBytes())
+                .setLazyEventDecoding(DEFAULT.isLazyEventDecoding())
+                .setDynamicNamespaceIdleTimeout(DEFAULT.getDynamicNamespaceIdleTimeout())
+                .setMiddlewareExecutor(DEFAULT.getMiddlewareExecutor());
     }
 
     /**
@@ -84,10 +167,567 @@ public final class SocketIoServerOptions {
         return this;
     }
 
+    /**
+     * Gets the number of recipients above which a broadcast is delivered in parallel.
+     */
+    public int getBroadcastFanOutThreshold() {
+        return mBroadcastFanOutThreshold;
+    }
+
+    /**
+     * Sets the number of recipients above which a broadcast is delivered in parallel.
+     * The recipients are split into chunks that are delivered on the fan-out executor.
+     * The broadcasting thread waits for all chunks to be delivered, so consecutive
+     * broadcasts from one thread reach every socket in order.
+     *
+     * @param broadcastFanOutThreshold Recipient count threshold or 0 to disable parallel delivery.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If threshold is negative.
+     */
+    public SocketIoServerOptions setBroadcastFanOutThreshold(int broadcastFanOutThreshold) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Broadcast fan-out threshold cannot be set. Instance is locked.");
+        }
+        if (broadcastFanOutThreshold < 0) {
+            throw new IllegalArgumentException("broadcastFanOutThreshold must not be negative.");
+        }
+
+        mBroadcastFanOutThreshold = broadcastFanOutThreshold;
+        return this;
+    }
+
+    /**
+     * Gets the number of recipients delivered by one parallel broadcast task.
+     */
+    public int getBroadcastFanOutChunkSize() {
+        return mBroadcastFanOutChunkSize;
+    }
+
+    /**
+     * Sets the number of recipients delivered by one parallel broadcast task.
+     *
+     * @param broadcastFanOutChunkSize Number of recipients per task.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If chunk size is not positive.
+     */
+    public SocketIoServerOptions setBroadcastFanOutChunkSize(int broadcastFanOutChunkSize) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Broadcast fan-out chunk size cannot be set. Instance is locked.");
+        }
+        if (broadcastFanOutChunkSize <= 0) {
+            throw new IllegalArgumentException("broadcastFanOutChunkSize must be positive.");
+        }
+
+        mBroadcastFanOutChunkSize = broadcastFanOutChunkSize;
+        return this;
+    }
+
+    /**
+     * Gets the executor used for parallel broadcast delivery.
+     *
+     * @return Executor instance or null if the common fork-join pool is used.
+     */
+    public Executor getBroadcastFanOutExecutor() {
+        return mBroadcastFanOutExecutor;
+    }
+
+    /**
+     * Sets the executor used for parallel broadcast delivery.
+     *
+     * @param broadcastFanOutExecutor Executor instance or null to use the common fork-join pool.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     */
+    public SocketIoServerOptions setBroadcastFanOutExecutor(Executor broadcastFanOutExecutor) throws IllegalStateException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Broadcast fan-out executor cannot be set. Instance is locked.");
+        }
+
+        mBroadcastFanOutExecutor = broadcastFanOutExecutor;
+        return this;
+    }
+
+    /**
+     * Gets the number of bytes that may be waiting in the transport before volatile packets are dropped.
+     */
+    public long getVolatileBufferThreshold() {
+        return mVolatileBufferThreshold;
+    }
+
+    /**
+     * Sets the number of bytes that may be waiting in the transport before volatile packets are dropped.
+     * With the default of 0, volatile packets are dropped whenever the transport is not writable,
+     * for example while a polling client has no pending request.
+     *
+     * @param volatileBufferThreshold Threshold in bytes.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If threshold is negative.
+     */
+    public SocketIoServerOptions setVolatileBufferThreshold(long volatileBufferThreshold) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Volatile buffer threshold cannot be set. Instance is locked.");
+        }
+        if (volatileBufferThreshold < 0) {
+            throw new IllegalArgumentException("volatileBufferThreshold must not be negative.");
+        }
+
+        mVolatileBufferThreshold = volatileBufferThreshold;
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of bytes queued for a client while its transport is busy.
+     */
+    public long getMaxOutboundQueueBytes() {
+        return mMaxOutboundQueueBytes;
+    }
+
+    /**
+     * Sets the maximum number of bytes queued for a client while its transport is busy.
+     * The outbound queue policy is applied when this limit is exceeded.
+     *
+     * @param maxOutboundQueueBytes Limit in bytes or 0 for no limit.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If limit is negative.
+     */
+    public SocketIoServerOptions setMaxOutboundQueueBytes(long maxOutboundQueueBytes) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Max outbound queue bytes cannot be set. Instance is locked.");
+        }
+        if (maxOutboundQueueBytes < 0) {
+            throw new IllegalArgumentException("maxOutboundQueueBytes must not be negative.");
+        }
+
+        mMaxOutboundQueueBytes = maxOutboundQueueBytes;
+        return this;
+    }
+
+    /**
+     * Gets the maximum number of packets queued for a client while its transport is busy.
+     */
+    public int getMaxOutboundQueuePackets() {
+        return mMaxOutboundQueuePackets;
+    }
+
+    /**
+     * Sets the maximum number of packets queued for a client while its transport is busy.
+     * The outbound queue policy is applied when this limit is exceeded.
+     *
+     * @param maxOutboundQueuePackets Limit in packets or 0 for no limit.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If limit is negative.
+     */
+    public SocketIoServerOptions setMaxOutboundQueuePackets(int maxOutboundQueuePackets) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Max outbound queue packets cannot be set. Instance is locked.");
+        }
+        if (maxOutboundQueuePackets < 0) {
+            throw new IllegalArgumentException("maxOutboundQueuePackets must not be negative.");
+        }
+
+        mMaxOutboundQueuePackets = maxOutboundQueuePackets;
+        return this;
+    }
+
+    /**
+     * Gets the policy applied when the outbound queue of a client is full.
+     */
+    public OutboundQueuePolicy getOutboundQueuePolicy() {
+        return mOutboundQueuePolicy;
+    }
+
+    /**
+     * Sets the policy applied when the outbound queue of a client is full.
+     *
+     * @param outboundQueuePolicy Policy to apply.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If policy is null.
+     */
+    public SocketIoServerOptions setOutboundQueuePolicy(OutboundQueuePolicy outboundQueuePolicy) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Outbound queue policy cannot be set. Instance is locked.");
+        }
+        if (outboundQueuePolicy == null) {
+            throw new IllegalArgumentException("outboundQueuePolicy must not be null.");
+        }
+
+        mOutboundQueuePolicy = outboundQueuePolicy;
+        return this;
+    }
+
+    /**
+     * Gets the time in microseconds outbound packets are held to be sent together.
+     */
+    public long getCoalesceDelayMicros() {
+        return mCoalesceDelayMicros;
+    }
+
+    /**
+     * Sets the time in microseconds outbound packets are held to be sent together.
+     * Packets sent to a client within this time are handed to the transport in one go.
+     * This mostly benefits polling clients, which receive them in a single payload.
+     *
+     * @param coalesceDelayMicros Delay in microseconds or 0 to disable coalescing.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If delay is negative.
+     */
+    public SocketIoServerOptions setCoalesceDelayMicros(long coalesceDelayMicros) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Coalesce delay cannot be set. Instance is locked.");
+        }
+        if (coalesceDelayMicros < 0) {
+            throw new IllegalArgumentException("coalesceDelayMicros must not be negative.");
+        }
+
+        mCoalesceDelayMicros = coalesceDelayMicros;
+        return this;
+    }
+
+    /**
+     * Gets the number of held bytes that causes coalesced packets to be sent before the delay.
+     */
+    public long getCoalesceMaxBytes() {
+        return mCoalesceMaxBytes;
+    }
+
+    /**
+     * Sets the number of held bytes that causes coalesced packets to be sent before the delay.
+     *
+     * @param coalesceMaxBytes Limit in bytes or 0 to always wait for the delay.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If limit is negative.
+     */
+    public SocketIoServerOptions setCoalesceMaxBytes(long coalesceMaxBytes) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Coalesce max bytes cannot be set. Instance is locked.");
+        }
+        if (coalesceMaxBytes < 0) {
+            throw new IllegalArgumentException("coalesceMaxBytes must not be negative.");
+        }
+
+        mCoalesceMaxBytes = coalesceMaxBytes;
+        return this;
+    }
+
+    /**
+     * Gets the default time in milliseconds to wait for an acknowledgement.
+     */
+    public long getAckTimeout() {
+        return mAckTimeout;
+    }
+
+    /**
+     * Sets the default time in milliseconds to wait for an acknowledgement.
+     * After this time, {@link SocketIoSocket.ReceivedByRemoteAcknowledgementCallback#onTimeout()}
+     * is called and a late acknowledgement is ignored. Unless overridden, the callback then receives
+     * a {@link java.util.concurrent.TimeoutException} as its only argument.
+     *
+     * @param ackTimeout Timeout in milliseconds or 0 to wait until disconnect.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If timeout is negative.
+     */
+    public SocketIoServerOptions setAckTimeout(long ackTimeout) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Ack timeout cannot be set. Instance is locked.");
+        }
+        if (ackTimeout < 0) {
+            throw new IllegalArgumentException("ackTimeout must not be negative.");
+        }
+
+        mAckTimeout = ackTimeout;
+        return this;
+    }
+
+    /**
+     * Gets the codec used for the JSON payload of packets.
+     */
+    public JsonCodec getJsonCodec() {
+        return mJsonCodec;
+    }
+
+    /**
+     * Sets the codec used for the JSON payload of packets.
+     * Event arguments and received data are in the tree types of this codec.
+     *
+     * @param jsonCodec Codec to use.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If codec is null.
+     */
+    public SocketIoServerOptions setJsonCodec(JsonCodec jsonCodec) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Json codec cannot be set. Instance is locked.");
+        }
+        if (jsonCodec == null) {
+            throw new IllegalArgumentException("jsonCodec must not be null.");
+        }
+
+        mJsonCodec = jsonCodec;
+        return this;
+    }
+
+    /**
+     * Gets the factory for the wire format of packets.
+     */
+    public ParserFactory getParserFactory() {
+        return mParserFactory;
+    }
+
+    /**
+     * Sets the factory for the wire format of packets.
+     * All clients of the server must use the matching parser.
+     *
+     * @param parserFactory Factory to use.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If factory is null.
+     */
+    public SocketIoServerOptions setParserFactory(ParserFactory parserFactory) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Parser factory cannot be set. Instance is locked.");
+        }
+        if (parserFactory == null) {
+            throw new IllegalArgumentException("parserFactory must not be null.");
+        }
+
+        mParserFactory = parserFactory;
+        return this;
+    }
+
+    /**
+     * Gets the max size of a received frame.
+     */
+    public int getMaxFrameSize() {
+        return mMaxFrameSize;
+    }
+
+    /**
+     * Sets the max size of a received frame, in characters for text frames and bytes for binary frames.
+     * Clients sending a larger frame are disconnected. Set to 0 to disable.
+     *
+     * @param maxFrameSize Max frame size.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If size is negative.
+     */
+    public SocketIoServerOptions setMaxFrameSize(int maxFrameSize) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Max frame size cannot be set. Instance is locked.");
+        }
+        if (maxFrameSize < 0) {
+            throw new IllegalArgumentException("maxFrameSize must not be negative.");
+        }
+
+        mMaxFrameSize = maxFrameSize;
+        return this;
+    }
+
+    /**
+     * Gets the max binary attachments of a received packet.
+     */
+    public int getMaxAttachments() {
+        return mMaxAttachments;
+    }
+
+    /**
+     * Sets the max binary attachments of a received packet.
+     * Clients announcing more attachments are disconnected before any attachment is buffered. Set to 0 to disable.
+     *
+     * @param maxAttachments Max attachments.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If value is negative.
+     */
+    public SocketIoServerOptions setMaxAttachments(int maxAttachments) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Max attachments cannot be set. Instance is locked.");
+        }
+        if (maxAttachments < 0) {
+            throw new IllegalArgumentException("maxAttachments must not be negative.");
+        }
+
+        mMaxAttachments = maxAttachments;
+        return this;
+    }
+
+    /**
+     * Gets the max nesting depth of received packet data.
+     */
+    public int getMaxNestingDepth() {
+        return mMaxNestingDepth;
+    }
+
+    /**
+     * Sets the max nesting depth of arrays and objects in received packet data.
+     * Depth is checked before the data is parsed. Set to 0 to disable.
+     *
+     * @param maxNestingDepth Max nesting depth.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If value is negative.
+     */
+    public SocketIoServerOptions setMaxNestingDepth(int maxNestingDepth) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Max nesting depth cannot be set. Instance is locked.");
+        }
+        if (maxNestingDepth < 0) {
+            throw new IllegalArgumentException("maxNestingDepth must not be negative.");
+        }
+
+        mMaxNestingDepth = maxNestingDepth;
+        return this;
+    }
+
+    /**
+     * Gets the max bytes of binary attachments buffered for a received packet.
+     */
+    public long getMaxPendingBinaryBytes() {
+        return mMaxPendingBinaryBytes;
+    }
+
+    /**
+     * Sets the max bytes of binary attachments buffered while a received packet is incomplete.
+     * Set to 0 to disable.
+     *
+     * @param maxPendingBinaryBytes Max pending bytes.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If value is negative.
+     */
+    public SocketIoServerOptions setMaxPendingBinaryBytes(long maxPendingBinaryBytes) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Max pending binary bytes cannot be set. Instance is locked.");
+        }
+        if (maxPendingBinaryBytes < 0) {
+            throw new IllegalArgumentException("maxPendingBinaryBytes must not be negative.");
+        }
+
+        mMaxPendingBinaryBytes = maxPendingBinaryBytes;
+        return this;
+    }
+
+    /**
+     * Gets whether event arguments are parsed only if the event has listeners.
+     */
+    public boolean isLazyEventDecoding() {
+        return mLazyEventDecoding;
+    }
+
+    /**
+     * Sets whether event arguments are parsed only if the event has listeners.
+     * Payloads of events without listeners are skipped without being parsed, validated or
+     * checked against the decoder nesting depth limit, so enabling this is opt-in.
+     *
+     * @param lazyEventDecoding True to parse event arguments lazily.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     */
+    public SocketIoServerOptions setLazyEventDecoding(boolean lazyEventDecoding) throws IllegalStateException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Lazy event decoding cannot be set. Instance is locked.");
+        }
+
+        mLazyEventDecoding = lazyEventDecoding;
+        return this;
+    }
+
+    /**
+     * Gets the time (ms) a dynamic namespace may stay without sockets before it is removed.
+     */
+    public long getDynamicNamespaceIdleTimeout() {
+        return mDynamicNamespaceIdleTimeout;
+    }
+
+    /**
+     * Sets the time (ms) a dynamic namespace may stay without sockets before it is removed.
+     * Dynamic namespaces are the ones created for namespace providers and patterns. A removed
+     * namespace loses its listeners and adapter, and is created again by the next connection to it.
+     *
+     * @param dynamicNamespaceIdleTimeout Timeout in milliseconds or 0 to never remove dynamic namespaces.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     * @throws IllegalArgumentException If timeout is negative.
+     */
+    public SocketIoServerOptions setDynamicNamespaceIdleTimeout(long dynamicNamespaceIdleTimeout) throws IllegalStateException, IllegalArgumentException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Dynamic namespace idle timeout cannot be set. Instance is locked.");
+        }
+        if (dynamicNamespaceIdleTimeout < 0) {
+            throw new IllegalArgumentException("dynamicNamespaceIdleTimeout must not be negative.");
+        }
+
+        mDynamicNamespaceIdleTimeout = dynamicNamespaceIdleTimeout;
+        return this;
+    }
+
+    /**
+     * Gets the executor namespace middlewares are called on.
+     *
+     * @return Executor instance or null if middlewares are called on the thread receiving the connect packet.
+     */
+    public Executor getMiddlewareExecutor() {
+        return mMiddlewareExecutor;
+    }
+
+    /**
+     * Sets the executor namespace middlewares are called on.
+     * Middlewares that block, e.g. to validate a token with a remote service, should run on
+     * their own executor so that they do not hold up transport threads.
+     *
+     * @param middlewareExecutor Executor instance or null to call middlewares on the thread receiving the connect packet.
+     * @return Instance for chaining.
+     * @throws IllegalStateException If instance is locked.
+     */
+    public SocketIoServerOptions setMiddlewareExecutor(Executor middlewareExecutor) throws IllegalStateException {
+        if (mIsLocked) {
+            throw new IllegalStateException("Middleware executor cannot be set. Instance is locked.");
+        }
+
+        mMiddlewareExecutor = middlewareExecutor;
+        return this;
+    }
+
     /**
      * Lock this options instance to prevent modifications.
      */
     public void lock() {
         mIsLocked = true;
     }
-}
\ No newline at end of file
+
+    /**
+     * Policy applied when the outbound queue of a client exceeds its limits.
+     */
+    public enum OutboundQueuePolicy {
+
+        /**
+         * Drop the oldest queued packets until the queue is within its limits.
+         */
+        DROP_OLDEST,
+
+        /**
+         * Drop queued volatile packets, oldest first.
+         * The client is disconnected if that does not bring the queue within its limits.
+         */
+        DROP_VOLATILE,
+
+        /**
+         * Disconnect the client.
+         */
+        DISCONNECT,
+
+        /**
+         * Keep all packets and call {@link SocketIoSocket.BackpressureListener#onBackpressure()} on the sockets of the client.
+         * {@link SocketIoSocket.BackpressureListener#onDrain()} is called once the queue has been handed to the transport.
+         */
+        NOTIFY
+    }
+}
@@ -2,14 +2,17 @@ package io.socket.socketio.server;
 
 import io.socket.engineio.server.Emitter;
 import io.socket.engineio.server.utils.ServerYeast;
+import io.socket.socketio.server.parser.JsonCodec;
+import io.socket.socketio.server.parser.LazyEventPayload;
 import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
+import io.socket.socketio.server.utils.HashedTimingWheel;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Socket.io socket class.
@@ -19,8 +22,6 @@ import java.util.concurrent.ConcurrentLinkedQueue;
 @SuppressWarnings("WeakerAccess")
 public final class SocketIoSocket extends Emitter {
 
-    private static final Object[] EMPTY_ARGS = new Object[0];
-
     /**
      * Callback for all user events received on socket.
      */
@@ -35,6 +36,24 @@ public final class SocketIoSocket extends Emitter {
         void event(String eventName, Object... args);
     }
 
+    /**
+     * Callback for the outbound queue state of the client of a socket.
+     * Only called with the {@link SocketIoServerOptions.OutboundQueuePolicy#NOTIFY} policy.
+     * Kept apart from socket events so that application events of any name are not affected.
+     */
+    public interface BackpressureListener {
+
+        /**
+         * Called when the outbound queue of the client exceeds its limits.
+         */
+        void onBackpressure();
+
+        /**
+         * Called when the queued packets have been handed to the transport after backpressure.
+         */
+        void onDrain();
+    }
+
     /**
      * Callback for remote received acknowledgement.
      */
@@ -46,6 +65,16 @@ public final class SocketIoSocket extends Emitter {
          * @param args Data sent by remote client.
          */
         void onReceivedByRemote(Object... args);
+
+        /**
+         * Called when remote client did not call ack callback within the timeout.
+         * The default implementation calls {@link #onReceivedByRemote(Object...)} with a
+         * {@link TimeoutException} as the only argument, so callbacks implemented as lambdas
+         * also learn about the timeout.
+         */
+        default void onTimeout() {
+            onReceivedByRemote(new TimeoutException("Acknowledgement timed out."));
+        }
     }
 
     /**
@@ -61,7 +90,25 @@ public final class SocketIoSocket extends Emitter {
         void sendAcknowledgement(Object... args);
     }
 
+    /**
+     * Callback for user events bound to a type.
+     *
+     * @param <T> Type of the event argument.
+     */
+    public interface TypedEventListener<T> {
+
+        /**
+         * Called when the event is received.
+         *
+         * @param data First argument of the event bound to the listener type.
+         * @param acknowledgement Callback to send ack with or null if remote did not request ack.
+         */
+        void call(T data, ReceivedByLocalAcknowledgementCallback acknowledgement);
+    }
+
     private final ConcurrentLinkedQueue<AllEventListener> mAllEventListeners = new ConcurrentLinkedQueue<>();
+    private final ConcurrentLinkedQueue<BackpressureListener> mBackpressureListeners = new ConcurrentLinkedQueue<>();
+    private final ConcurrentHashMap<String, ConcurrentLinkedQueue<TypedListenerEntry<?>>> mTypedListeners = new ConcurrentHashMap<>();
     private final SocketIoNamespaceImpl mNamespace;
     private final SocketIoClient mClient;
     private final SocketIoAdapter mAdapter;
@@ -69,9 +116,10 @@ public final class SocketIoSocket extends Emitter {
     private final Object mConnectData;
 
     private final HashSet<String> mRooms = new HashSet<>();
-    private final HashMap<Integer, ReceivedByRemoteAcknowledgementCallback> mAcknowledgementCallbacks = new HashMap<>();
+    private final ConcurrentHashMap<Integer, ReceivedByRemoteAcknowledgementCallback> mAcknowledgementCallbacks = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Integer, HashedTimingWheel.Timeout> mAcknowledgementTimeouts = new ConcurrentHashMap<>();
 
-    private boolean mConnected;
+    private volatile boolean mConnected = false;
 
     SocketIoSocket(SocketIoNamespaceImpl namespace, SocketIoClient client, Object connectData) {
         mNamespace = namespace;
@@ -84,8 +132,6 @@ public final class SocketIoSocket extends Emitter {
         } else {
             mId = ServerYeast.yeast();
         }
-
-        mConnected = true;
     }
 
     @Override
@@ -194,10 +240,54 @@ public final class SocketIoSocket extends Emitter {
             throw new IllegalArgumentException("event cannot be null.");
         }
 
-        final Packet<?> packet = PacketUtils.createDataPacket(Parser.EVENT, event, args);
+        final Packet<?> packet = PacketUtils.createDataPacket(getJsonCodec(), Parser.EVENT, event, args);
         mAdapter.broadcast(packet, rooms, new String[] { getId() });
     }
 
+    /**
+     * Create a broadcast operator targeting all clients in this namespace except this client.
+     *
+     * @return Broadcast operator instance.
+     */
+    public SocketIoBroadcastOperator broadcast() {
+        return new SocketIoBroadcastOperator(mNamespace, getId());
+    }
+
+    /**
+     * Create a broadcast operator targeting clients that have joined
+     * specified rooms except this client.
+     *
+     * @param rooms Rooms to send message to.
+     * @return Broadcast operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator to(String... rooms) throws IllegalArgumentException {
+        return broadcast().to(rooms);
+    }
+
+    /**
+     * Alias of {@link #to(String...)}.
+     *
+     * @param rooms Rooms to send message to.
+     * @return Broadcast operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator in(String... rooms) throws IllegalArgumentException {
+        return broadcast().in(rooms);
+    }
+
+    /**
+     * Create a broadcast operator excluding this client and clients that
+     * have joined specified rooms.
+     *
+     * @param rooms Rooms to exclude.
+     * @return Broadcast operator instance.
+     * @throws IllegalArgumentException If rooms is null.
+     */
+    public SocketIoBroadcastOperator except(String... rooms) throws IllegalArgumentException {
+        return broadcast().except(rooms);
+    }
+
     /**
      * Send data to remote client.
      *
@@ -218,20 +308,52 @@ public final class SocketIoSocket extends Emitter {
      * @throws IllegalArgumentException If event is null or argument is not of supported type.
      */
     public void send(String event, Object[] args, ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) throws IllegalArgumentException {
+        send(event, args, mNamespace.getServer().getOptions().getAckTimeout(), acknowledgementCallback);
+    }
+
+    /**
+     * Send data to remote client.
+     *
+     * @param event Name of event to raise on remote client.
+     * @param args Array of arguments to send. Supported types are: JSONObject, JSONArray, null.
+     * @param timeout Time in milliseconds to wait for acknowledgement or 0 to wait until disconnect.
+     * @param acknowledgementCallback Acknowledgement callback to call on remote ack or timeout.
+     * @throws IllegalArgumentException If event is null, timeout is negative or argument is not of supported type.
+     */
+    public void send(String event, Object[] args, long timeout, ReceivedByRemoteAcknowledgementCallback acknowledgementCallback) throws IllegalArgumentException {
         if (event == null) {
             throw new IllegalArgumentException("event cannot be null.");
         }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout must not be negative.");
+        }
 
-        final Packet<?> packet = PacketUtils.createDataPacket(Parser.EVENT, event, args);
+        final Packet<?> packet = PacketUtils.createDataPacket(getJsonCodec(), Parser.EVENT, event, args);
 
         if (acknowledgementCallback != null) {
             packet.id = mNamespace.nextId();
-            mAcknowledgementCallbacks.put(packet.id, acknowledgementCallback);
+            registerAcknowledgement(packet.id, timeout, acknowledgementCallback);
         }
 
         sendPacket(packet);
     }
 
+    /**
+     * Send volatile data to remote client.
+     * The message is dropped if the underlying transport cannot take it right now.
+     *
+     * @param event Name of event to raise on remote client.
+     * @param args Array of arguments to send. Supported types are: JSONObject, JSONArray, null.
+     * @throws IllegalArgumentException If event is null or argument is not of supported type.
+     */
+    public void sendVolatile(String event, Object... args) throws IllegalArgumentException {
+        if (event == null) {
+            throw new IllegalArgumentException("event cannot be null.");
+        }
+
+        sendPacket(PacketUtils.createDataPacket(getJsonCodec(), Parser.EVENT, event, args), true);
+    }
+
     /**
      * Adds the socket to the specified rooms.
      *
@@ -302,17 +424,95 @@ public final class SocketIoSocket extends Emitter {
         mAllEventListeners.remove(listener);
     }
 
+    /**
+     * Register listener for backpressure of the client of this socket.
+     *
+     * @param listener Listener to register.
+     */
+    public void registerBackpressureListener(BackpressureListener listener) {
+        mBackpressureListeners.add(listener);
+    }
+
+    /**
+     * Unregister listener registered with registerBackpressureListener.
+     *
+     * @param listener Listener to unregister.
+     */
+    public void unregisterBackpressureListener(BackpressureListener listener) {
+        mBackpressureListeners.remove(listener);
+    }
+
+    /**
+     * Register a listener for an event with its first argument bound to a type.
+     * The argument is converted by the json codec of the server, binding to arbitrary
+     * classes requires a codec such as {@link io.socket.socketio.server.parser.JacksonJsonCodec}.
+     * If the argument cannot be bound the client is disconnected as for an invalid packet.
+     *
+     * @param event Name of event.
+     * @param type Type to bind the first argument to.
+     * @param listener Listener to register.
+     * @param <T> Type of the event argument.
+     * @return Instance for chaining.
+     * @throws IllegalArgumentException If any argument is null.
+     */
+    public <T> SocketIoSocket on(String event, Class<T> type, TypedEventListener<T> listener) throws IllegalArgumentException {
+        if (event == null || type == null || listener == null) {
+            throw new IllegalArgumentException("event, type and listener must not be null.");
+        }
+
+        mTypedListeners.computeIfAbsent(event, key -> new ConcurrentLinkedQueue<>())
+                .add(new TypedListenerEntry<>(type, listener));
+        return this;
+    }
+
+    /**
+     * Unregister a listener registered with {@link #on(String, Class, TypedEventListener)}.
+     *
+     * @param event Name of event.
+     * @param listener Listener to unregister.
+     * @return Instance for chaining.
+     */
+    public SocketIoSocket off(String event, TypedEventListener<?> listener) {
+        final ConcurrentLinkedQueue<TypedListenerEntry<?>> listeners = mTypedListeners.get(event);
+        if (listeners != null) {
+            listeners.removeIf(entry -> entry.listener == listener);
+        }
+        return this;
+    }
+
     void onEvent(final Packet<?> packet) {
-        Object[] args = (packet.data != null)? unpackEventData((JSONArray)packet.data) : EMPTY_ARGS;
+        final ReceivedByLocalAcknowledgementCallback acknowledgement = (packet.id >= 0)? args1 -> {
+            final Packet<?> ackPacket = PacketUtils.createDataPacket(getJsonCodec(), Parser.ACK, null, args1);
+            ackPacket.id = packet.id;
+            sendPacket(ackPacket);
+        } : null;
+
+        Object data = packet.data;
+        if (data instanceof LazyEventPayload) {
+            final LazyEventPayload payload = (LazyEventPayload) data;
+            final ConcurrentLinkedQueue<TypedListenerEntry<?>> typedListeners = mTypedListeners.get(payload.getEvent());
+            final boolean hasTypedListeners = (typedListeners != null) && !typedListeners.isEmpty();
+            final boolean hasListeners = hasListeners(payload.getEvent()) || !mAllEventListeners.isEmpty();
+            if (!hasListeners && !hasTypedListeners) {
+                mNamespace.getServer().onEventPayloadSkipped(payload.getSize());
+                return;
+            }
+            if (!hasListeners) {
+                // Typed listeners bind straight from the frame without materializing the payload
+                for (TypedListenerEntry<?> entry : typedListeners) {
+                    entry.callBound(payload, acknowledgement);
+                }
+                return;
+            }
+            data = payload.resolve();
+        }
+
+        Object[] args = PacketUtils.unpackData(getJsonCodec(), data);
 
-        if (packet.id >= 0) {
+        if (acknowledgement != null) {
             final Object[] emitArgs = new Object[args.length + 1];
             System.arraycopy(args, 0, emitArgs, 0, args.length);
-            emitArgs[args.length] = (ReceivedByLocalAcknowledgementCallback) args1 -> {
-                final Packet<?> ackPacket = PacketUtils.createDataPacket(Parser.ACK, null, args1);
-                ackPacket.id = packet.id;
-                sendPacket(ackPacket);
-            };
+            emitArgs[args.length] = acknowledgement;
             args = emitArgs;
         }
 
@@ -324,18 +524,84 @@ public final class SocketIoSocket extends Emitter {
         for (AllEventListener listener : mAllEventListeners) {
             listener.event(event, eventArgs);
         }
+
+        final ConcurrentLinkedQueue<TypedListenerEntry<?>> typedListeners = mTypedListeners.get(event);
+        if (typedListeners != null) {
+            final Object argument = (eventArgs.length > 0 && eventArgs[0] != acknowledgement)? eventArgs[0] : null;
+            for (TypedListenerEntry<?> entry : typedListeners) {
+                entry.callConverted(getJsonCodec(), argument, acknowledgement);
+            }
+        }
     }
 
     void onAck(Packet<?> packet) {
-        if (mAcknowledgementCallbacks.containsKey(packet.id)) {
-            ReceivedByRemoteAcknowledgementCallback acknowledgement = mAcknowledgementCallbacks.get(packet.id);
-            mAcknowledgementCallbacks.remove(packet.id);
+        final ReceivedByRemoteAcknowledgementCallback acknowledgement = mAcknowledgementCallbacks.remove(packet.id);
+        if (acknowledgement != null) {
+            final HashedTimingWheel.Timeout timeout = mAcknowledgementTimeouts.remove(packet.id);
+            if (timeout != null) {
+                timeout.cancel();
+            }
 
-            final Object[] args = (packet.data != null)? unpackEventData((JSONArray)packet.data) : EMPTY_ARGS;
+            final Object[] args = PacketUtils.unpackData(getJsonCodec(), packet.data);
             acknowledgement.onReceivedByRemote(args);
         }
     }
 
+    /**
+     * Register a callback for the acknowledgement with the specified id.
+     * The same callback instance may be registered on many sockets for broadcasts.
+     *
+     * @param id Packet id of the acknowledgement.
+     * @param timeout Time in milliseconds to wait for acknowledgement or 0 to wait until disconnect.
+     * @param callback Callback to call on remote ack or timeout.
+     */
+    void registerAcknowledgement(int id, long timeout, ReceivedByRemoteAcknowledgementCallback callback) {
+        mAcknowledgementCallbacks.put(id, callback);
+
+        if (callback instanceof BroadcastAcknowledgement && !((BroadcastAcknowledgement) callback).addRecipient(this)) {
+            // Broadcast completed before the packet was sent to this socket
+            mAcknowledgementCallbacks.remove(id, callback);
+            return;
+        }
+
+        if (timeout > 0) {
+            final HashedTimingWheel.Timeout acknowledgementTimeout = mNamespace.getServer().getTimingWheel().newTimeout(() -> {
+                mAcknowledgementTimeouts.remove(id);
+                if (mAcknowledgementCallbacks.remove(id, callback)) {
+                    callback.onTimeout();
+                }
+            }, timeout, TimeUnit.MILLISECONDS);
+            mAcknowledgementTimeouts.put(id, acknowledgementTimeout);
+
+            // Acknowledgement may have arrived before the timeout was stored
+            if (!mAcknowledgementCallbacks.containsKey(id) && mAcknowledgementTimeouts.remove(id, acknowledgementTimeout)) {
+                acknowledgementTimeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Remove a callback registered with registerAcknowledgement without calling it.
+     *
+     * @param id Packet id of the acknowledgement.
+     * @param callback Callback to remove.
+     */
+    void unregisterAcknowledgement(int id, ReceivedByRemoteAcknowledgementCallback callback) {
+        if (mAcknowledgementCallbacks.remove(id, callback)) {
+            final HashedTimingWheel.Timeout timeout = mAcknowledgementTimeouts.remove(id);
+            if (timeout != null) {
+                timeout.cancel();
+            }
+        }
+    }
+
+    /**
+     * Get the number of acknowledgements this socket is waiting for.
+     */
+    int getPendingAcknowledgementCount() {
+        return mAcknowledgementCallbacks.size();
+    }
+
     void onPacket(Packet<?> packet) {
         switch (packet.type) {
             case Parser.EVENT:
@@ -356,15 +622,11 @@ public final class SocketIoSocket extends Emitter {
     }
 
     void onConnect() {
+        mConnected = true;
         mNamespace.addConnected(this);
         joinRoom(getId());
 
-        final JSONObject data = new JSONObject();
-        try {
-            data.put("sid", getId());
-        } catch (JSONException ignore) {
-        }
-        sendPacket(new Packet<>(Parser.CONNECT, data));
+        sendPacket(new Packet<>(Parser.CONNECT, getJsonCodec().createObject(Collections.singletonMap("sid", getId()))));
     }
 
     void onDisconnect() {
@@ -372,17 +634,44 @@ public final class SocketIoSocket extends Emitter {
     }
 
     void onClose(String reason) {
-        if (mConnected) {
+        // Client and connecting thread may both close the socket, only the first one cleans up
+        synchronized (this) {
+            if (!mConnected) {
+                return;
+            }
             mConnected = false;
+        }
 
-            emit("disconnecting", reason);
+        emit("disconnecting", reason);
 
-            leaveAllRooms();
-            mNamespace.remove(this);
-            mClient.remove(this);
-            mNamespace.removeConnected(this);
+        leaveAllRooms();
+        for (HashedTimingWheel.Timeout timeout : mAcknowledgementTimeouts.values()) {
+            timeout.cancel();
+        }
+        mAcknowledgementTimeouts.clear();
+        for (ReceivedByRemoteAcknowledgementCallback acknowledgement : mAcknowledgementCallbacks.values()) {
+            if (acknowledgement instanceof BroadcastAcknowledgement) {
+                // A broadcast does not wait for sockets that have gone away
+                ((BroadcastAcknowledgement) acknowledgement).onRecipientClosed();
+            }
+        }
+        mAcknowledgementCallbacks.clear();
+        mNamespace.remove(this);
+        mClient.remove(this);
+        mNamespace.removeConnected(this);
 
-            emit("disconnect", reason);
+        emit("disconnect", reason);
+    }
+
+    void onBackpressure() {
+        for (BackpressureListener listener : mBackpressureListeners) {
+            listener.onBackpressure();
+        }
+    }
+
+    void onDrain() {
+        for (BackpressureListener listener : mBackpressureListeners) {
+            listener.onDrain();
         }
     }
 
@@ -397,18 +686,35 @@ public final class SocketIoSocket extends Emitter {
         mClient.sendPacket(packet);
     }
 
-    private static Object[] unpackEventData(JSONArray data) {
-        Object[] result = new Object[data.length()];
-        for (int i = 0; i < result.length; i++) {
-            try {
-                result[i] = data.get(i);
-                if (result[i] == JSONObject.NULL) {
-                    result[i] = null;
-                }
-            } catch (JSONException ex) {
-                throw new RuntimeException(ex);
-            }
+    void sendPacket(Packet<?> packet, boolean isVolatile) {
+        packet.nsp = mNamespace.getName();
+        mClient.sendPacket(packet, isVolatile);
+    }
+
+    void sendEncodedPacket(io.socket.engineio.server.parser.Packet<?>[] packets, boolean isVolatile) {
+        mClient.sendEncodedPacket(packets, isVolatile);
+    }
+
+    private JsonCodec getJsonCodec() {
+        return mNamespace.getServer().getOptions().getJsonCodec();
+    }
+
+    private static final class TypedListenerEntry<T> {
+
+        final Class<T> type;
+        final TypedEventListener<T> listener;
+
+        TypedListenerEntry(Class<T> type, TypedEventListener<T> listener) {
+            this.type = type;
+            this.listener = listener;
+        }
+
+        void callBound(LazyEventPayload payload, ReceivedByLocalAcknowledgementCallback acknowledgement) {
+            listener.call(payload.bind(0, type), acknowledgement);
+        }
+
+        void callConverted(JsonCodec jsonCodec, Object argument, ReceivedByLocalAcknowledgementCallback acknowledgement) {
+            listener.call(jsonCodec.toObject(argument, type), acknowledgement);
         }
-        return result;
     }
-}
\ No newline at end of file
+}
@@ -4,6 +4,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
 import java.util.Iterator;
 import java.util.List;
@@ -22,7 +23,7 @@ public class Binary {
     public static DeconstructedPacket deconstructPacket(Packet packet) {
         List<byte[]> buffers = new ArrayList<>();
 
-        packet.data = _deconstructPacket(packet.data, buffers);
+        packet.data = deconstructData(packet.data, buffers);
         packet.attachments = buffers.size();
 
         DeconstructedPacket result = new DeconstructedPacket();
@@ -31,10 +32,15 @@ public class Binary {
         return result;
     }
 
-    private static Object _deconstructPacket(Object data, List<byte[]> buffers) {
+    /**
+     * Replace binary data with placeholders in a single pass.
+     * Only the arrays and objects on the path to binary data are copied,
+     * data without binary is returned as is.
+     */
+    /*package*/ static Object deconstructData(Object data, List<byte[]> buffers) {
         if (data == null) return null;
 
-        if (data instanceof byte[]) {
+        if (data instanceof byte[] || data instanceof ByteBuffer) {
             JSONObject placeholder = new JSONObject();
             try {
                 placeholder.put(KEY_PLACEHOLDER, true);
@@ -43,53 +49,58 @@ public class Binary {
                 logger.log(Level.WARNING, "An error occured while putting data to JSONObject", e);
                 return null;
             }
-            buffers.add((byte[])data);
+            buffers.add((data instanceof ByteBuffer)? toByteArray((ByteBuffer) data) : (byte[]) data);
             return placeholder;
         } else if (data instanceof JSONArray) {
-            JSONArray newData = new JSONArray();
             JSONArray _data = (JSONArray)data;
+            JSONArray newData = null;
             int len = _data.length();
             for (int i = 0; i < len; i ++) {
-                try {
-                    newData.put(i, _deconstructPacket(_data.get(i), buffers));
-                } catch (JSONException e) {
-                    logger.log(Level.WARNING, "An error occured while putting packet data to JSONObject", e);
-                    return null;
+                Object item = _data.opt(i);
+                Object newItem = deconstructData(item, buffers);
+                if (newItem != item && newData == null) {
+                    newData = new JSONArray();
+                    for (int j = 0; j < i; j ++) {
+                        newData.put(_data.opt(j));
+                    }
+                }
+                if (newData != null) {
+                    newData.put(newItem);
                 }
             }
-            return newData;
+            return (newData != null)? newData : _data;
         } else if (data instanceof JSONObject) {
-            JSONObject newData = new JSONObject();
             JSONObject _data = (JSONObject)data;
-            Iterator<?> iterator = _data.keys();
-            while (iterator.hasNext()) {
-                String key = (String)iterator.next();
-                try {
-                    newData.put(key, _deconstructPacket(_data.get(key), buffers));
-                } catch (JSONException e) {
-                    logger.log(Level.WARNING, "An error occured while putting data to JSONObject", e);
-                    return null;
+            JSONObject newData = null;
+            for (String key : _data.keySet()) {
+                Object item = _data.opt(key);
+                Object newItem = deconstructData(item, buffers);
+                if (newItem != item) {
+                    if (newData == null) {
+                        newData = new JSONObject(_data, _data.keySet().toArray(new String[0]));
+                    }
+                    newData.put(key, newItem);
                 }
             }
-            return newData;
+            return (newData != null)? newData : _data;
         }
         return data;
     }
 
     @SuppressWarnings("unchecked")
     public static Packet reconstructPacket(Packet packet, byte[][] buffers) {
-        packet.data = _reconstructPacket(packet.data, buffers);
+        packet.data = reconstructData(packet.data, buffers);
         packet.attachments = -1;
         return packet;
     }
 
-    private static Object _reconstructPacket(Object data, byte[][] buffers) {
+    /*package*/ static Object reconstructData(Object data, byte[][] buffers) {
         if (data instanceof JSONArray) {
             JSONArray _data = (JSONArray)data;
             int len = _data.length();
             for (int i = 0; i < len; i ++) {
                 try {
-                    _data.put(i, _reconstructPacket(_data.get(i), buffers));
+                    _data.put(i, reconstructData(_data.get(i), buffers));
                 } catch (JSONException e) {
                     logger.log(Level.WARNING, "An error occured while putting packet data to JSONObject", e);
                     return null;
@@ -106,7 +117,7 @@ public class Binary {
             while (iterator.hasNext()) {
                 String key = (String)iterator.next();
                 try {
-                    _data.put(key, _reconstructPacket(_data.get(key), buffers));
+                    _data.put(key, reconstructData(_data.get(key), buffers));
                 } catch (JSONException e) {
                     logger.log(Level.WARNING, "An error occured while putting data to JSONObject", e);
                     return null;
@@ -117,6 +128,22 @@ public class Binary {
         return data;
     }
 
+    /**
+     * Get the remaining bytes of a buffer without changing its position.
+     * The backing array is used as is if it holds exactly the remaining bytes,
+     * otherwise the bytes are copied once.
+     */
+    /*package*/ static byte[] toByteArray(ByteBuffer buffer) {
+        if (buffer.hasArray() && buffer.arrayOffset() == 0 && buffer.position() == 0
+                && buffer.remaining() == buffer.array().length) {
+            return buffer.array();
+        }
+
+        byte[] bytes = new byte[buffer.remaining()];
+        buffer.duplicate().get(bytes);
+        return bytes;
+    }
+
     public static class DeconstructedPacket {
 
         public Packet packet;
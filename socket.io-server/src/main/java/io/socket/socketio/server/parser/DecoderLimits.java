@@ -0,0 +1,122 @@
+package io.socket.socketio.server.parser;
+
+/**
+ * Resource limits enforced by decoders while parsing.
+ * A limit of 0 disables the check.
+ */
+public final class DecoderLimits {
+
+    /**
+     * Limits with every check disabled.
+     */
+    public static final DecoderLimits UNLIMITED = new DecoderLimits(0, 0, 0, 0);
+
+    private final int mMaxFrameSize;
+    private final int mMaxAttachments;
+    private final int mMaxNestingDepth;
+    private final long mMaxPendingBinaryBytes;
+
+    /**
+     * Create decoder limits.
+     *
+     * @param maxFrameSize Max characters of a text frame or bytes of a binary frame.
+     * @param maxAttachments Max binary attachments of a packet.
+     * @param maxNestingDepth Max nesting depth of arrays and objects in packet data.
+     * @param maxPendingBinaryBytes Max bytes of binary attachments buffered for a single packet.
+     * @throws IllegalArgumentException If any limit is negative.
+     */
+    public DecoderLimits(int maxFrameSize, int maxAttachments, int maxNestingDepth, long maxPendingBinaryBytes) throws IllegalArgumentException {
+        if (maxFrameSize < 0) {
+            throw new IllegalArgumentException("maxFrameSize must not be negative.");
+        }
+        if (maxAttachments < 0) {
+            throw new IllegalArgumentException("maxAttachments must not be negative.");
+        }
+        if (maxNestingDepth < 0) {
+            throw new IllegalArgumentException("maxNestingDepth must not be negative.");
+        }
+        if (maxPendingBinaryBytes < 0) {
+            throw new IllegalArgumentException("maxPendingBinaryBytes must not be negative.");
+        }
+
+        mMaxFrameSize = maxFrameSize;
+        mMaxAttachments = maxAttachments;
+        mMaxNestingDepth = maxNestingDepth;
+        mMaxPendingBinaryBytes = maxPendingBinaryBytes;
+    }
+
+    /**
+     * Gets the max size of a frame.
+     */
+    public int getMaxFrameSize() {
+        return mMaxFrameSize;
+    }
+
+    /**
+     * Gets the max binary attachments of a packet.
+     */
+    public int getMaxAttachments() {
+        return mMaxAttachments;
+    }
+
+    /**
+     * Gets the max nesting depth of packet data.
+     */
+    public int getMaxNestingDepth() {
+        return mMaxNestingDepth;
+    }
+
+    /**
+     * Gets the max bytes of binary attachments buffered for a packet.
+     */
+    public long getMaxPendingBinaryBytes() {
+        return mMaxPendingBinaryBytes;
+    }
+
+    /**
+     * Check the size of a frame.
+     *
+     * @param size Size of the frame.
+     * @throws DecodingLimitException If frame exceeds max size.
+     */
+    void checkFrameSize(int size) throws DecodingLimitException {
+        if (mMaxFrameSize > 0 && size > mMaxFrameSize) {
+            throw new DecodingLimitException("frame too large");
+        }
+    }
+
+    /**
+     * Check the nesting depth of JSON text without parsing it.
+     *
+     * @param str String containing the JSON text.
+     * @param offset Index of the first character of the JSON text.
+     * @throws DecodingLimitException If JSON text is nested too deep.
+     */
+    void checkNestingDepth(String str, int offset) throws DecodingLimitException {
+        if (mMaxNestingDepth <= 0) {
+            return;
+        }
+
+        int depth = 0;
+        boolean inString = false;
+        final int length = str.length();
+        for (int i = offset; i < length; i++) {
+            final char c = str.charAt(i);
+            if (inString) {
+                if (c == '\\') {
+                    i++;
+                } else if (c == '"') {
+                    inString = false;
+                }
+            } else if (c == '"') {
+                inString = true;
+            } else if (c == '[' || c == '{') {
+                if (++depth > mMaxNestingDepth) {
+                    throw new DecodingLimitException("nesting too deep");
+                }
+            } else if (c == ']' || c == '}') {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,11 @@
+package io.socket.socketio.server.parser;
+
+/**
+ * Thrown when a decoder rejects data that exceeds its {@link DecoderLimits}.
+ */
+public class DecodingLimitException extends DecodingException {
+
+    public DecodingLimitException(String message) {
+        super(message);
+    }
+}
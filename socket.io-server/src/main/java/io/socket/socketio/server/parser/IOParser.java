@@ -1,11 +1,6 @@
 package io.socket.socketio.server.parser;
 
-import io.socket.socketio.server.utils.HasBinary;
-import org.json.JSONArray;
-import org.json.JSONException;
-import org.json.JSONObject;
-import org.json.JSONTokener;
-
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
@@ -16,39 +11,99 @@ final public class IOParser implements Parser {
 
     private static final Logger logger = Logger.getLogger(IOParser.class.getName());
 
+    /**
+     * Factory for the default socket.io text format.
+     */
+    public static final ParserFactory FACTORY = new ParserFactory() {
+        @Override
+        public Parser.Encoder createEncoder(JsonCodec jsonCodec) {
+            return new Encoder(jsonCodec);
+        }
+
+        @Override
+        public Parser.Decoder createDecoder(JsonCodec jsonCodec, DecoderLimits limits) {
+            return new Decoder(jsonCodec, limits);
+        }
+
+        @Override
+        public Parser.Decoder createDecoder(JsonCodec jsonCodec, DecoderLimits limits, boolean lazyEvents) {
+            return new Decoder(jsonCodec, limits, lazyEvents);
+        }
+    };
+
     private IOParser() {}
 
     final public static class Encoder implements Parser.Encoder {
 
-        public Encoder() {}
+        private static final int INITIAL_CAPACITY = 256;
+
+        /**
+         * Builders that grew larger than this are released after use instead of being kept by the thread.
+         */
+        private static final int MAX_RETAINED_CAPACITY = 64 * 1024;
+
+        private static final ThreadLocal<EncodeBuffer> encodeBuffers = ThreadLocal.withInitial(EncodeBuffer::new);
+
+        private final JsonCodec jsonCodec;
+
+        public Encoder() {
+            this(OrgJsonCodec.INSTANCE);
+        }
+
+        public Encoder(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+        }
 
         @Override
+        @SuppressWarnings("unchecked")
         public void encode(Packet obj, Callback callback) {
-            if ((obj.type == EVENT || obj.type == ACK) && HasBinary.hasBinary(obj.data)) {
-                obj.type = obj.type == EVENT ? BINARY_EVENT : BINARY_ACK;
-            }
+            // Packets are written into a buffer reused by the thread, only the result is allocated
+            final EncodeBuffer encodeBuffer = encodeBuffers.get();
+            final Object[] result;
+            try {
+                final List<byte[]> buffers = encodeBuffer.buffers;
+                if (obj.type == EVENT || obj.type == ACK || obj.type == BINARY_EVENT || obj.type == BINARY_ACK) {
+                    // Binary detection and extraction in a single pass that does not copy data without binary
+                    obj.data = jsonCodec.deconstructBinary(obj.data, buffers);
+                    if (!buffers.isEmpty() && (obj.type == EVENT || obj.type == ACK)) {
+                        obj.type = obj.type == EVENT ? BINARY_EVENT : BINARY_ACK;
+                    }
+                }
 
-            logger.fine(String.format("encoding packet %s", obj));
+                if (logger.isLoggable(Level.FINE)) {
+                    logger.fine(String.format("encoding packet %s", obj));
+                }
 
-            if (BINARY_EVENT == obj.type || BINARY_ACK == obj.type) {
-                encodeAsBinary(obj, callback);
-            } else {
-                String encoding = encodeAsString(obj);
-                callback.call(new String[] {encoding});
+                if (BINARY_EVENT == obj.type || BINARY_ACK == obj.type) {
+                    obj.attachments = buffers.size();
+                    result = new Object[buffers.size() + 1];
+                    result[0] = encodeAsString(obj, encodeBuffer);
+                    for (int i = 0; i < buffers.size(); i++) {
+                        result[i + 1] = buffers.get(i);
+                    }
+                } else {
+                    result = new String[] {encodeAsString(obj, encodeBuffer)};
+                }
+            } finally {
+                release(encodeBuffer);
             }
+
+            // Buffer is released before the callback so that the callback may encode again
+            callback.call(result);
         }
 
-        private String encodeAsString(Packet obj) {
-            StringBuilder str = new StringBuilder("" + obj.type);
+        private String encodeAsString(Packet obj, EncodeBuffer encodeBuffer) {
+            final StringBuilder str = encodeBuffer.builder;
+            str.append(obj.type);
 
             if (BINARY_EVENT == obj.type || BINARY_ACK == obj.type) {
                 str.append(obj.attachments);
-                str.append("-");
+                str.append('-');
             }
 
             if (obj.nsp != null && obj.nsp.length() != 0 && !"/".equals(obj.nsp)) {
                 str.append(obj.nsp);
-                str.append(",");
+                str.append(',');
             }
 
             if (obj.id >= 0) {
@@ -56,20 +111,35 @@ final public class IOParser implements Parser {
             }
 
             if (obj.data != null) {
-                str.append(obj.data);
+                try {
+                    jsonCodec.serialize(obj.data, encodeBuffer.writer);
+                } catch (IOException e) {
+                    // String builder writer does not do I/O
+                    throw new IllegalStateException(e);
+                }
+            }
+
+            final String encoding = str.toString();
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("encoded %s as %s", obj, encoding));
             }
+            return encoding;
+        }
 
-            logger.fine(String.format("encoded %s as %s", obj, str));
-            return str.toString();
+        private static void release(EncodeBuffer encodeBuffer) {
+            encodeBuffer.buffers.clear();
+            if (encodeBuffer.builder.capacity() > MAX_RETAINED_CAPACITY) {
+                encodeBuffers.remove();
+            } else {
+                encodeBuffer.builder.setLength(0);
+            }
         }
 
-        private void encodeAsBinary(Packet obj, Callback callback) {
-            Binary.DeconstructedPacket deconstruction = Binary.deconstructPacket(obj);
-            String pack = encodeAsString(deconstruction.packet);
-            List<Object> buffers = new ArrayList<Object>(Arrays.asList(deconstruction.buffers));
+        private static final class EncodeBuffer {
 
-            buffers.add(0, pack);
-            callback.call(buffers.toArray());
+            final StringBuilder builder = new StringBuilder(INITIAL_CAPACITY);
+            final StringBuilderWriter writer = new StringBuilderWriter(builder);
+            final List<byte[]> buffers = new ArrayList<>();
         }
     }
 
@@ -77,17 +147,44 @@ final public class IOParser implements Parser {
 
         /*package*/ BinaryReconstructor reconstructor;
 
+        private final JsonCodec jsonCodec;
+        private final DecoderLimits limits;
+        private final boolean lazyEvents;
         private Decoder.Callback onDecodedCallback;
 
         public Decoder() {
+            this(OrgJsonCodec.INSTANCE);
+        }
+
+        public Decoder(JsonCodec jsonCodec) {
+            this(jsonCodec, DecoderLimits.UNLIMITED);
+        }
+
+        public Decoder(JsonCodec jsonCodec, DecoderLimits limits) {
+            this(jsonCodec, limits, false);
+        }
+
+        /**
+         * Create decoder.
+         *
+         * @param jsonCodec Codec to create packet data with.
+         * @param limits Limits to enforce while decoding.
+         * @param lazyEvents Whether event packets carry a {@link LazyEventPayload} instead of parsed data.
+         */
+        public Decoder(JsonCodec jsonCodec, DecoderLimits limits, boolean lazyEvents) {
+            this.jsonCodec = jsonCodec;
+            this.limits = limits;
+            this.lazyEvents = lazyEvents;
             this.reconstructor = null;
         }
 
         @Override
         public void add(String obj) {
-            Packet packet = decodeString(obj);
+            limits.checkFrameSize(obj.length());
+
+            Packet<Object> packet = decodeString(obj);
             if (BINARY_EVENT == packet.type || BINARY_ACK == packet.type) {
-                this.reconstructor = new BinaryReconstructor(packet);
+                this.reconstructor = new BinaryReconstructor(packet, jsonCodec, limits);
 
                 if (this.reconstructor.reconPack.attachments == 0) {
                     if (this.onDecodedCallback != null) {
@@ -106,7 +203,16 @@ final public class IOParser implements Parser {
             if (this.reconstructor == null) {
                 throw new RuntimeException("got binary data when not reconstructing a packet");
             } else {
-                Packet packet = this.reconstructor.takeBinaryData(obj);
+                Packet packet;
+                try {
+                    limits.checkFrameSize(obj.length);
+                    packet = this.reconstructor.takeBinaryData(obj);
+                } catch (DecodingLimitException e) {
+                    // Release buffered attachments of the rejected packet
+                    this.reconstructor.finishReconstruction();
+                    this.reconstructor = null;
+                    throw e;
+                }
                 if (packet != null) {
                     this.reconstructor = null;
                     if (this.onDecodedCallback != null) {
@@ -116,95 +222,146 @@ final public class IOParser implements Parser {
             }
         }
 
-        private static Packet decodeString(String str) {
-            int i = 0;
-            int length = str.length();
-
-            Packet<Object> p = new Packet<>(Character.getNumericValue(str.charAt(0)));
+        private Packet<Object> decodeString(String str) {
+            final int length = str.length();
+            if (length == 0) {
+                throw new DecodingException("unknown packet type -1");
+            }
 
-            if (p.type < 0 || p.type > types.length - 1) {
-                throw new DecodingException("unknown packet type " + p.type);
+            final char typeChar = str.charAt(0);
+            final int type = isAsciiDigit(typeChar)? (typeChar - '0') : -1;
+            if (type < 0 || type > types.length - 1) {
+                throw new DecodingException("unknown packet type " + type);
             }
 
+            Packet<Object> p = new Packet<>(type);
+            int i = 1;
+
             if (BINARY_EVENT == p.type || BINARY_ACK == p.type) {
-                if (!str.contains("-") || length <= i + 1) {
+                int attachments = 0;
+                int start = i;
+                while (i < length && isAsciiDigit(str.charAt(i)) && (i - start) < 9) {
+                    attachments = attachments * 10 + (str.charAt(i) - '0');
+                    i++;
+                }
+                if (i == start || i >= length || str.charAt(i) != '-') {
                     throw new DecodingException("illegal attachments");
                 }
-                StringBuilder attachments = new StringBuilder();
-                while (str.charAt(++i) != '-') {
-                    attachments.append(str.charAt(i));
+                if (limits.getMaxAttachments() > 0 && attachments > limits.getMaxAttachments()) {
+                    throw new DecodingLimitException("too many attachments");
                 }
-                p.attachments = Integer.parseInt(attachments.toString());
+                p.attachments = attachments;
+                i++;
             }
 
-            if (length > i + 1 && '/' == str.charAt(i + 1)) {
-                StringBuilder nsp = new StringBuilder();
-                while (true) {
-                    ++i;
-                    char c = str.charAt(i);
-                    if (',' == c) break;
-                    nsp.append(c);
-                    if (i + 1 == length) break;
+            if (i < length && '/' == str.charAt(i)) {
+                final int start = i;
+                final int end = str.indexOf(',', i);
+                if (end < 0) {
+                    p.nsp = str.substring(start);
+                    i = length;
+                } else {
+                    p.nsp = str.substring(start, end);
+                    i = end + 1;
                 }
-                p.nsp = nsp.toString();
             } else {
                 p.nsp = "/";
             }
 
-            if (length > i + 1){
-                Character next = str.charAt(i + 1);
-                if (Character.getNumericValue(next) > -1) {
-                    StringBuilder id = new StringBuilder();
-                    while (true) {
-                        ++i;
-                        char c = str.charAt(i);
-                        if (Character.getNumericValue(c) < 0) {
-                            --i;
-                            break;
-                        }
-                        id.append(c);
-                        if (i + 1 == length) break;
-                    }
-                    try {
-                        p.id = Integer.parseInt(id.toString());
-                    } catch (NumberFormatException e){
+            if (i < length && isAsciiDigit(str.charAt(i))) {
+                long id = 0;
+                while (i < length && isAsciiDigit(str.charAt(i))) {
+                    id = id * 10 + (str.charAt(i) - '0');
+                    if (id > Integer.MAX_VALUE) {
                         throw new DecodingException("invalid payload");
                     }
+                    i++;
                 }
+                p.id = (int) id;
             }
 
-            if (length > i + 1){
-                try {
-                    str.charAt(++i);
-                    p.data = new JSONTokener(str.substring(i)).nextValue();
-                } catch (JSONException e) {
-                    logger.log(Level.WARNING, "An error occured while retrieving data from JSONTokener", e);
-                    throw new DecodingException("invalid payload");
+            if (i < length && lazyEvents && EVENT == p.type) {
+                final String event = peekEventName(str, i);
+                if (event != null) {
+                    p.data = new LazyEventPayload(event, str, i, jsonCodec, limits);
+                    if (logger.isLoggable(Level.FINE)) {
+                        logger.fine(String.format("decoded %s as %s", str, p));
+                    }
+                    return p;
                 }
+            }
+
+            if (i < length) {
+                // Depth is checked before the codec recurses into the data
+                limits.checkNestingDepth(str, i);
+
+                // Codec parses from an offset into the frame instead of a copy of the remainder
+                p.data = jsonCodec.parse(str, i);
                 if (!isPayloadValid(p.type, p.data)) {
                     throw new DecodingException("invalid payload");
                 }
             }
 
-            logger.fine(String.format("decoded %s as %s", str, p));
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("decoded %s as %s", str, p));
+            }
             return p;
         }
 
-        private static boolean isPayloadValid(int type, Object payload) {
+        /**
+         * Read the event name at the start of a payload without parsing the payload.
+         *
+         * @return Event name or null if the name is not a plain string without escapes.
+         */
+        private static String peekEventName(String str, int i) {
+            final int length = str.length();
+            if (str.charAt(i) != '[') {
+                return null;
+            }
+
+            i++;
+            while (i < length && isJsonWhitespace(str.charAt(i))) {
+                i++;
+            }
+            if (i >= length || str.charAt(i) != '"') {
+                return null;
+            }
+
+            final int start = ++i;
+            while (i < length) {
+                final char c = str.charAt(i);
+                if (c == '"') {
+                    return str.substring(start, i);
+                } else if (c == '\\') {
+                    return null;
+                }
+                i++;
+            }
+            return null;
+        }
+
+        private static boolean isJsonWhitespace(char c) {
+            return c == ' ' || c == '\t' || c == '\n' || c == '\r';
+        }
+
+        private static boolean isAsciiDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private boolean isPayloadValid(int type, Object payload) {
             switch (type) {
                 case Parser.CONNECT:
                 case Parser.CONNECT_ERROR:
-                    return payload instanceof JSONObject;
+                    return jsonCodec.isObject(payload);
                 case Parser.DISCONNECT:
                     return payload == null;
                 case Parser.EVENT:
                 case Parser.BINARY_EVENT:
-                    return payload instanceof JSONArray
-                            && ((JSONArray) payload).length() > 0
-                            && !((JSONArray) payload).isNull(0);
+                    return jsonCodec.getArrayLength(payload) > 0
+                            && jsonCodec.getArrayElement(payload, 0) != null;
                 case Parser.ACK:
                 case Parser.BINARY_ACK:
-                    return payload instanceof JSONArray;
+                    return jsonCodec.getArrayLength(payload) >= 0;
                 default:
                     return false;
             }
@@ -227,20 +384,51 @@ final public class IOParser implements Parser {
 
     /*package*/ static class BinaryReconstructor {
 
-        public Packet reconPack;
+        private static final int INITIAL_BUFFER_CAPACITY = 8;
+
+        public Packet<Object> reconPack;
 
-        /*package*/ List<byte[]> buffers;
+        /*package*/ byte[][] buffers;
+        private int bufferCount;
+        private long bufferBytes;
 
-        BinaryReconstructor(Packet packet) {
+        private final JsonCodec jsonCodec;
+        private final DecoderLimits limits;
+
+        BinaryReconstructor(Packet<Object> packet, JsonCodec jsonCodec) {
+            this(packet, jsonCodec, DecoderLimits.UNLIMITED);
+        }
+
+        BinaryReconstructor(Packet<Object> packet, JsonCodec jsonCodec, DecoderLimits limits) {
             this.reconPack = packet;
-            this.buffers = new ArrayList<>();
+            // Attachment count is sent by the client, buffers grow with the frames actually received
+            this.buffers = new byte[Math.min(Math.max(packet.attachments, 0), INITIAL_BUFFER_CAPACITY)][];
+            this.bufferCount = 0;
+            this.bufferBytes = 0;
+            this.jsonCodec = jsonCodec;
+            this.limits = limits;
         }
 
-        public Packet takeBinaryData(byte[] binData) {
-            this.buffers.add(binData);
-            if (this.buffers.size() == this.reconPack.attachments) {
-                Packet packet = Binary.reconstructPacket(this.reconPack,
-                        this.buffers.toArray(new byte[this.buffers.size()][]));
+        public Packet<Object> takeBinaryData(byte[] binData) {
+            this.bufferBytes += binData.length;
+            if (limits.getMaxPendingBinaryBytes() > 0 && this.bufferBytes > limits.getMaxPendingBinaryBytes()) {
+                this.finishReconstruction();
+                throw new DecodingLimitException("too much pending binary data");
+            }
+
+            if (this.bufferCount >= this.reconPack.attachments) {
+                throw new DecodingException("got binary data when not reconstructing a packet");
+            }
+            if (this.bufferCount == this.buffers.length) {
+                this.buffers = Arrays.copyOf(this.buffers, (int) Math.min((long) this.buffers.length * 2, this.reconPack.attachments));
+            }
+
+            // Frames are referenced as received, the data is never copied
+            this.buffers[this.bufferCount++] = binData;
+            if (this.bufferCount == this.reconPack.attachments) {
+                Packet<Object> packet = this.reconPack;
+                packet.data = jsonCodec.reconstructBinary(packet.data, this.buffers);
+                packet.attachments = -1;
                 this.finishReconstruction();
                 return packet;
             }
@@ -249,7 +437,9 @@ final public class IOParser implements Parser {
 
         public void finishReconstruction () {
             this.reconPack = null;
-            this.buffers = new ArrayList<>();
+            this.buffers = null;
+            this.bufferCount = 0;
+            this.bufferBytes = 0;
         }
     }
 }
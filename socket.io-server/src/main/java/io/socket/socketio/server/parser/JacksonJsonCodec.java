@@ -0,0 +1,404 @@
+package io.socket.socketio.server.parser;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.POJONode;
+import com.fasterxml.jackson.databind.util.RawValue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Json codec using Jackson.
+ * Payloads are {@link JsonNode} trees. Received payloads are parsed into a tree because packets give
+ * access to single elements and properties, typed arguments are bound straight from the parser
+ * with {@link #parseArrayElement(String, int, int, Class)} without building a tree.
+ * Event arguments may be {@link JsonNode}, CharSequence, Number, Boolean, byte[], {@link ByteBuffer},
+ * {@link RawJson}, Map, Collection or null. Raw JSON is kept as a raw value node and written verbatim.
+ * Any other argument is kept as a POJO node and written by the object mapper with the JSON generator
+ * when the packet is encoded, so no intermediate tree is built for it. Binary data inside such objects
+ * is written the way the object mapper writes it instead of being sent as attachments.
+ * Received values can be bound to objects of any type the object mapper supports.
+ * Readers are created once per type and cached.
+ *
+ * This codec requires com.fasterxml.jackson.core:jackson-databind on the classpath.
+ */
+public final class JacksonJsonCodec implements JsonCodec {
+
+    private static final String KEY_PLACEHOLDER = "_placeholder";
+
+    private static final String KEY_NUM = "num";
+
+    private static final Logger logger = Logger.getLogger(JacksonJsonCodec.class.getName());
+
+    private final ObjectMapper mObjectMapper;
+    private final JsonNodeFactory mNodeFactory;
+    private final Map<Class<?>, ObjectReader> mReaders = new ConcurrentHashMap<>();
+
+    /**
+     * Create codec with a default object mapper.
+     */
+    public JacksonJsonCodec() {
+        this(new ObjectMapper());
+    }
+
+    /**
+     * Create codec with the specified object mapper.
+     *
+     * @param objectMapper Object mapper to parse and write with.
+     * @throws IllegalArgumentException If object mapper is null.
+     */
+    public JacksonJsonCodec(ObjectMapper objectMapper) throws IllegalArgumentException {
+        if (objectMapper == null) {
+            throw new IllegalArgumentException("objectMapper must not be null.");
+        }
+
+        mObjectMapper = objectMapper;
+        mNodeFactory = objectMapper.getNodeFactory();
+    }
+
+    @Override
+    public Object parse(String str, int offset) throws DecodingException {
+        try {
+            final StringReader reader = new StringReader(str);
+            reader.skip(offset);
+            try (JsonParser parser = mObjectMapper.getFactory().createParser(reader)) {
+                final JsonNode node = mObjectMapper.readTree(parser);
+                if (node == null) {
+                    throw new DecodingException("invalid payload");
+                }
+                return node;
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "An error occured while parsing data with Jackson", e);
+            throw new DecodingException("invalid payload");
+        }
+    }
+
+    @Override
+    public String serialize(Object value) {
+        if (value instanceof RawJson) {
+            return ((RawJson) value).toJSONString();
+        }
+        try {
+            return mObjectMapper.writeValueAsString(value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("value cannot be serialized.", e);
+        }
+    }
+
+    @Override
+    public void serialize(Object value, Writer writer) throws IOException {
+        if (value instanceof RawJson) {
+            writer.write(((RawJson) value).toJSONString());
+            return;
+        }
+        try {
+            mObjectMapper.writeValue(writer, value);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("value cannot be serialized.", e);
+        }
+    }
+
+    @Override
+    public Object createArray(Object[] items) throws IllegalArgumentException {
+        final ArrayNode array = mNodeFactory.arrayNode(items.length);
+        for (Object item : items) {
+            array.add(toNode(item));
+        }
+        return array;
+    }
+
+    @Override
+    public Object createObject(Map<String, ?> map) throws IllegalArgumentException {
+        final ObjectNode object = mNodeFactory.objectNode();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            object.set(entry.getKey(), toNode(entry.getValue()));
+        }
+        return object;
+    }
+
+    @Override
+    public boolean isObject(Object value) {
+        return value instanceof ObjectNode;
+    }
+
+    @Override
+    public int getArrayLength(Object value) {
+        return (value instanceof ArrayNode)? ((ArrayNode) value).size() : -1;
+    }
+
+    @Override
+    public Object getArrayElement(Object array, int index) {
+        return toValue(((ArrayNode) array).get(index));
+    }
+
+    @Override
+    public Set<String> getObjectKeys(Object object) {
+        final Set<String> keys = new LinkedHashSet<>();
+        ((ObjectNode) object).fieldNames().forEachRemaining(keys::add);
+        return keys;
+    }
+
+    @Override
+    public Object getObjectProperty(Object object, String key) {
+        return toValue(((ObjectNode) object).get(key));
+    }
+
+    @Override
+    public boolean hasBinary(Object value) {
+        if (value instanceof byte[] || value instanceof ByteBuffer) {
+            return true;
+        }
+        if (!(value instanceof JsonNode)) {
+            return false;
+        }
+
+        final JsonNode node = (JsonNode) value;
+        if (node.isBinary()) {
+            return true;
+        }
+        if (node.isContainerNode()) {
+            for (JsonNode child : node) {
+                if (hasBinary(child)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public Object deconstructBinary(Object value, List<byte[]> buffers) {
+        if (!(value instanceof JsonNode)) {
+            return value;
+        }
+
+        final JsonNode node = (JsonNode) value;
+        if (node.isBinary()) {
+            final ObjectNode placeholder = mNodeFactory.objectNode();
+            placeholder.put(KEY_PLACEHOLDER, true);
+            placeholder.put(KEY_NUM, buffers.size());
+            try {
+                buffers.add(node.binaryValue());
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            return placeholder;
+        } else if (node.isArray()) {
+            // Only containers on the path to binary data are copied
+            ArrayNode newArray = null;
+            for (int i = 0; i < node.size(); i++) {
+                final JsonNode child = node.get(i);
+                final JsonNode newChild = (JsonNode) deconstructBinary(child, buffers);
+                if (newChild != child && newArray == null) {
+                    newArray = mNodeFactory.arrayNode(node.size());
+                    for (int j = 0; j < i; j++) {
+                        newArray.add(node.get(j));
+                    }
+                }
+                if (newArray != null) {
+                    newArray.add(newChild);
+                }
+            }
+            return (newArray != null)? newArray : node;
+        } else if (node.isObject()) {
+            ObjectNode newObject = null;
+            final Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+            while (fields.hasNext()) {
+                final Map.Entry<String, JsonNode> field = fields.next();
+                final JsonNode newChild = (JsonNode) deconstructBinary(field.getValue(), buffers);
+                if (newChild != field.getValue()) {
+                    if (newObject == null) {
+                        newObject = mNodeFactory.objectNode();
+                        newObject.setAll((ObjectNode) node);
+                    }
+                    newObject.set(field.getKey(), newChild);
+                }
+            }
+            return (newObject != null)? newObject : node;
+        }
+        return node;
+    }
+
+    @Override
+    public Object reconstructBinary(Object value, byte[][] buffers) {
+        if (value instanceof ArrayNode) {
+            final ArrayNode array = (ArrayNode) value;
+            for (int i = 0; i < array.size(); i++) {
+                array.set(i, (JsonNode) reconstructBinary(array.get(i), buffers));
+            }
+            return array;
+        } else if (value instanceof ObjectNode) {
+            final ObjectNode object = (ObjectNode) value;
+            if (object.path(KEY_PLACEHOLDER).asBoolean(false)) {
+                final int num = object.path(KEY_NUM).asInt(-1);
+                return (num >= 0 && num < buffers.length)? mNodeFactory.binaryNode(buffers[num]) : mNodeFactory.nullNode();
+            }
+
+            final List<String> names = new ArrayList<>(object.size());
+            object.fieldNames().forEachRemaining(names::add);
+            for (String name : names) {
+                object.set(name, (JsonNode) reconstructBinary(object.get(name), buffers));
+            }
+            return object;
+        }
+        return value;
+    }
+
+    @Override
+    public <T> T toObject(Object value, Class<T> type) throws IllegalArgumentException {
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        }
+
+        try {
+            if (value instanceof RawJson) {
+                return type.cast(getReader(type).readValue(((RawJson) value).toJSONString()));
+            } else if (value instanceof JsonNode) {
+                return type.cast(getReader(type).readValue((JsonNode) value));
+            }
+
+            // Objects are converted through a token buffer instead of a tree
+            return type.cast(mObjectMapper.convertValue(value, type));
+        } catch (IOException | IllegalArgumentException e) {
+            throw new IllegalArgumentException("value cannot be converted to " + type.getName() + ".", e);
+        }
+    }
+
+    @Override
+    public <T> T parseArrayElement(String str, int offset, int index, Class<T> type) throws DecodingException, IllegalArgumentException {
+        try {
+            final StringReader reader = new StringReader(str);
+            reader.skip(offset);
+            try (JsonParser parser = mObjectMapper.getFactory().createParser(reader)) {
+                if (parser.nextToken() != JsonToken.START_ARRAY) {
+                    throw new DecodingException("invalid payload");
+                }
+
+                // Elements before index are skipped without creating values
+                for (int i = 0; i < index; i++) {
+                    final JsonToken token = parser.nextToken();
+                    if (token == null) {
+                        throw new DecodingException("invalid payload");
+                    } else if (token == JsonToken.END_ARRAY) {
+                        return null;
+                    }
+                    parser.skipChildren();
+                }
+
+                final JsonToken token = parser.nextToken();
+                if (token == null) {
+                    throw new DecodingException("invalid payload");
+                } else if (token == JsonToken.END_ARRAY || token == JsonToken.VALUE_NULL) {
+                    return null;
+                }
+                return type.cast(getReader(type).readValue(parser));
+            }
+        } catch (JsonParseException e) {
+            logger.log(Level.WARNING, "An error occured while parsing data with Jackson", e);
+            throw new DecodingException("invalid payload");
+        } catch (IOException e) {
+            throw new IllegalArgumentException("value cannot be converted to " + type.getName() + ".", e);
+        }
+    }
+
+    private ObjectReader getReader(Class<?> type) {
+        return mReaders.computeIfAbsent(type, mObjectMapper::readerFor);
+    }
+
+    private JsonNode toNode(Object item) throws IllegalArgumentException {
+        if (item == null) {
+            return mNodeFactory.nullNode();
+        } else if (item instanceof JsonNode) {
+            return (JsonNode) item;
+        } else if (item instanceof RawJson) {
+            return mNodeFactory.rawValueNode(new RawValue(((RawJson) item).toJSONString()));
+        } else if (item instanceof CharSequence) {
+            return mNodeFactory.textNode(item.toString());
+        } else if (item instanceof Boolean) {
+            return mNodeFactory.booleanNode((Boolean) item);
+        } else if (item instanceof byte[]) {
+            return mNodeFactory.binaryNode((byte[]) item);
+        } else if (item instanceof ByteBuffer) {
+            return mNodeFactory.binaryNode(Binary.toByteArray((ByteBuffer) item));
+        } else if (item instanceof Integer || item instanceof Short || item instanceof Byte) {
+            return mNodeFactory.numberNode(((Number) item).intValue());
+        } else if (item instanceof Long) {
+            return mNodeFactory.numberNode((Long) item);
+        } else if (item instanceof Float) {
+            return mNodeFactory.numberNode((Float) item);
+        } else if (item instanceof Double) {
+            return mNodeFactory.numberNode((Double) item);
+        } else if (item instanceof BigInteger) {
+            return mNodeFactory.numberNode((BigInteger) item);
+        } else if (item instanceof BigDecimal) {
+            return mNodeFactory.numberNode((BigDecimal) item);
+        } else if (item instanceof Number) {
+            return mNodeFactory.numberNode(((Number) item).doubleValue());
+        } else if (item instanceof Map) {
+            // Containers are converted element by element so binary data in them is sent as attachments
+            final ObjectNode object = mNodeFactory.objectNode();
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) item).entrySet()) {
+                object.set(String.valueOf(entry.getKey()), toNode(entry.getValue()));
+            }
+            return object;
+        } else if (item instanceof Collection) {
+            final ArrayNode array = mNodeFactory.arrayNode(((Collection<?>) item).size());
+            for (Object element : (Collection<?>) item) {
+                array.add(toNode(element));
+            }
+            return array;
+        }
+
+        // Serializer lookup is cached by the object mapper, the object itself is written at encode time
+        if (!mObjectMapper.canSerialize(item.getClass())) {
+            throw new IllegalArgumentException("args contain invalid data type.");
+        }
+        return mNodeFactory.pojoNode(item);
+    }
+
+    private Object toValue(JsonNode node) {
+        if (node == null || node.isNull() || node.isMissingNode()) {
+            return null;
+        } else if (node.isTextual()) {
+            return node.textValue();
+        } else if (node.isBoolean()) {
+            return node.booleanValue();
+        } else if (node.isNumber()) {
+            return node.numberValue();
+        } else if (node.isBinary()) {
+            try {
+                return node.binaryValue();
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        } else if (node.isPojo()) {
+            final Object pojo = ((POJONode) node).getPojo();
+            return (pojo instanceof RawValue)? new RawJson(String.valueOf(((RawValue) pojo).rawValue())) : pojo;
+        }
+        return node;
+    }
+}
@@ -0,0 +1,191 @@
+package io.socket.socketio.server.parser;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Codec for the JSON payload of packets.
+ * A codec owns the representation of payload data, so packets created and decoded
+ * by a codec only contain values of its own tree types.
+ */
+public interface JsonCodec {
+
+    /**
+     * Parse a JSON value.
+     *
+     * @param str String containing the value.
+     * @param offset Index of the first character of the value.
+     * @return Parsed value.
+     * @throws DecodingException If the value is not valid JSON.
+     */
+    Object parse(String str, int offset) throws DecodingException;
+
+    /**
+     * Serialize a JSON value created by this codec.
+     *
+     * @param value Value to serialize.
+     * @return JSON string.
+     */
+    String serialize(Object value);
+
+    /**
+     * Serialize a JSON value created by this codec to a writer.
+     * The default implementation writes the result of {@link #serialize(Object)}. Codecs that
+     * can write their values directly override this to avoid creating an intermediate string.
+     *
+     * @param value Value to serialize.
+     * @param writer Writer to write the JSON string to.
+     * @throws IOException If writing fails.
+     */
+    default void serialize(Object value, Writer writer) throws IOException {
+        writer.write(serialize(value));
+    }
+
+    /**
+     * Create an array value from items.
+     *
+     * @param items Items of the array.
+     * @return Array value.
+     * @throws IllegalArgumentException If any item is not of a type supported by this codec.
+     */
+    Object createArray(Object[] items) throws IllegalArgumentException;
+
+    /**
+     * Create an object value from a map.
+     *
+     * @param map Properties of the object.
+     * @return Object value.
+     * @throws IllegalArgumentException If any value is not of a type supported by this codec.
+     */
+    Object createObject(Map<String, ?> map) throws IllegalArgumentException;
+
+    /**
+     * Check if a value is an object value of this codec.
+     *
+     * @param value Value to check.
+     * @return True if value is an object.
+     */
+    boolean isObject(Object value);
+
+    /**
+     * Get the length of an array value.
+     *
+     * @param value Value to check.
+     * @return Length of the array or -1 if value is not an array.
+     */
+    int getArrayLength(Object value);
+
+    /**
+     * Get an element of an array value.
+     * JSON null and primitive values are returned as null and Java primitive wrappers or strings.
+     *
+     * @param array Array value.
+     * @param index Index of the element.
+     * @return Element at index.
+     */
+    Object getArrayElement(Object array, int index);
+
+    /**
+     * Get the property names of an object value.
+     *
+     * @param object Object value.
+     * @return Property names of the object.
+     */
+    Set<String> getObjectKeys(Object object);
+
+    /**
+     * Get a property of an object value.
+     * Values are converted in the same way as {@link #getArrayElement(Object, int)}.
+     *
+     * @param object Object value.
+     * @param key Name of the property.
+     * @return Value of the property or null if not present.
+     */
+    Object getObjectProperty(Object object, String key);
+
+    /**
+     * Check if a value contains binary data.
+     *
+     * @param value Value to check.
+     * @return True if value contains a byte array anywhere.
+     */
+    boolean hasBinary(Object value);
+
+    /**
+     * Replace the binary data in a value with placeholders.
+     * The value passed in is not modified. Containers without binary data are shared
+     * with the returned value, so a value without binary data is returned as is.
+     *
+     * @param value Value to deconstruct.
+     * @param buffers List to add the binary data to, in placeholder order.
+     * @return Value with placeholders.
+     */
+    Object deconstructBinary(Object value, List<byte[]> buffers);
+
+    /**
+     * Replace the placeholders in a decoded value with binary data.
+     * The value passed in may be modified.
+     *
+     * @param value Value to reconstruct.
+     * @param buffers Binary data referenced by the placeholders.
+     * @return Value with binary data.
+     */
+    Object reconstructBinary(Object value, byte[][] buffers);
+
+    /**
+     * Convert a value of this codec to an object of the specified type.
+     * The default implementation only converts between number types and otherwise
+     * requires the value to already be of the specified type.
+     *
+     * @param value Value to convert, as returned by {@link #getArrayElement(Object, int)}.
+     * @param type Type to convert to.
+     * @param <T> Type to convert to.
+     * @return Converted object.
+     * @throws IllegalArgumentException If value cannot be converted.
+     */
+    default <T> T toObject(Object value, Class<T> type) throws IllegalArgumentException {
+        if (value == null || type.isInstance(value)) {
+            return type.cast(value);
+        }
+        if (value instanceof Number) {
+            final Number number = (Number) value;
+            if (type == Integer.class) {
+                return type.cast(number.intValue());
+            } else if (type == Long.class) {
+                return type.cast(number.longValue());
+            } else if (type == Double.class) {
+                return type.cast(number.doubleValue());
+            } else if (type == Float.class) {
+                return type.cast(number.floatValue());
+            }
+        }
+        throw new IllegalArgumentException("value cannot be converted to " + type.getName() + ".");
+    }
+
+    /**
+     * Parse an element of a JSON array directly into an object of the specified type.
+     * The default implementation parses the whole array and converts the element with
+     * {@link #toObject(Object, Class)}. Streaming codecs can bind the element without
+     * creating values for the rest of the array.
+     *
+     * @param str String containing the array.
+     * @param offset Index of the first character of the array.
+     * @param index Index of the element.
+     * @param type Type to convert to.
+     * @param <T> Type to convert to.
+     * @return Converted element or null if the array has no element at index.
+     * @throws DecodingException If the string is not a valid JSON array.
+     * @throws IllegalArgumentException If the element cannot be converted.
+     */
+    default <T> T parseArrayElement(String str, int offset, int index, Class<T> type) throws DecodingException, IllegalArgumentException {
+        final Object array = parse(str, offset);
+        final int length = getArrayLength(array);
+        if (length < 0) {
+            throw new DecodingException("invalid payload");
+        }
+        return (index < length)? toObject(getArrayElement(array, index), type) : null;
+    }
+}
@@ -0,0 +1,89 @@
+package io.socket.socketio.server.parser;
+
+/**
+ * Payload of an event packet whose arguments have not been parsed yet.
+ * Decoders create this when only the event name is needed to decide
+ * whether the event is dispatched at all.
+ */
+public final class LazyEventPayload {
+
+    private final String mEvent;
+    private final String mFrame;
+    private final int mOffset;
+    private final JsonCodec mJsonCodec;
+    private final DecoderLimits mLimits;
+
+    private Object mData;
+
+    LazyEventPayload(String event, String frame, int offset, JsonCodec jsonCodec, DecoderLimits limits) {
+        mEvent = event;
+        mFrame = frame;
+        mOffset = offset;
+        mJsonCodec = jsonCodec;
+        mLimits = limits;
+    }
+
+    /**
+     * Gets the name of the event.
+     */
+    public String getEvent() {
+        return mEvent;
+    }
+
+    /**
+     * Gets the size of the unparsed payload in characters.
+     */
+    public int getSize() {
+        return mFrame.length() - mOffset;
+    }
+
+    /**
+     * Parse the payload.
+     * The payload is only parsed once, later calls return the same data.
+     *
+     * @return Packet data created by the codec.
+     * @throws DecodingException If the payload is invalid or exceeds the decoder limits.
+     */
+    public synchronized Object resolve() throws DecodingException {
+        if (mData == null) {
+            mLimits.checkNestingDepth(mFrame, mOffset);
+
+            final Object data = mJsonCodec.parse(mFrame, mOffset);
+            if (mJsonCodec.getArrayLength(data) <= 0 || mJsonCodec.getArrayElement(data, 0) == null) {
+                throw new DecodingException("invalid payload");
+            }
+            mData = data;
+        }
+        return mData;
+    }
+
+    /**
+     * Bind an argument of the event to an object of the specified type.
+     * If the payload has already been resolved the parsed data is converted,
+     * otherwise the codec binds the argument straight from the frame.
+     *
+     * @param index Index of the argument, the event name not counted.
+     * @param type Type to bind to.
+     * @param <T> Type to bind to.
+     * @return Bound argument or null if absent.
+     * @throws DecodingException If the payload is invalid or exceeds the decoder limits.
+     * @throws IllegalArgumentException If the argument cannot be bound to the type.
+     */
+    public <T> T bind(int index, Class<T> type) throws DecodingException, IllegalArgumentException {
+        final Object data;
+        synchronized (this) {
+            data = mData;
+        }
+        if (data != null) {
+            return (index + 1 < mJsonCodec.getArrayLength(data))? mJsonCodec.toObject(mJsonCodec.getArrayElement(data, index + 1), type) : null;
+        }
+
+        mLimits.checkNestingDepth(mFrame, mOffset);
+        return mJsonCodec.parseArrayElement(mFrame, mOffset, index + 1, type);
+    }
+
+    @Override
+    public String toString() {
+        return "LazyEventPayload{event=" + mEvent + ", size=" + getSize() + "}";
+    }
+}
@@ -0,0 +1,379 @@
+package io.socket.socketio.server.parser;
+
+import org.msgpack.core.ExtensionTypeHeader;
+import org.msgpack.core.MessageBufferPacker;
+import org.msgpack.core.MessageFormat;
+import org.msgpack.core.MessagePack;
+import org.msgpack.core.MessagePacker;
+import org.msgpack.core.MessageUnpacker;
+import org.msgpack.value.ValueType;
+
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Parser using MessagePack, compatible with socket.io-msgpack-parser.
+ * Every packet is encoded as a single binary frame containing a map with
+ * the keys type, nsp, data and id. Binary data is embedded in the frame
+ * so there are no attachments and no binary packet types.
+ * {@link RawJson} arguments are parsed with the json codec before they are packed.
+ *
+ * This parser requires org.msgpack:msgpack-core on the classpath.
+ */
+public final class MsgPackParser implements Parser {
+
+    private static final Logger logger = Logger.getLogger(MsgPackParser.class.getName());
+
+    private static final String KEY_TYPE = "type";
+    private static final String KEY_NSP = "nsp";
+    private static final String KEY_DATA = "data";
+    private static final String KEY_ID = "id";
+
+    /**
+     * Extension type used by notepack.io for undefined.
+     */
+    private static final byte EXT_UNDEFINED = 0;
+
+    /**
+     * Factory for the MessagePack format.
+     */
+    public static final ParserFactory FACTORY = new ParserFactory() {
+        @Override
+        public Parser.Encoder createEncoder(JsonCodec jsonCodec) {
+            return new Encoder(jsonCodec);
+        }
+
+        @Override
+        public Parser.Decoder createDecoder(JsonCodec jsonCodec, DecoderLimits limits) {
+            return new Decoder(jsonCodec, limits);
+        }
+    };
+
+    private MsgPackParser() {}
+
+    final public static class Encoder implements Parser.Encoder {
+
+        private final JsonCodec jsonCodec;
+
+        public Encoder() {
+            this(OrgJsonCodec.INSTANCE);
+        }
+
+        public Encoder(JsonCodec jsonCodec) {
+            this.jsonCodec = jsonCodec;
+        }
+
+        @Override
+        public void encode(Packet obj, Callback callback) {
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("encoding packet %s", obj));
+            }
+
+            final MessageBufferPacker packer = MessagePack.newDefaultBufferPacker();
+            try {
+                int size = 2;
+                if (obj.data != null) {
+                    size++;
+                }
+                if (obj.id >= 0) {
+                    size++;
+                }
+
+                packer.packMapHeader(size);
+                packer.packString(KEY_TYPE);
+                packer.packInt(toTextType(obj.type));
+                packer.packString(KEY_NSP);
+                packer.packString((obj.nsp != null && obj.nsp.length() != 0)? obj.nsp : "/");
+                if (obj.data != null) {
+                    packer.packString(KEY_DATA);
+                    packValue(packer, obj.data);
+                }
+                if (obj.id >= 0) {
+                    packer.packString(KEY_ID);
+                    packer.packInt(obj.id);
+                }
+            } catch (IOException e) {
+                // Buffer packer does not do I/O
+                throw new IllegalStateException(e);
+            }
+
+            callback.call(new Object[] {packer.toByteArray()});
+        }
+
+        private void packValue(MessagePacker packer, Object value) throws IOException {
+            if (value == null) {
+                packer.packNil();
+            } else if (value instanceof CharSequence) {
+                packer.packString(value.toString());
+            } else if (value instanceof Boolean) {
+                packer.packBoolean((Boolean) value);
+            } else if (value instanceof byte[]) {
+                final byte[] bytes = (byte[]) value;
+                packer.packBinaryHeader(bytes.length);
+                packer.writePayload(bytes);
+            } else if (value instanceof ByteBuffer) {
+                final ByteBuffer buffer = (ByteBuffer) value;
+                packer.packBinaryHeader(buffer.remaining());
+                if (buffer.hasArray()) {
+                    packer.writePayload(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+                } else {
+                    packer.writePayload(Binary.toByteArray(buffer));
+                }
+            } else if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+                packer.packLong(((Number) value).longValue());
+            } else if (value instanceof BigInteger) {
+                packer.packBigInteger((BigInteger) value);
+            } else if (value instanceof BigDecimal) {
+                final BigDecimal decimal = (BigDecimal) value;
+                if (decimal.scale() <= 0 && decimal.toBigInteger().bitLength() < 64) {
+                    packer.packLong(decimal.longValue());
+                } else {
+                    packer.packDouble(decimal.doubleValue());
+                }
+            } else if (value instanceof Number) {
+                packer.packDouble(((Number) value).doubleValue());
+            } else if (value instanceof RawJson) {
+                packValue(packer, parseRawJson((RawJson) value));
+            } else {
+                final int length = jsonCodec.getArrayLength(value);
+                if (length >= 0) {
+                    packer.packArrayHeader(length);
+                    for (int i = 0; i < length; i++) {
+                        packValue(packer, jsonCodec.getArrayElement(value, i));
+                    }
+                } else if (jsonCodec.isObject(value)) {
+                    final Set<String> keys = jsonCodec.getObjectKeys(value);
+                    packer.packMapHeader(keys.size());
+                    for (String key : keys) {
+                        packer.packString(key);
+                        packValue(packer, jsonCodec.getObjectProperty(value, key));
+                    }
+                } else {
+                    throw new IllegalArgumentException("data contains invalid data type.");
+                }
+            }
+        }
+
+        private Object parseRawJson(RawJson value) {
+            // Wrapped in an array so that top-level null is unwrapped by the codec
+            try {
+                return jsonCodec.getArrayElement(jsonCodec.parse("[" + value.toJSONString() + "]", 0), 0);
+            } catch (DecodingException e) {
+                throw new IllegalArgumentException("data contains invalid raw json.", e);
+            }
+        }
+
+        private static int toTextType(int type) {
+            switch (type) {
+                case BINARY_EVENT:
+                    return EVENT;
+                case BINARY_ACK:
+                    return ACK;
+                default:
+                    return type;
+            }
+        }
+    }
+
+    final public static class Decoder implements Parser.Decoder {
+
+        private final JsonCodec jsonCodec;
+        private final DecoderLimits limits;
+        private Decoder.Callback onDecodedCallback;
+        private int frameSize;
+
+        public Decoder() {
+            this(OrgJsonCodec.INSTANCE);
+        }
+
+        public Decoder(JsonCodec jsonCodec) {
+            this(jsonCodec, DecoderLimits.UNLIMITED);
+        }
+
+        public Decoder(JsonCodec jsonCodec, DecoderLimits limits) {
+            this.jsonCodec = jsonCodec;
+            this.limits = limits;
+        }
+
+        @Override
+        public void add(String obj) {
+            throw new DecodingException("invalid packet format");
+        }
+
+        @Override
+        public void add(byte[] obj) {
+            limits.checkFrameSize(obj.length);
+
+            final Packet packet = decodeBytes(obj);
+            if (this.onDecodedCallback != null) {
+                this.onDecodedCallback.call(packet);
+            }
+        }
+
+        @Override
+        public void destroy() {
+            this.onDecodedCallback = null;
+        }
+
+        @Override
+        public void onDecoded(Callback callback) {
+            this.onDecodedCallback = callback;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Packet decodeBytes(byte[] bytes) {
+            final Packet<Object> p = new Packet<>();
+            p.type = -1;
+
+            boolean hasType = false;
+            boolean hasNsp = false;
+            frameSize = bytes.length;
+            try (MessageUnpacker unpacker = MessagePack.newDefaultUnpacker(bytes)) {
+                if (unpacker.getNextFormat().getValueType() != ValueType.MAP) {
+                    throw new DecodingException("invalid packet format");
+                }
+
+                final int size = unpacker.unpackMapHeader();
+                for (int i = 0; i < size; i++) {
+                    final Object key = unpackValue(unpacker, 0);
+                    final Object value = unpackValue(unpacker, 0);
+                    if (KEY_TYPE.equals(key)) {
+                        if (!(value instanceof Integer)) {
+                            throw new DecodingException("invalid packet type");
+                        }
+                        p.type = (Integer) value;
+                        hasType = true;
+                    } else if (KEY_NSP.equals(key)) {
+                        if (!(value instanceof String)) {
+                            throw new DecodingException("invalid namespace");
+                        }
+                        p.nsp = (String) value;
+                        hasNsp = true;
+                    } else if (KEY_DATA.equals(key)) {
+                        p.data = value;
+                    } else if (KEY_ID.equals(key)) {
+                        if (value != null && !(value instanceof Integer && (Integer) value >= 0)) {
+                            throw new DecodingException("invalid packet id");
+                        }
+                        p.id = (value != null)? (Integer) value : -1;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                if (e instanceof DecodingException) {
+                    throw (DecodingException) e;
+                }
+                logger.log(Level.WARNING, "An error occured while unpacking data", e);
+                throw new DecodingException("invalid packet format");
+            }
+
+            if (!hasType || p.type < CONNECT || p.type > CONNECT_ERROR) {
+                throw new DecodingException("invalid packet type");
+            }
+            if (!hasNsp) {
+                throw new DecodingException("invalid namespace");
+            }
+            if (!isPayloadValid(p.type, p.data)) {
+                throw new DecodingException("invalid payload");
+            }
+
+            if (logger.isLoggable(Level.FINE)) {
+                logger.fine(String.format("decoded %s", p));
+            }
+            return p;
+        }
+
+        private Object unpackValue(MessageUnpacker unpacker, int depth) throws IOException {
+            final MessageFormat format = unpacker.getNextFormat();
+            final ValueType valueType = format.getValueType();
+            if ((valueType == ValueType.ARRAY || valueType == ValueType.MAP)
+                    && limits.getMaxNestingDepth() > 0 && depth >= limits.getMaxNestingDepth()) {
+                throw new DecodingLimitException("nesting too deep");
+            }
+
+            switch (valueType) {
+                case NIL:
+                    unpacker.unpackNil();
+                    return null;
+                case BOOLEAN:
+                    return unpacker.unpackBoolean();
+                case INTEGER:
+                    if (format == MessageFormat.UINT64) {
+                        final BigInteger value = unpacker.unpackBigInteger();
+                        return (value.bitLength() < 64)? narrow(value.longValue()) : value;
+                    }
+                    return narrow(unpacker.unpackLong());
+                case FLOAT:
+                    return unpacker.unpackDouble();
+                case STRING:
+                    return new String(unpacker.readPayload(checkLength(unpacker.unpackRawStringHeader())), StandardCharsets.UTF_8);
+                case BINARY:
+                    return unpacker.readPayload(checkLength(unpacker.unpackBinaryHeader()));
+                case ARRAY: {
+                    final Object[] items = new Object[checkLength(unpacker.unpackArrayHeader())];
+                    for (int i = 0; i < items.length; i++) {
+                        items[i] = unpackValue(unpacker, depth + 1);
+                    }
+                    return jsonCodec.createArray(items);
+                }
+                case MAP: {
+                    final int size = unpacker.unpackMapHeader();
+                    final Map<String, Object> map = new LinkedHashMap<>();
+                    for (int i = 0; i < size; i++) {
+                        map.put(String.valueOf(unpackValue(unpacker, depth + 1)), unpackValue(unpacker, depth + 1));
+                    }
+                    return jsonCodec.createObject(map);
+                }
+                case EXTENSION: {
+                    final ExtensionTypeHeader header = unpacker.unpackExtensionTypeHeader();
+                    if (header.getType() == EXT_UNDEFINED) {
+                        unpacker.readPayload(checkLength(header.getLength()));
+                        return null;
+                    }
+                    throw new DecodingException("invalid payload");
+                }
+                default:
+                    throw new DecodingException("invalid payload");
+            }
+        }
+
+        /**
+         * Reject lengths that cannot fit in the frame before allocating for them.
+         */
+        private int checkLength(int length) {
+            if (length < 0 || length > frameSize) {
+                throw new DecodingException("invalid packet format");
+            }
+            return length;
+        }
+
+        private static Object narrow(long value) {
+            return (value >= Integer.MIN_VALUE && value <= Integer.MAX_VALUE)? (Object) (int) value : (Object) value;
+        }
+
+        private boolean isPayloadValid(int type, Object payload) {
+            switch (type) {
+                case Parser.CONNECT:
+                    return payload == null || jsonCodec.isObject(payload);
+                case Parser.CONNECT_ERROR:
+                    return payload instanceof String || jsonCodec.isObject(payload);
+                case Parser.DISCONNECT:
+                    return payload == null;
+                case Parser.EVENT:
+                    return jsonCodec.getArrayLength(payload) > 0
+                            && jsonCodec.getArrayElement(payload, 0) != null;
+                case Parser.ACK:
+                    return jsonCodec.getArrayLength(payload) >= 0;
+                default:
+                    return false;
+            }
+        }
+    }
+}
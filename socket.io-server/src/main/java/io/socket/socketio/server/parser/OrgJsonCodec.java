@@ -0,0 +1,201 @@
+package io.socket.socketio.server.parser;
+
+import io.socket.socketio.server.utils.HasBinary;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.json.JSONTokener;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Json codec using org.json.
+ * Payloads are {@link JSONArray} and {@link JSONObject} trees.
+ * Binary data may be byte[] or {@link ByteBuffer}, received binary data is always byte[].
+ * {@link RawJson} values are written verbatim and are not validated.
+ */
+public final class OrgJsonCodec implements JsonCodec {
+
+    /**
+     * Shared instance of this codec.
+     */
+    public static final OrgJsonCodec INSTANCE = new OrgJsonCodec();
+
+    private static final Logger logger = Logger.getLogger(OrgJsonCodec.class.getName());
+
+    @Override
+    public Object parse(String str, int offset) throws DecodingException {
+        try {
+            // Tokener reads from an offset into the string instead of a copy of the remainder
+            final StringReader reader = new StringReader(str);
+            reader.skip(offset);
+            return new JSONTokener(reader).nextValue();
+        } catch (JSONException | IOException e) {
+            logger.log(Level.WARNING, "An error occured while retrieving data from JSONTokener", e);
+            throw new DecodingException("invalid payload");
+        }
+    }
+
+    @Override
+    public String serialize(Object value) {
+        return String.valueOf(value);
+    }
+
+    @Override
+    public void serialize(Object value, Writer writer) throws IOException {
+        if (value instanceof JSONArray) {
+            ((JSONArray) value).write(writer);
+        } else if (value instanceof JSONObject) {
+            ((JSONObject) value).write(writer);
+        } else {
+            writer.write(String.valueOf(value));
+        }
+    }
+
+    @Override
+    public Object createArray(Object[] items) throws IllegalArgumentException {
+        final JSONArray array = new JSONArray();
+        for (Object item : items) {
+            array.put((item == null)? JSONObject.NULL : item);
+        }
+        if (!isDataValid(array)) {
+            throw new IllegalArgumentException("args contain invalid data type.");
+        }
+        return array;
+    }
+
+    @Override
+    public Object createObject(Map<String, ?> map) throws IllegalArgumentException {
+        final JSONObject object = new JSONObject();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            object.put(entry.getKey(), (entry.getValue() == null)? JSONObject.NULL : entry.getValue());
+        }
+        if (!isDataValid(object)) {
+            throw new IllegalArgumentException("map contains invalid data type.");
+        }
+        return object;
+    }
+
+    @Override
+    public boolean isObject(Object value) {
+        return value instanceof JSONObject;
+    }
+
+    @Override
+    public int getArrayLength(Object value) {
+        return (value instanceof JSONArray)? ((JSONArray) value).length() : -1;
+    }
+
+    @Override
+    public Object getArrayElement(Object array, int index) {
+        final Object item = ((JSONArray) array).opt(index);
+        return (item == JSONObject.NULL)? null : item;
+    }
+
+    @Override
+    public Set<String> getObjectKeys(Object object) {
+        return ((JSONObject) object).keySet();
+    }
+
+    @Override
+    public Object getObjectProperty(Object object, String key) {
+        final Object item = ((JSONObject) object).opt(key);
+        return (item == JSONObject.NULL)? null : item;
+    }
+
+    @Override
+    public boolean hasBinary(Object value) {
+        return HasBinary.hasBinary(value);
+    }
+
+    @Override
+    public Object deconstructBinary(Object value, List<byte[]> buffers) {
+        return Binary.deconstructData(value, buffers);
+    }
+
+    @Override
+    public Object reconstructBinary(Object value, byte[][] buffers) {
+        return Binary.reconstructData(value, buffers);
+    }
+
+    @SuppressWarnings("Duplicates")
+    private static boolean isDataValid(JSONArray array) {
+        try {
+            for (int idx = 0; idx < array.length(); idx++) {
+                final Object item = array.opt(idx);
+
+                if (!isDataValidType(item)) {
+                    return false;
+                }
+                if (item == null) {
+                    array.put(idx, JSONObject.NULL);
+                }
+                if ((item instanceof JSONArray) && !isDataValid((JSONArray)item)) {
+                    return false;
+                }
+                if ((item instanceof JSONObject) && !isDataValid((JSONObject)item)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (JSONException ignore) {
+        }
+        return false;
+    }
+
+    @SuppressWarnings("Duplicates")
+    private static boolean isDataValid(JSONObject object) {
+        try {
+            final Iterator<?> keys = object.keys();
+            while (keys.hasNext()) {
+                final Object keyObj = keys.next();
+                if (!(keyObj instanceof String)) {
+                    return false;
+                }
+
+                final String key = (String)keyObj;
+                final Object item = object.get(key);
+
+                if (!isDataValidType(item)) {
+                    return false;
+                }
+                if (item == null) {
+                    object.put(key, JSONObject.NULL);
+                }
+                if ((item instanceof JSONArray) && !isDataValid((JSONArray)item)) {
+                    return false;
+                }
+                if ((item instanceof JSONObject) && !isDataValid((JSONObject)item)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } catch (JSONException ignore) {
+        }
+        return false;
+    }
+
+    private static boolean isDataValidType(Object object) {
+        return ((object == null) ||
+                (object == JSONObject.NULL) ||
+                (object instanceof JSONObject) ||
+                (object instanceof JSONArray) ||
+                (object instanceof CharSequence) ||
+                (object instanceof Number) ||
+                (object instanceof Boolean) ||
+                (object instanceof byte[]) ||
+                (object instanceof ByteBuffer) ||
+                (object instanceof RawJson));
+    }
+}
@@ -0,0 +1,40 @@
+package io.socket.socketio.server.parser;
+
+/**
+ * Factory for the encoder and decoder of a wire format.
+ */
+public interface ParserFactory {
+
+    /**
+     * Create an encoder.
+     * A single encoder is shared by all clients of a server.
+     *
+     * @param jsonCodec Codec the packet data is created with.
+     * @return Encoder instance.
+     */
+    Parser.Encoder createEncoder(JsonCodec jsonCodec);
+
+    /**
+     * Create a decoder.
+     * A decoder is created for every client.
+     *
+     * @param jsonCodec Codec to create packet data with.
+     * @param limits Limits to enforce while decoding.
+     * @return Decoder instance.
+     */
+    Parser.Decoder createDecoder(JsonCodec jsonCodec, DecoderLimits limits);
+
+    /**
+     * Create a decoder that may defer parsing of event arguments.
+     * Event packets decoded lazily carry a {@link LazyEventPayload} as data.
+     * Formats that cannot read the event name cheaply decode eagerly.
+     *
+     * @param jsonCodec Codec to create packet data with.
+     * @param limits Limits to enforce while decoding.
+     * @param lazyEvents Whether event arguments may be parsed lazily.
+     * @return Decoder instance.
+     */
+    default Parser.Decoder createDecoder(JsonCodec jsonCodec, DecoderLimits limits, boolean lazyEvents) {
+        return createDecoder(jsonCodec, limits);
+    }
+}
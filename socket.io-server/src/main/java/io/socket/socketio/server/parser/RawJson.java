@@ -0,0 +1,58 @@
+package io.socket.socketio.server.parser;
+
+import org.json.JSONString;
+
+/**
+ * Pre-serialized JSON value to send as an argument.
+ * The JSON text is trusted and written into the packet verbatim, it is never parsed, validated or
+ * converted into a tree by the text codecs. The caller must guarantee that it is a single valid JSON value
+ * without binary data, otherwise the receiving side will fail to decode the packet.
+ *
+ * A raw value may also be the whole data of a packet, in which case the packet is encoded with the
+ * JSON text as its payload.
+ *
+ * Parsers that do not use JSON on the wire, like {@link MsgPackParser}, parse the value before encoding it.
+ */
+public final class RawJson implements JSONString {
+
+    private final String mJson;
+
+    /**
+     * Create a raw JSON value.
+     *
+     * @param json Serialized JSON value.
+     * @throws IllegalArgumentException If json is null.
+     */
+    public RawJson(String json) throws IllegalArgumentException {
+        if (json == null) {
+            throw new IllegalArgumentException("json must not be null.");
+        }
+
+        mJson = json;
+    }
+
+    /**
+     * Get the serialized JSON value.
+     *
+     * @return JSON string as passed to the constructor.
+     */
+    @Override
+    public String toJSONString() {
+        return mJson;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return (this == o) || ((o instanceof RawJson) && mJson.equals(((RawJson) o).mJson));
+    }
+
+    @Override
+    public int hashCode() {
+        return mJson.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return mJson;
+    }
+}
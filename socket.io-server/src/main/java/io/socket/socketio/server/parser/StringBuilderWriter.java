@@ -0,0 +1,62 @@
+package io.socket.socketio.server.parser;
+
+import java.io.Writer;
+
+/**
+ * Writer appending to a string builder.
+ * Unlike {@link java.io.StringWriter} it does not synchronize and writes into a builder owned by the caller.
+ */
+final class StringBuilderWriter extends Writer {
+
+    private final StringBuilder mBuilder;
+
+    StringBuilderWriter(StringBuilder builder) {
+        mBuilder = builder;
+    }
+
+    @Override
+    public void write(int c) {
+        mBuilder.append((char) c);
+    }
+
+    @Override
+    public void write(char[] cbuf, int off, int len) {
+        mBuilder.append(cbuf, off, len);
+    }
+
+    @Override
+    public void write(String str) {
+        mBuilder.append(str);
+    }
+
+    @Override
+    public void write(String str, int off, int len) {
+        mBuilder.append(str, off, off + len);
+    }
+
+    @Override
+    public Writer append(CharSequence csq) {
+        mBuilder.append(csq);
+        return this;
+    }
+
+    @Override
+    public Writer append(CharSequence csq, int start, int end) {
+        mBuilder.append(csq, start, end);
+        return this;
+    }
+
+    @Override
+    public Writer append(char c) {
+        mBuilder.append(c);
+        return this;
+    }
+
+    @Override
+    public void flush() {
+    }
+
+    @Override
+    public void close() {
+    }
+}
@@ -4,6 +4,7 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -15,7 +16,7 @@ public interface HasBinary {
     static boolean hasBinary(Object data) {
         if (data == null) return false;
 
-        if (data instanceof byte[]) {
+        if (data instanceof byte[] || data instanceof ByteBuffer) {
             return true;
         }
 
@@ -0,0 +1,236 @@
+package io.socket.socketio.server.utils;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Hashed timing wheel for scheduling large numbers of timeouts cheaply.
+ * Timeouts are bucketed by tick, so adding and cancelling is constant time and a single
+ * task on the scheduled executor drives all of them. The task only runs while timeouts are pending.
+ *
+ * Tasks run on the executor thread and should return quickly. They run after the wheel has been
+ * advanced and without holding its lock, so tasks may add or cancel timeouts.
+ * Timeouts fire with a precision of one tick.
+ */
+public final class HashedTimingWheel {
+
+    private static final Logger logger = Logger.getLogger(HashedTimingWheel.class.getName());
+
+    /**
+     * Handle of a scheduled task.
+     */
+    public interface Timeout {
+
+        /**
+         * Cancel the task.
+         *
+         * @return True if task was cancelled, false if it has already run or been cancelled.
+         */
+        boolean cancel();
+    }
+
+    private final ScheduledExecutorService mExecutor;
+    private final long mTickNanos;
+    private final ArrayDeque<TimeoutImpl>[] mWheel;
+    private final int mMask;
+    private final long mStartTime;
+
+    private final Queue<TimeoutImpl> mNewTimeouts = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger mPendingCount = new AtomicInteger(0);
+    private final Object mTickLock = new Object();
+
+    private long mTick = 0;
+    private boolean mIsIdle = false;
+    private ScheduledFuture<?> mTickFuture = null;
+
+    /**
+     * Create a timing wheel.
+     *
+     * @param executor Executor to drive the wheel.
+     * @param tickDuration Duration of one tick.
+     * @param unit Unit of tick duration.
+     * @param wheelSize Number of buckets in the wheel. Rounded up to a power of two.
+     * @throws IllegalArgumentException If executor is null or tick duration or wheel size is not positive.
+     */
+    @SuppressWarnings("unchecked")
+    public HashedTimingWheel(ScheduledExecutorService executor, long tickDuration, TimeUnit unit, int wheelSize) throws IllegalArgumentException {
+        if (executor == null) {
+            throw new IllegalArgumentException("executor must not be null.");
+        }
+        if (tickDuration <= 0) {
+            throw new IllegalArgumentException("tickDuration must be greater than 0.");
+        }
+        if ((wheelSize <= 0) || (wheelSize > (1 << 30))) {
+            throw new IllegalArgumentException("wheelSize must be between 1 and 2^30.");
+        }
+
+        final int size = Integer.highestOneBit(wheelSize) == wheelSize? wheelSize : Integer.highestOneBit(wheelSize) << 1;
+
+        mExecutor = executor;
+        mTickNanos = unit.toNanos(tickDuration);
+        mWheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            mWheel[i] = new ArrayDeque<>();
+        }
+        mMask = size - 1;
+        mStartTime = System.nanoTime();
+    }
+
+    /**
+     * Schedule a task to run after the specified delay.
+     *
+     * @param task Task to run.
+     * @param delay Delay before running task.
+     * @param unit Unit of delay.
+     * @return Handle to cancel the task.
+     * @throws IllegalArgumentException If task is null.
+     */
+    public Timeout newTimeout(Runnable task, long delay, TimeUnit unit) throws IllegalArgumentException {
+        if (task == null) {
+            throw new IllegalArgumentException("task must not be null.");
+        }
+
+        final TimeoutImpl timeout = new TimeoutImpl(task, System.nanoTime() - mStartTime + unit.toNanos(Math.max(delay, 0)));
+
+        // Counted before it is queued, so a tick never stops while the timeout is in the wheel
+        if (mPendingCount.getAndIncrement() == 0) {
+            synchronized (mTickLock) {
+                if (mTickFuture == null) {
+                    mTickFuture = mExecutor.scheduleAtFixedRate(this::tick, mTickNanos, mTickNanos, TimeUnit.NANOSECONDS);
+                }
+            }
+        }
+
+        mNewTimeouts.add(timeout);
+        return timeout;
+    }
+
+    /**
+     * Get the number of tasks that have neither run nor been cancelled.
+     */
+    public int getPendingCount() {
+        return mPendingCount.get();
+    }
+
+    private void tick() {
+        final List<TimeoutImpl> expired = new ArrayList<>();
+        synchronized (mTickLock) {
+            final long currentTick = (System.nanoTime() - mStartTime) / mTickNanos;
+            if (mIsIdle) {
+                // Buckets are empty, skip the ticks that passed while stopped
+                mTick = currentTick;
+                mIsIdle = false;
+            }
+
+            // Ticks missed due to executor delays are caught up here
+            while (mTick <= currentTick) {
+                transferNewTimeouts();
+                expireBucket(mWheel[(int) (mTick & mMask)], expired);
+                mTick++;
+            }
+
+            if ((mPendingCount.get() == 0) && (mTickFuture != null)) {
+                mTickFuture.cancel(false);
+                mTickFuture = null;
+
+                // Only cancelled timeouts are left in the buckets
+                for (ArrayDeque<TimeoutImpl> bucket : mWheel) {
+                    bucket.clear();
+                }
+                mIsIdle = true;
+            }
+        }
+
+        for (TimeoutImpl timeout : expired) {
+            timeout.run();
+        }
+    }
+
+    private void transferNewTimeouts() {
+        TimeoutImpl timeout;
+        while ((timeout = mNewTimeouts.poll()) != null) {
+            if (timeout.mState.get() != TimeoutImpl.STATE_PENDING) {
+                continue;
+            }
+
+            // Rounded up so that a timeout never fires before its deadline
+            final long deadlineTick = Math.max((timeout.mDeadline + mTickNanos - 1) / mTickNanos, mTick);
+            timeout.mRemainingRounds = (deadlineTick - mTick) / mWheel.length;
+            mWheel[(int) (deadlineTick & mMask)].addLast(timeout);
+        }
+    }
+
+    private void expireBucket(ArrayDeque<TimeoutImpl> bucket, List<TimeoutImpl> expired) {
+        final Iterator<TimeoutImpl> iterator = bucket.iterator();
+        while (iterator.hasNext()) {
+            final TimeoutImpl timeout = iterator.next();
+            if (timeout.mState.get() != TimeoutImpl.STATE_PENDING) {
+                iterator.remove();
+            } else if (timeout.mRemainingRounds <= 0) {
+                iterator.remove();
+                if (timeout.expire()) {
+                    expired.add(timeout);
+                }
+            } else {
+                timeout.mRemainingRounds--;
+            }
+        }
+    }
+
+    private final class TimeoutImpl implements Timeout {
+
+        private static final int STATE_PENDING = 0;
+        private static final int STATE_CANCELLED = 1;
+        private static final int STATE_EXPIRED = 2;
+
+        private final Runnable mTask;
+        private final long mDeadline;
+        private final AtomicInteger mState = new AtomicInteger(STATE_PENDING);
+        private long mRemainingRounds;
+
+        TimeoutImpl(Runnable task, long deadline) {
+            mTask = task;
+            mDeadline = deadline;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (mState.compareAndSet(STATE_PENDING, STATE_CANCELLED)) {
+                mPendingCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        /**
+         * Mark the timeout as expired.
+         *
+         * @return True if the task must be run, false if it was cancelled.
+         */
+        boolean expire() {
+            if (mState.compareAndSet(STATE_PENDING, STATE_EXPIRED)) {
+                mPendingCount.decrementAndGet();
+                return true;
+            }
+            return false;
+        }
+
+        void run() {
+            try {
+                mTask.run();
+            } catch (Throwable t) {
+                logger.log(Level.WARNING, "An exception was thrown by timeout task", t);
+            }
+        }
+    }
+}
@@ -0,0 +1,73 @@
+package io.socket.socketio.server;
+
+import io.socket.socketio.server.utils.HashedTimingWheel;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+public final class BroadcastAcknowledgementTest {
+
+    @Test
+    public void test_complete_with_all_responses() {
+        final BroadcastAcknowledgement acknowledgement = new BroadcastAcknowledgement(1);
+
+        // Responses may arrive before the recipient count is known
+        acknowledgement.onReceivedByRemote("foo");
+        acknowledgement.setRecipientCount(2);
+        assertFalse(acknowledgement.getFuture().isDone());
+
+        acknowledgement.onReceivedByRemote("bar");
+        assertTrue(acknowledgement.getFuture().isDone());
+
+        final List<Object[]> responses = acknowledgement.getFuture().join();
+        assertEquals(2, responses.size());
+        assertArrayEquals(new Object[] { "foo" }, responses.get(0));
+        assertArrayEquals(new Object[] { "bar" }, responses.get(1));
+    }
+
+    @Test
+    public void test_complete_without_recipients() {
+        final BroadcastAcknowledgement acknowledgement = new BroadcastAcknowledgement(1);
+        acknowledgement.setRecipientCount(0);
+
+        assertTrue(acknowledgement.getFuture().isDone());
+        assertEquals(0, acknowledgement.getFuture().join().size());
+    }
+
+    @Test
+    public void test_complete_with_closed_recipient() {
+        final BroadcastAcknowledgement acknowledgement = new BroadcastAcknowledgement(1);
+        acknowledgement.setRecipientCount(2);
+        acknowledgement.onReceivedByRemote("foo");
+        acknowledgement.onRecipientClosed();
+
+        assertTrue(acknowledgement.getFuture().isDone());
+        assertEquals(1, acknowledgement.getFuture().join().size());
+    }
+
+    @Test
+    public void test_timeout_with_partial_responses() throws Exception {
+        final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor();
+        try {
+            final HashedTimingWheel timingWheel = new HashedTimingWheel(executor, 10, TimeUnit.MILLISECONDS, 8);
+            final BroadcastAcknowledgement acknowledgement = new BroadcastAcknowledgement(1);
+            acknowledgement.scheduleTimeout(timingWheel, 50);
+            acknowledgement.setRecipientCount(2);
+            acknowledgement.onReceivedByRemote("foo");
+
+            final List<Object[]> responses = acknowledgement.getFuture().get(2, TimeUnit.SECONDS);
+            assertEquals(1, responses.size());
+
+            // Late responses are ignored
+            acknowledgement.onReceivedByRemote("bar");
+            assertEquals(1, acknowledgement.getFuture().join().size());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+}
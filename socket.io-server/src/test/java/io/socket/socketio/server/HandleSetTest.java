@@ -0,0 +1,82 @@
+package io.socket.socketio.server;
+
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+import static org.junit.Assert.*;
+
+public final class HandleSetTest {
+
+    @Test
+    public void test_add_remove_sparse() {
+        final HandleSet handles = new HandleSet();
+
+        assertTrue(handles.add(100000));
+        assertTrue(handles.add(5));
+        assertFalse(handles.add(5));
+        assertArrayEquals(new int[] { 5, 100000 }, handles.snapshot());
+
+        assertTrue(handles.remove(100000));
+        assertFalse(handles.remove(100000));
+        assertArrayEquals(new int[] { 5 }, handles.snapshot());
+        assertEquals(1, handles.size());
+    }
+
+    @Test
+    public void test_add_remove_dense() {
+        final HandleSet handles = new HandleSet();
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(handles.add(i));
+        }
+        assertEquals(1000, handles.size());
+        assertArrayEquals(IntStream.range(0, 1000).toArray(), handles.snapshot());
+
+        for (int i = 0; i < 1000; i += 2) {
+            assertTrue(handles.remove(i));
+        }
+        assertFalse(handles.remove(0));
+        assertEquals(500, handles.size());
+        assertArrayEquals(IntStream.range(0, 500).map(i -> i * 2 + 1).toArray(), handles.snapshot());
+
+        for (int i = 1; i < 999; i += 2) {
+            assertTrue(handles.remove(i));
+        }
+        assertArrayEquals(new int[] { 999 }, handles.snapshot());
+        assertTrue(handles.add(3));
+        assertArrayEquals(new int[] { 3, 999 }, handles.snapshot());
+    }
+
+    @Test
+    public void test_snapshot_reused_until_change() {
+        final HandleSet handles = new HandleSet();
+        handles.add(1);
+
+        final int[] snapshot = handles.snapshot();
+        assertSame(snapshot, handles.snapshot());
+
+        handles.add(2);
+        assertNotSame(snapshot, handles.snapshot());
+        assertArrayEquals(new int[] { 1 }, snapshot);
+    }
+
+    @Test
+    public void test_nextClear() {
+        final HandleSet handles = new HandleSet();
+        assertEquals(0, handles.nextClear());
+
+        for (int i = 0; i < 200; i++) {
+            handles.add(i);
+        }
+        assertEquals(200, handles.nextClear());
+
+        handles.remove(42);
+        assertEquals(42, handles.nextClear());
+
+        final HandleSet sparse = new HandleSet();
+        sparse.add(0);
+        sparse.add(1);
+        sparse.add(3);
+        assertEquals(2, sparse.nextClear());
+    }
+}
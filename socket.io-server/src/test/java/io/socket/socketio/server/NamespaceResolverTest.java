@@ -0,0 +1,100 @@
+package io.socket.socketio.server;
+
+import io.socket.engineio.server.EngineIoServer;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+import static org.junit.Assert.*;
+
+public final class NamespaceResolverTest {
+
+    private final SocketIoServer mServer = new SocketIoServer(new EngineIoServer());
+
+    @Test
+    public void test_resolve_many_patterns() {
+        final NamespaceResolver resolver = new NamespaceResolver();
+        final List<SocketIoNamespaceGroupImpl> groups = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            final Pattern pattern = Pattern.compile("^/tenant" + i + "-(\\d+)(/(room|chat))?$");
+            final SocketIoNamespaceGroupImpl group = new SocketIoNamespaceGroupImpl(mServer);
+            resolver.addProvider(namespace -> pattern.matcher(namespace).matches(), pattern, group);
+            groups.add(group);
+        }
+
+        assertSame(groups.get(0), resolver.resolve("/tenant0-1"));
+        assertSame(groups.get(42), resolver.resolve("/tenant42-7/chat"));
+        assertSame(groups.get(499), resolver.resolve("/tenant499-12/room"));
+        assertNull(resolver.resolve("/tenant500-1"));
+        assertNull(resolver.resolve("/tenant1-x"));
+    }
+
+    @Test
+    public void test_resolve_first_match() {
+        final NamespaceResolver resolver = new NamespaceResolver();
+        final SocketIoNamespaceGroupImpl group1 = addPattern(resolver, "^/foo.*$");
+        addPattern(resolver, "^/foo[0-9]$");
+
+        assertSame(group1, resolver.resolve("/foo1"));
+        assertSame(group1, resolver.resolve("/foobar"));
+        assertNull(resolver.resolve("/bar"));
+    }
+
+    @Test
+    public void test_resolve_uncombined_patterns() {
+        final NamespaceResolver resolver = new NamespaceResolver();
+        final SocketIoNamespaceGroupImpl group1 = addPattern(resolver, "^/(a)\\1$");
+        final SocketIoNamespaceGroupImpl group2 = addPattern(resolver, "^/(?i)b$");
+
+        assertSame(group1, resolver.resolve("/aa"));
+        assertSame(group2, resolver.resolve("/B"));
+        assertNull(resolver.resolve("/ab"));
+    }
+
+    @Test
+    public void test_rejected_cache() {
+        final NamespaceResolver resolver = new NamespaceResolver();
+        final AtomicInteger patternChecks = new AtomicInteger();
+        final Pattern pattern = Pattern.compile("^/foo$");
+        final SocketIoNamespaceGroupImpl patternGroup = new SocketIoNamespaceGroupImpl(mServer);
+        resolver.addProvider(namespace -> {
+            patternChecks.incrementAndGet();
+            return pattern.matcher(namespace).matches();
+        }, pattern, patternGroup);
+
+        final AtomicInteger providerChecks = new AtomicInteger();
+        final SocketIoNamespaceGroupImpl providerGroup = new SocketIoNamespaceGroupImpl(mServer);
+        resolver.addProvider(namespace -> {
+            providerChecks.incrementAndGet();
+            return false;
+        }, null, providerGroup);
+
+        assertNull(resolver.resolve("/bar"));
+        assertNull(resolver.resolve("/bar"));
+        assertEquals(1, resolver.getRejectedCount());
+
+        // Patterns are matched by the resolver, other providers are asked every time
+        assertEquals(0, patternChecks.get());
+        assertEquals(2, providerChecks.get());
+
+        // Adding a provider drops rejected names
+        final SocketIoNamespaceGroupImpl barGroup = addPattern(resolver, "^/bar$");
+        assertEquals(0, resolver.getRejectedCount());
+        assertSame(barGroup, resolver.resolve("/bar"));
+
+        for (int i = 0; i <= NamespaceResolver.MAX_REJECTED_NAMESPACES; i++) {
+            resolver.resolve("/probe" + i);
+        }
+        assertTrue(resolver.getRejectedCount() <= NamespaceResolver.MAX_REJECTED_NAMESPACES);
+    }
+
+    private SocketIoNamespaceGroupImpl addPattern(NamespaceResolver resolver, String regex) {
+        final Pattern pattern = Pattern.compile(regex);
+        final SocketIoNamespaceGroupImpl group = new SocketIoNamespaceGroupImpl(mServer);
+        resolver.addProvider(namespace -> pattern.matcher(namespace).matches(), pattern, group);
+        return group;
+    }
+}
@@ -1,10 +1,21 @@
 package io.socket.socketio.server;
 
+import io.socket.engineio.server.EngineIoServer;
 import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertEquals;
+
 public final class SocketIoAdapterTest {
 
     @Test
@@ -42,4 +53,142 @@ public final class SocketIoAdapterTest {
         Mockito.verify(adapter, Mockito.times(1))
                 .broadcast(Mockito.any(Packet.class), Mockito.isNull(), Mockito.isNull());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_broadcast_options() {
+        final SocketIoSocket socket = Mockito.mock(SocketIoSocket.class);
+        Mockito.doAnswer(invocationOnMock -> "baz").when(socket).getId();
+
+        final SocketIoAdapter adapter = Mockito.spy(new SocketIoAdapter(null) {
+            @Override
+            public void broadcast(Packet<?> packet, String[] rooms, String[] socketsExcluded) throws IllegalArgumentException {
+            }
+
+            @Override
+            public void add(String room, SocketIoSocket socket) throws IllegalArgumentException {
+            }
+
+            @Override
+            public void remove(String room, SocketIoSocket socket) throws IllegalArgumentException {
+            }
+
+            @Override
+            public SocketIoSocket[] listClients(String room) throws IllegalArgumentException {
+                return room.equals("bar")? new SocketIoSocket[] { socket } : new SocketIoSocket[0];
+            }
+
+            @Override
+            public String[] listClientRooms(SocketIoSocket socket) throws IllegalArgumentException {
+                return new String[0];
+            }
+        });
+        Mockito.doCallRealMethod().when(adapter)
+                .broadcastWithOptions(Mockito.any(Packet.class), Mockito.any(SocketIoAdapter.BroadcastOptions.class));
+
+        final Packet<?> packet = new Packet<>(Parser.CONNECT);
+        adapter.broadcastWithOptions(packet, new SocketIoAdapter.BroadcastOptions(
+                Collections.singleton("foo"),
+                Collections.singleton("bar"),
+                Collections.emptySet(),
+                false, true, -1));
+        Mockito.verify(adapter, Mockito.times(1))
+                .broadcast(Mockito.eq(packet), Mockito.eq(new String[] { "foo" }), Mockito.eq(new String[] { "baz" }));
+    }
+
+    @Test
+    public void test_broadcastWithAck_binary() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(
+                engineIoServer,
+                SocketIoServerOptions.newFromDefault()
+                        .setAdapterFactory(SocketIoAdapterImpl::new));
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        final List<StubEngineIoWebSocket> webSockets = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            final StubEngineIoWebSocket webSocket = Mockito.spy(new StubEngineIoWebSocket());
+            engineIoServer.handleWebSocket(webSocket);
+            webSocket.emitConnect(null);
+            webSockets.add(webSocket);
+        }
+        assertEquals(2, namespace.getConnectedSockets().size());
+
+        final byte[] attachment = new byte[] { 1, 2, 3 };
+        namespace.broadcast().emitWithAck("foo", attachment);
+
+        // Every recipient gets the attachment, not only the first one
+        for (StubEngineIoWebSocket webSocket : webSockets) {
+            Mockito.verify(webSocket, Mockito.times(1))
+                    .write(Mockito.matches("451-\\d+\\[\"foo\",\\{\"_placeholder\":true,\"num\":0}]"));
+            Mockito.verify(webSocket, Mockito.times(1))
+                    .write(AdditionalMatchers.aryEq(attachment));
+        }
+    }
+
+    @Test
+    public void test_broadcastWithOptions_volatile() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(
+                engineIoServer,
+                SocketIoServerOptions.newFromDefault()
+                        .setAdapterFactory(RoomAdapter::new)
+                        // Packets stay in the outbound queue, so the transport is not writable
+                        .setCoalesceDelayMicros(TimeUnit.HOURS.toMicros(1)));
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        for (int i = 0; i < 2; i++) {
+            final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+            engineIoServer.handleWebSocket(webSocket);
+            webSocket.emitConnect(null);
+        }
+        final List<SocketIoSocket> sockets = new ArrayList<>(namespace.getConnectedSockets().values());
+        assertEquals(2, sockets.size());
+        sockets.get(0).joinRoom("foo");
+
+        namespace.broadcast().asVolatile().emit("bar");
+        assertEquals(1, sockets.get(0).getClient().getDroppedVolatilePacketCount());
+        assertEquals(1, sockets.get(1).getClient().getDroppedVolatilePacketCount());
+
+        namespace.to("foo").asVolatile().emit("bar");
+        assertEquals(2, sockets.get(0).getClient().getDroppedVolatilePacketCount());
+        assertEquals(1, sockets.get(1).getClient().getDroppedVolatilePacketCount());
+    }
+
+    /**
+     * Adapter keeping rooms in memory without being a {@link SocketIoMemoryAdapter}.
+     */
+    private static final class RoomAdapter extends SocketIoAdapter {
+
+        RoomAdapter(SocketIoNamespace namespace) {
+            super(namespace);
+        }
+
+        @Override
+        public void broadcast(Packet<?> packet, String[] rooms, String[] socketsExcluded) throws IllegalArgumentException {
+        }
+
+        @Override
+        public void add(String room, SocketIoSocket socket) throws IllegalArgumentException {
+            mRoomSockets.computeIfAbsent(room, roomName -> ConcurrentHashMap.newKeySet()).add(socket);
+        }
+
+        @Override
+        public void remove(String room, SocketIoSocket socket) throws IllegalArgumentException {
+            final Set<SocketIoSocket> sockets = mRoomSockets.get(room);
+            if (sockets != null) {
+                sockets.remove(socket);
+            }
+        }
+
+        @Override
+        public SocketIoSocket[] listClients(String room) throws IllegalArgumentException {
+            final Set<SocketIoSocket> sockets = mRoomSockets.get(room);
+            return (sockets != null)? sockets.toArray(new SocketIoSocket[0]) : new SocketIoSocket[0];
+        }
+
+        @Override
+        public String[] listClientRooms(SocketIoSocket socket) throws IllegalArgumentException {
+            return new String[0];
+        }
+    }
+}
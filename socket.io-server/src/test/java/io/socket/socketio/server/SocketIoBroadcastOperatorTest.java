@@ -0,0 +1,90 @@
+package io.socket.socketio.server;
+
+import io.socket.engineio.server.EngineIoServer;
+import io.socket.socketio.server.parser.Packet;
+import io.socket.socketio.server.parser.Parser;
+import org.json.JSONArray;
+import org.junit.Test;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mockito;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+
+import static org.junit.Assert.*;
+
+public final class SocketIoBroadcastOperatorTest {
+
+    @Test
+    public void test_immutable() {
+        final SocketIoServer server = new SocketIoServer(new EngineIoServer());
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        final SocketIoBroadcastOperator operator = namespace.to("foo");
+        final SocketIoBroadcastOperator derived = operator.except("bar").asVolatile().compress(false).timeout(1000);
+
+        assertEquals(Collections.singleton("foo"), operator.getOptions().getRooms());
+        assertEquals(0, operator.getOptions().getExceptRooms().size());
+        assertFalse(operator.getOptions().isVolatile());
+        assertTrue(operator.getOptions().isCompress());
+        assertEquals(-1, operator.getOptions().getTimeout());
+
+        assertEquals(Collections.singleton("foo"), derived.getOptions().getRooms());
+        assertEquals(Collections.singleton("bar"), derived.getOptions().getExceptRooms());
+        assertTrue(derived.getOptions().isVolatile());
+        assertFalse(derived.getOptions().isCompress());
+        assertEquals(1000, derived.getOptions().getTimeout());
+    }
+
+    @Test
+    public void test_to_in() {
+        final SocketIoServer server = new SocketIoServer(new EngineIoServer());
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        assertEquals(new HashSet<>(Arrays.asList("foo", "bar", "baz")),
+                namespace.to("foo").in("bar").to("baz", "foo").getOptions().getRooms());
+        assertEquals(0, namespace.broadcast().getOptions().getRooms().size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_to_null() {
+        final SocketIoServer server = new SocketIoServer(new EngineIoServer());
+        server.namespace("/").to((String[]) null);
+    }
+
+    @Test
+    public void test_emit() {
+        final SocketIoAdapter adapter = Mockito.mock(SocketIoAdapter.class);
+        final SocketIoAdapter.AdapterFactory adapterFactory = Mockito.mock(SocketIoAdapter.AdapterFactory.class);
+        Mockito.doAnswer(invocationOnMock -> adapter)
+                .when(adapterFactory)
+                .createAdapter(Mockito.any(SocketIoNamespaceImpl.class));
+
+        final SocketIoServer server = new SocketIoServer(
+                new EngineIoServer(),
+                SocketIoServerOptions.newFromDefault().setAdapterFactory(adapterFactory));
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        namespace.to("foo").except("bar").asVolatile().emit("baz", 1);
+
+        final ArgumentCaptor<Packet> packetCaptor = ArgumentCaptor.forClass(Packet.class);
+        final ArgumentCaptor<SocketIoAdapter.BroadcastOptions> optionsCaptor = ArgumentCaptor.forClass(SocketIoAdapter.BroadcastOptions.class);
+        Mockito.verify(adapter, Mockito.times(1))
+                .broadcastWithOptions(packetCaptor.capture(), optionsCaptor.capture());
+
+        assertEquals(Parser.EVENT, packetCaptor.getValue().type);
+        assertEquals("baz", ((JSONArray) packetCaptor.getValue().data).get(0));
+        assertEquals(1, ((JSONArray) packetCaptor.getValue().data).get(1));
+        assertEquals(Collections.singleton("foo"), optionsCaptor.getValue().getRooms());
+        assertEquals(Collections.singleton("bar"), optionsCaptor.getValue().getExceptRooms());
+        assertEquals(0, optionsCaptor.getValue().getExceptSockets().size());
+        assertTrue(optionsCaptor.getValue().isVolatile());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_emit_null_event() {
+        final SocketIoServer server = new SocketIoServer(new EngineIoServer());
+        server.namespace("/").to("foo").emit(null);
+    }
+}
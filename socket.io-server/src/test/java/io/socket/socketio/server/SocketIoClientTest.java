@@ -8,11 +8,26 @@ import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
 import org.json.JSONArray;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.regex.Pattern;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
 
 public final class SocketIoClientTest {
 
@@ -206,4 +221,369 @@ public final class SocketIoClientTest {
         Mockito.verify(connectionListener, Mockito.times(1))
                 .call(Mockito.any(EngineIoSocket.class));
     }
+
+    @Test
+    public void test_decoder_limit_exceeded() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setMaxAttachments(2));
+
+        final EngineIoWebSocket webSocket = Mockito.spy(new StubEngineIoWebSocket());
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket socket = Mockito.spy((EngineIoSocket) args[0]);
+            final SocketIoClient client = new SocketIoClient(socketIoServer, socket);
+
+            socket.emit("data", "53-[\"foo\"]");
+
+            Mockito.verify(socket, Mockito.times(1))
+                    .close();
+            // The server attaches its own client to the connection as well
+            assertEquals(2, socketIoServer.getDecoderLimitExceededCount());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+        engineIoServer.handleWebSocket(webSocket);
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_sendPacket_volatile() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer);
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket socket = Mockito.spy((EngineIoSocket) args[0]);
+
+            // Packets are never flushed so the transport does not drain
+            Mockito.doNothing().when(socket).send(Mockito.any());
+            final SocketIoClient client = new SocketIoClient(socketIoServer, socket);
+
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("bar")), true);
+            Mockito.verify(socket, Mockito.times(1))
+                    .send(Mockito.any());
+            assertEquals(1, client.getDroppedVolatilePacketCount());
+
+            socket.emit("drain");
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("bar")), true);
+            Mockito.verify(socket, Mockito.times(2))
+                    .send(Mockito.any());
+            assertEquals(1, client.getDroppedVolatilePacketCount());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+        engineIoServer.handleWebSocket(new StubEngineIoWebSocket());
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_outbound_queue_drop_oldest() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setMaxOutboundQueuePackets(2)
+                .setOutboundQueuePolicy(SocketIoServerOptions.OutboundQueuePolicy.DROP_OLDEST));
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket socket = Mockito.spy((EngineIoSocket) args[0]);
+
+            // Packets are never flushed so the transport does not drain
+            Mockito.doNothing().when(socket).send(Mockito.any());
+            final SocketIoClient client = new SocketIoClient(socketIoServer, socket);
+
+            for (int i = 0; i < 4; i++) {
+                client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo").put(i)));
+            }
+            Mockito.verify(socket, Mockito.times(1))
+                    .send(Mockito.any());
+            assertEquals(2, client.getOutboundQueueSize());
+            assertEquals(1, client.getDroppedPacketCount());
+
+            final ArgumentCaptor<io.socket.engineio.server.parser.Packet<?>> captor = ArgumentCaptor.forClass(io.socket.engineio.server.parser.Packet.class);
+            socket.emit("drain");
+            Mockito.verify(socket, Mockito.times(3))
+                    .send(captor.capture());
+            assertEquals(0, client.getOutboundQueueSize());
+            assertEquals(0, client.getOutboundQueueBytes());
+            assertEquals("2[\"foo\",0]", captor.getAllValues().get(0).data);
+            assertEquals("2[\"foo\",2]", captor.getAllValues().get(1).data);
+            assertEquals("2[\"foo\",3]", captor.getAllValues().get(2).data);
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+        engineIoServer.handleWebSocket(new StubEngineIoWebSocket());
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_outbound_queue_disconnect() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setMaxOutboundQueueBytes(10)
+                .setOutboundQueuePolicy(SocketIoServerOptions.OutboundQueuePolicy.DISCONNECT));
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket socket = Mockito.spy((EngineIoSocket) args[0]);
+
+            // Packets are never flushed so the transport does not drain
+            Mockito.doNothing().when(socket).send(Mockito.any());
+            final SocketIoClient client = new SocketIoClient(socketIoServer, socket);
+
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            Mockito.verify(socket, Mockito.times(0))
+                    .close();
+
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            Mockito.verify(socket, Mockito.times(1))
+                    .close();
+            assertEquals(0, client.getOutboundQueueSize());
+            assertEquals(2, client.getDroppedPacketCount());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+        engineIoServer.handleWebSocket(new StubEngineIoWebSocket());
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_outbound_queue_notify() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setMaxOutboundQueuePackets(1)
+                .setOutboundQueuePolicy(SocketIoServerOptions.OutboundQueuePolicy.NOTIFY));
+
+        final SocketIoSocket.BackpressureListener backpressureListener = Mockito.mock(SocketIoSocket.BackpressureListener.class);
+        final Emitter.Listener drainEventListener = Mockito.mock(Emitter.Listener.class);
+        socketIoServer.namespace("/").on("connection", args -> {
+            final SocketIoSocket socket = (SocketIoSocket) args[0];
+            socket.registerBackpressureListener(backpressureListener);
+            socket.on("drain", drainEventListener);
+        });
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket socket = Mockito.spy((EngineIoSocket) args[0]);
+
+            // Packets are never flushed so the transport does not drain
+            Mockito.doNothing().when(socket).send(Mockito.any());
+            final SocketIoClient client = new SocketIoClient(socketIoServer, socket);
+
+            // Connect packet is handed to the transport
+            client.connect("/", null);
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            Mockito.verify(backpressureListener, Mockito.times(0))
+                    .onBackpressure();
+
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            Mockito.verify(backpressureListener, Mockito.times(1))
+                    .onBackpressure();
+            assertEquals(3, client.getOutboundQueueSize());
+            assertEquals(0, client.getDroppedPacketCount());
+
+            socket.emit("drain");
+            Mockito.verify(backpressureListener, Mockito.times(1))
+                    .onDrain();
+
+            // Application events of the same name are not emitted
+            Mockito.verifyNoInteractions(drainEventListener);
+            assertEquals(0, client.getOutboundQueueSize());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+        engineIoServer.handleWebSocket(new StubEngineIoWebSocket());
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_coalescing() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setCoalesceDelayMicros(TimeUnit.MILLISECONDS.toMicros(100))
+                .setCoalesceMaxBytes(20));
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket socket = Mockito.spy((EngineIoSocket) args[0]);
+            final SocketIoClient client = new SocketIoClient(socketIoServer, socket);
+
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("bar")));
+            Mockito.verify(socket, Mockito.times(0))
+                    .send(Mockito.any());
+            assertEquals(2, client.getOutboundQueueSize());
+
+            Mockito.verify(socket, Mockito.timeout(1000).times(2))
+                    .send(Mockito.any());
+            assertEquals(0, client.getOutboundQueueSize());
+
+            // Byte limit flushes without waiting for the coalesce delay
+            // The timed flush may still be handing its packets over, which sends the queue when it returns
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foo")));
+            client.sendPacket(new Packet<>(Parser.EVENT, new JSONArray().put("foobarbaz")));
+            Mockito.verify(socket, Mockito.timeout(50).times(4))
+                    .send(Mockito.any());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+        engineIoServer.handleWebSocket(new StubEngineIoWebSocket());
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_connect_middleware_reject() throws IOException {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer);
+        final SocketIoNamespace namespace = socketIoServer.namespace("/");
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        namespace.on("connection", connectionListener);
+        namespace.use(socket -> {
+            assertFalse(socket.isConnected());
+            assertEquals(0, socket.getNamespace().getAdapter().listClientRooms(socket).length);
+
+            final CompletableFuture<Void> future = new CompletableFuture<>();
+            future.completeExceptionally(new IllegalStateException("not authorized"));
+            return future;
+        });
+
+        final StubEngineIoWebSocket webSocket = Mockito.spy(new StubEngineIoWebSocket());
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        Mockito.verify(webSocket, Mockito.times(1))
+                .write("44{\"message\":\"not authorized\"}");
+        Mockito.verify(connectionListener, Mockito.never())
+                .call(Mockito.any());
+        assertTrue(namespace.getConnectedSockets().isEmpty());
+    }
+
+    @Test
+    public void test_connect_listeners_outside_namespace_lock() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer);
+        final SocketIoNamespace namespace = socketIoServer.namespace("/");
+
+        final List<Boolean> holdsLock = new ArrayList<>();
+        namespace.on("connection", args -> {
+            assertTrue(((SocketIoSocket) args[0]).isConnected());
+            holdsLock.add(Thread.holdsLock(namespace));
+        });
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        assertEquals(Collections.singletonList(false), holdsLock);
+        assertEquals(1, namespace.getConnectedSockets().size());
+    }
+
+    @Test
+    public void test_connect_middleware_async() throws InterruptedException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final EngineIoServer engineIoServer = new EngineIoServer();
+            final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                    .setMiddlewareExecutor(executor));
+            final SocketIoNamespace group = socketIoServer.namespace(Pattern.compile("^/foo[0-9]$"));
+
+            final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+            final CountDownLatch connected = new CountDownLatch(1);
+            group.use(socket -> {
+                calls.add("group");
+                return CompletableFuture.runAsync(() -> calls.add("auth"), executor);
+            });
+            group.on("connection", args -> {
+                calls.add("connection");
+                connected.countDown();
+            });
+
+            final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+            engineIoServer.handleWebSocket(webSocket);
+            webSocket.emitConnect("/foo1", null);
+
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            assertEquals(Arrays.asList("group", "auth", "connection"), calls);
+            assertEquals(1, group.getConnectedSockets().size());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_connect_middleware_async_close() throws InterruptedException, ExecutionException, TimeoutException {
+        final ExecutorService executor = Executors.newSingleThreadExecutor();
+        try {
+            final EngineIoServer engineIoServer = new EngineIoServer();
+            final SocketIoServer socketIoServer = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                    .setMiddlewareExecutor(executor));
+            final SocketIoNamespace group = socketIoServer.namespace(Pattern.compile("^/foo[0-9]$"));
+
+            final StubEngineIoWebSocket webSocket1 = new StubEngineIoWebSocket();
+            final StubEngineIoWebSocket webSocket2 = new StubEngineIoWebSocket();
+
+            // Connection of the first socket closes while its middleware is running
+            group.use(socket -> CompletableFuture.runAsync(() -> {
+                if (socket.getNamespace().getName().equals("/foo1")) {
+                    webSocket1.emit("close", "client close", null);
+                }
+            }, executor));
+
+            // Connection of the second socket closes while it is being connected
+            final List<SocketIoSocket> sockets = Collections.synchronizedList(new ArrayList<>());
+            final Emitter.Listener disconnectListener = Mockito.mock(Emitter.Listener.class);
+            final CountDownLatch connected = new CountDownLatch(1);
+            group.on("connection", args -> {
+                final SocketIoSocket socket = (SocketIoSocket) args[0];
+                socket.on("disconnect", disconnectListener);
+                sockets.add(socket);
+                webSocket2.emit("close", "client close", null);
+                connected.countDown();
+            });
+
+            engineIoServer.handleWebSocket(webSocket1);
+            webSocket1.emitConnect("/foo1", null);
+            engineIoServer.handleWebSocket(webSocket2);
+            webSocket2.emitConnect("/foo2", null);
+
+            assertTrue(connected.await(5, TimeUnit.SECONDS));
+            executor.submit(() -> { }).get(5, TimeUnit.SECONDS);
+
+            assertEquals(1, sockets.size());
+            assertFalse(sockets.get(0).isConnected());
+            Mockito.verify(disconnectListener, Mockito.times(1))
+                    .call(Mockito.anyString());
+            assertTrue(group.getConnectedSockets().isEmpty());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_use_null() {
+        new SocketIoServer(new EngineIoServer()).namespace("/").use(null);
+    }
 }
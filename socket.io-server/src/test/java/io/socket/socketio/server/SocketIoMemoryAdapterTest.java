@@ -1,14 +1,26 @@
 package io.socket.socketio.server;
 
+import io.socket.engineio.server.EngineIoServer;
 import io.socket.engineio.server.utils.ServerYeast;
+import io.socket.socketio.server.parser.IOParser;
 import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
+import org.json.JSONArray;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.IntConsumer;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
 
 public final class SocketIoMemoryAdapterTest {
 
@@ -261,8 +273,7 @@ public final class SocketIoMemoryAdapterTest {
     public void test_broadcast_all_rooms_no_exclusions() {
         final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
 
-        final SocketIoNamespaceImpl namespace = Mockito.mock(SocketIoNamespaceImpl.class);
-        Mockito.doAnswer(invocationOnMock -> connectedSockets).when(namespace).getConnectedSockets();
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
 
         final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
 
@@ -277,29 +288,28 @@ public final class SocketIoMemoryAdapterTest {
         connectedSockets.put(socket1.getId(), socket1);
         adapter.broadcast(packet, null, null);
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         connectedSockets.put(socket2.getId(), socket2);
         adapter.broadcast(packet, null, null);
         Mockito.verify(socket1, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         connectedSockets.remove(socket1.getId());
         adapter.broadcast(packet, null, null);
         Mockito.verify(socket1, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
     }
 
     @Test
     public void test_broadcast_all_rooms_with_exclusions() {
         final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
 
-        final SocketIoNamespaceImpl namespace = Mockito.mock(SocketIoNamespaceImpl.class);
-        Mockito.doAnswer(invocationOnMock -> connectedSockets).when(namespace).getConnectedSockets();
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
 
         final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
 
@@ -314,29 +324,28 @@ public final class SocketIoMemoryAdapterTest {
         connectedSockets.put(socket1.getId(), socket1);
         adapter.broadcast(packet, null, null);
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         connectedSockets.put(socket2.getId(), socket2);
         adapter.broadcast(packet, null, new String[] { socket1.getId() });
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         connectedSockets.remove(socket1.getId());
         adapter.broadcast(packet, null, new String[] { socket2.getId() });
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
     }
 
     @Test
     public void test_broadcast_one_room_no_exclusions() {
         final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
 
-        final SocketIoNamespaceImpl namespace = Mockito.mock(SocketIoNamespaceImpl.class);
-        Mockito.doAnswer(invocationOnMock -> connectedSockets).when(namespace).getConnectedSockets();
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
 
         final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
 
@@ -355,33 +364,32 @@ public final class SocketIoMemoryAdapterTest {
 
         adapter.broadcast(packet, new String[]{ "foo" }, null);
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(0))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         adapter.add("foo", socket2);
 
         adapter.broadcast(packet, new String[]{ "foo" }, null);
         Mockito.verify(socket1, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         adapter.remove("foo", socket1);
 
         adapter.broadcast(packet, new String[]{ "foo" }, null);
         Mockito.verify(socket1, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
     }
 
     @Test
     public void test_broadcast_one_room_with_exclusions() {
         final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
 
-        final SocketIoNamespaceImpl namespace = Mockito.mock(SocketIoNamespaceImpl.class);
-        Mockito.doAnswer(invocationOnMock -> connectedSockets).when(namespace).getConnectedSockets();
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
 
         final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
 
@@ -401,23 +409,22 @@ public final class SocketIoMemoryAdapterTest {
 
         adapter.broadcast(packet, new String[]{ "foo" }, new String[]{ socket1.getId() });
         Mockito.verify(socket1, Mockito.times(0))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         adapter.broadcast(packet, new String[]{ "foo" }, new String[]{ socket2.getId() });
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
     }
 
     @Test
     public void test_broadcast_multi_room_no_exclusions() {
         final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
 
-        final SocketIoNamespaceImpl namespace = Mockito.mock(SocketIoNamespaceImpl.class);
-        Mockito.doAnswer(invocationOnMock -> connectedSockets).when(namespace).getConnectedSockets();
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
 
         final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
 
@@ -437,25 +444,356 @@ public final class SocketIoMemoryAdapterTest {
 
         adapter.broadcast(packet, new String[]{ "foo", "bar" }, null);
         Mockito.verify(socket1, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(0))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         adapter.add("bar", socket2);
 
         adapter.broadcast(packet, new String[]{ "foo", "bar" }, null);
         Mockito.verify(socket1, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
 
         adapter.remove("foo", socket1);
 
         adapter.broadcast(packet, new String[]{ "foo" }, null);
         Mockito.verify(socket1, Mockito.times(2))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
         Mockito.verify(socket2, Mockito.times(1))
-                .sendPacket(Mockito.eq(packet));
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void test_broadcast_encodes_once() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final Parser.Encoder encoder = Mockito.spy(new IOParser.Encoder());
+        final SocketIoServer server = Mockito.spy(new SocketIoServer(new EngineIoServer()));
+        Mockito.doReturn(encoder).when(server).getEncoder();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        Mockito.doReturn(server).when(namespace).getServer();
+
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket1 = createDummySocket();
+        final SocketIoSocket socket2 = createDummySocket();
+        final SocketIoSocket socket3 = createDummySocket();
+        for (SocketIoSocket socket : new SocketIoSocket[] { socket1, socket2, socket3 }) {
+            adapter.add("foo", socket);
+            connectedSockets.put(socket.getId(), socket);
+        }
+
+        final JSONArray packetData = new JSONArray();
+        packetData.put("foo");
+        packetData.put(new byte[16]);
+        final Packet<?> packet = new Packet<>(Parser.EVENT, packetData);
+
+        adapter.broadcast(packet, new String[] { "foo" }, null);
+        Mockito.verify(encoder, Mockito.times(1))
+                .encode(Mockito.eq(packet), Mockito.any(Parser.Encoder.Callback.class));
+
+        final ArgumentCaptor<io.socket.engineio.server.parser.Packet<?>[]> captor1 = ArgumentCaptor.forClass(io.socket.engineio.server.parser.Packet[].class);
+        final ArgumentCaptor<io.socket.engineio.server.parser.Packet<?>[]> captor2 = ArgumentCaptor.forClass(io.socket.engineio.server.parser.Packet[].class);
+        final ArgumentCaptor<io.socket.engineio.server.parser.Packet<?>[]> captor3 = ArgumentCaptor.forClass(io.socket.engineio.server.parser.Packet[].class);
+        Mockito.verify(socket1, Mockito.times(1)).sendEncodedPacket(captor1.capture(), Mockito.eq(false));
+        Mockito.verify(socket2, Mockito.times(1)).sendEncodedPacket(captor2.capture(), Mockito.eq(false));
+        Mockito.verify(socket3, Mockito.times(1)).sendEncodedPacket(captor3.capture(), Mockito.eq(false));
+
+        assertEquals(2, captor1.getValue().length);
+        assertSame(captor1.getValue(), captor2.getValue());
+        assertSame(captor1.getValue(), captor3.getValue());
+    }
+
+    @Test
+    public void test_broadcast_does_not_block_membership_changes() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket1 = createDummySocket();
+        final SocketIoSocket socket2 = createDummySocket();
+        adapter.add("foo", socket1);
+        connectedSockets.put(socket1.getId(), socket1);
+
+        // Membership changes and broadcasts from other threads while a broadcast is in progress
+        Mockito.doAnswer(invocationOnMock -> {
+            final Thread thread = new Thread(() -> {
+                adapter.add("bar", socket2);
+                adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "bar" }, null);
+                adapter.remove("bar", socket2);
+            });
+            thread.start();
+            thread.join(5000);
+            assertFalse(thread.isAlive());
+            return null;
+        }).when(socket1).sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "foo" }, null);
+        Mockito.verify(socket1, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        assertEquals(0, adapter.listClients("bar").length);
+        assertEquals(0, adapter.listClientRooms(socket2).length);
+    }
+
+    @Test
+    public void test_broadcast_multi_room_with_exclusions() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket1 = createDummySocket();
+        final SocketIoSocket socket2 = createDummySocket();
+        final SocketIoSocket socket3 = createDummySocket();
+        for (SocketIoSocket socket : new SocketIoSocket[] { socket1, socket2, socket3 }) {
+            adapter.add("foo", socket);
+            adapter.add("bar", socket);
+            connectedSockets.put(socket.getId(), socket);
+        }
+
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "foo", "bar", "baz" }, new String[] { socket2.getId() });
+        Mockito.verify(socket1, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket2, Mockito.times(0))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket3, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+
+        // Exclusions must not leak into the next broadcast
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "foo", "bar" }, null);
+        Mockito.verify(socket1, Mockito.times(2))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket2, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket3, Mockito.times(2))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void test_broadcast_after_handle_reuse() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket1 = createDummySocket();
+        adapter.add("foo", socket1);
+        adapter.remove("foo", socket1);
+
+        // socket2 gets the handle released by socket1
+        final SocketIoSocket socket2 = createDummySocket();
+        adapter.add("bar", socket2);
+        connectedSockets.put(socket2.getId(), socket2);
+
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "foo" }, null);
+        Mockito.verify(socket2, Mockito.times(0))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        assertEquals(0, adapter.listClients("foo").length);
+        assertArrayEquals(new SocketIoSocket[] { socket2 }, adapter.listClients("bar"));
+
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), null, null);
+        Mockito.verify(socket2, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void test_broadcast_own_rooms() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket[] sockets = new SocketIoSocket[300];
+        for (int i = 0; i < sockets.length; i++) {
+            sockets[i] = createDummySocket();
+            adapter.add(sockets[i].getId(), sockets[i]);
+            adapter.add("foo", sockets[i]);
+            connectedSockets.put(sockets[i].getId(), sockets[i]);
+        }
+
+        final SocketIoSocket lastSocket = sockets[sockets.length - 1];
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { lastSocket.getId() }, null);
+        Mockito.verify(lastSocket, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(sockets[0], Mockito.times(0))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+
+        for (int i = 0; i < sockets.length - 1; i++) {
+            adapter.remove("foo", sockets[i]);
+        }
+        assertArrayEquals(new SocketIoSocket[] { lastSocket }, adapter.listClients("foo"));
+
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), null, new String[] { lastSocket.getId() });
+        for (int i = 0; i < sockets.length - 1; i++) {
+            Mockito.verify(sockets[i], Mockito.times(1))
+                    .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        }
+        Mockito.verify(lastSocket, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void test_broadcast_fan_out() throws InterruptedException {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final ExecutorService executor = Mockito.spy(Executors.newFixedThreadPool(4));
+        final SocketIoServer server = new SocketIoServer(new EngineIoServer(), SocketIoServerOptions.newFromDefault()
+                .setBroadcastFanOutThreshold(4)
+                .setBroadcastFanOutChunkSize(3)
+                .setBroadcastFanOutExecutor(executor));
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        Mockito.doReturn(server).when(namespace).getServer();
+
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket[] sockets = new SocketIoSocket[10];
+        for (int i = 0; i < sockets.length; i++) {
+            sockets[i] = createDummySocket();
+            adapter.add("foo", sockets[i]);
+            connectedSockets.put(sockets[i].getId(), sockets[i]);
+        }
+
+        try {
+            adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "foo" }, new String[] { sockets[0].getId() });
+
+            // 9 recipients in chunks of 3, last chunk is delivered on the calling thread
+            Mockito.verify(executor, Mockito.times(2)).execute(Mockito.any(Runnable.class));
+            Mockito.verify(sockets[0], Mockito.times(0))
+                    .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+            for (int i = 1; i < sockets.length; i++) {
+                Mockito.verify(sockets[i], Mockito.times(1))
+                        .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+            }
+
+            // Below threshold, delivered on calling thread
+            adapter.add("bar", sockets[1]);
+            adapter.broadcast(new Packet<>(Parser.DISCONNECT), new String[] { "bar" }, null);
+            Mockito.verify(executor, Mockito.times(2)).execute(Mockito.any(Runnable.class));
+            Mockito.verify(sockets[1], Mockito.times(2))
+                    .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void test_broadcast_options_except_rooms() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket1 = createDummySocket();
+        final SocketIoSocket socket2 = createDummySocket();
+        final SocketIoSocket socket3 = createDummySocket();
+        for (SocketIoSocket socket : new SocketIoSocket[] { socket1, socket2, socket3 }) {
+            adapter.add(socket.getId(), socket);
+            adapter.add("foo", socket);
+            connectedSockets.put(socket.getId(), socket);
+        }
+        adapter.add("bar", socket2);
+
+        adapter.broadcastWithOptions(new Packet<>(Parser.DISCONNECT), new SocketIoAdapter.BroadcastOptions(
+                Collections.singleton("foo"),
+                Collections.singleton("bar"),
+                Collections.singleton(socket3.getId()),
+                false, true, -1));
+        Mockito.verify(socket1, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket2, Mockito.times(0))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket3, Mockito.times(0))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+
+        // No rooms means all sockets
+        adapter.broadcastWithOptions(new Packet<>(Parser.DISCONNECT), new SocketIoAdapter.BroadcastOptions(
+                Collections.emptySet(),
+                Collections.singleton("bar"),
+                Collections.emptySet(),
+                false, true, -1));
+        Mockito.verify(socket1, Mockito.times(2))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket2, Mockito.times(0))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+        Mockito.verify(socket3, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.anyBoolean());
+    }
+
+    @Test
+    public void test_broadcast_options_volatile() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket = createDummySocket();
+        adapter.add(socket.getId(), socket);
+        connectedSockets.put(socket.getId(), socket);
+
+        adapter.broadcastWithOptions(new Packet<>(Parser.DISCONNECT), new SocketIoAdapter.BroadcastOptions(
+                Collections.emptySet(),
+                Collections.emptySet(),
+                Collections.emptySet(),
+                true, true, -1));
+        Mockito.verify(socket, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.eq(true));
+
+        adapter.broadcast(new Packet<>(Parser.DISCONNECT), null);
+        Mockito.verify(socket, Mockito.times(1))
+                .sendEncodedPacket(Mockito.any(), Mockito.eq(false));
+    }
+
+    @Test
+    public void test_broadcast_with_ack() {
+        final HashMap<String, SocketIoSocket> connectedSockets = new HashMap<>();
+
+        final SocketIoNamespaceImpl namespace = createDummyNamespace(connectedSockets);
+        final SocketIoAdapter adapter = ADAPTER_FACTORY.createAdapter(namespace);
+
+        final SocketIoSocket socket1 = createDummySocket();
+        final SocketIoSocket socket2 = createDummySocket();
+        final SocketIoSocket socket3 = createDummySocket();
+        for (SocketIoSocket socket : new SocketIoSocket[] { socket1, socket2, socket3 }) {
+            adapter.add(socket.getId(), socket);
+            connectedSockets.put(socket.getId(), socket);
+        }
+        adapter.add("foo", socket1);
+        adapter.add("foo", socket2);
+
+        final Packet<?> packet = new Packet<>(Parser.EVENT, new JSONArray().put("foo"));
+        packet.id = 5;
+        final IntConsumer clientCountCallback = Mockito.mock(IntConsumer.class);
+        final SocketIoSocket.ReceivedByRemoteAcknowledgementCallback acknowledgementCallback = Mockito.mock(SocketIoSocket.ReceivedByRemoteAcknowledgementCallback.class);
+        adapter.broadcastWithAck(packet, new SocketIoAdapter.BroadcastOptions(
+                Collections.singleton("foo"),
+                Collections.emptySet(),
+                Collections.emptySet(),
+                false, true, -1), clientCountCallback, acknowledgementCallback);
+
+        Mockito.verify(clientCountCallback, Mockito.times(1))
+                .accept(2);
+        for (SocketIoSocket socket : new SocketIoSocket[] { socket1, socket2 }) {
+            Mockito.verify(socket, Mockito.times(1))
+                    .registerAcknowledgement(Mockito.eq(5), Mockito.eq(0L), Mockito.same(acknowledgementCallback));
+            Mockito.verify(socket, Mockito.times(1))
+                    .sendEncodedPacket(Mockito.any(), Mockito.eq(false));
+        }
+        Mockito.verify(socket3, Mockito.times(0))
+                .registerAcknowledgement(Mockito.anyInt(), Mockito.anyLong(), Mockito.any());
+    }
+
+    private SocketIoNamespaceImpl createDummyNamespace(Map<String, SocketIoSocket> connectedSockets) {
+        final SocketIoServer server = new SocketIoServer(new EngineIoServer());
+        final SocketIoNamespaceImpl namespace = Mockito.mock(SocketIoNamespaceImpl.class);
+        Mockito.doAnswer(invocationOnMock -> connectedSockets).when(namespace).getConnectedSockets();
+        Mockito.doAnswer(invocationOnMock -> server).when(namespace).getServer();
+        Mockito.doAnswer(invocationOnMock -> "/").when(namespace).getName();
+        return namespace;
     }
 
     private SocketIoSocket createDummySocket() {
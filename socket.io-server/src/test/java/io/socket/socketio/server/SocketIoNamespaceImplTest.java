@@ -7,6 +7,10 @@ import org.json.JSONArray;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
 import static org.junit.Assert.*;
 
 public final class SocketIoNamespaceImplTest {
@@ -143,4 +147,25 @@ public final class SocketIoNamespaceImplTest {
         Mockito.verify(adapter, Mockito.times(1))
                 .broadcast(Mockito.any(Packet.class), Mockito.any(String[].class), Mockito.isNull());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void test_broadcastWithAck_timeout_releases_callbacks() throws Exception {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(engineIoServer);
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        final List<SocketIoSocket> sockets = new ArrayList<>();
+        namespace.on("connection", args -> sockets.add((SocketIoSocket) args[0]));
+
+        // Stub client never acknowledges
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+        assertEquals(1, sockets.size());
+
+        final List<Object[]> responses = namespace.broadcastWithAck(null, "foo", null, 50).get(2, TimeUnit.SECONDS);
+        assertEquals(0, responses.size());
+        assertEquals(0, sockets.get(0).getPendingAcknowledgementCount());
+        assertEquals(0, server.getTimingWheel().getPendingCount());
+    }
+}
@@ -3,6 +3,8 @@ package io.socket.socketio.server;
 import org.junit.Test;
 import org.mockito.Mockito;
 
+import java.util.concurrent.Executor;
+
 import static org.junit.Assert.*;
 
 public final class SocketIoServerOptionsTest {
@@ -30,6 +32,52 @@ public final class SocketIoServerOptionsTest {
         assertTrue(options.getAdapterFactory() instanceof SocketIoMemoryAdapter.AdapterFactory);
     }
 
+    @Test
+    public void test_setBroadcastFanOut() {
+        final SocketIoServerOptions options = SocketIoServerOptions.newFromDefault();
+        assertEquals(0, options.getBroadcastFanOutThreshold());
+        assertNull(options.getBroadcastFanOutExecutor());
+
+        final Executor executor = Mockito.mock(Executor.class);
+        options.setBroadcastFanOutThreshold(1000)
+                .setBroadcastFanOutChunkSize(100)
+                .setBroadcastFanOutExecutor(executor);
+
+        assertEquals(1000, options.getBroadcastFanOutThreshold());
+        assertEquals(100, options.getBroadcastFanOutChunkSize());
+        assertEquals(executor, options.getBroadcastFanOutExecutor());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_setBroadcastFanOutChunkSize_invalid() {
+        SocketIoServerOptions.newFromDefault().setBroadcastFanOutChunkSize(0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_setVolatileBufferThreshold_invalid() {
+        SocketIoServerOptions.newFromDefault().setVolatileBufferThreshold(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_setOutboundQueuePolicy_null() {
+        SocketIoServerOptions.newFromDefault().setOutboundQueuePolicy(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_setParserFactory_null() {
+        SocketIoServerOptions.newFromDefault().setParserFactory(null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_setMaxAttachments_invalid() {
+        SocketIoServerOptions.newFromDefault().setMaxAttachments(-1);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_setDynamicNamespaceIdleTimeout_invalid() {
+        SocketIoServerOptions.newFromDefault().setDynamicNamespaceIdleTimeout(-1);
+    }
+
     @Test(expected = IllegalStateException.class)
     public void test_lock() {
         final SocketIoServerOptions options = SocketIoServerOptions.newFromDefault();
@@ -2,10 +2,19 @@ package io.socket.socketio.server;
 
 import io.socket.engineio.server.Emitter;
 import io.socket.engineio.server.EngineIoServer;
+import io.socket.socketio.server.parser.DecoderLimits;
 import io.socket.socketio.server.parser.IOParser;
+import io.socket.socketio.server.parser.JsonCodec;
+import io.socket.socketio.server.parser.Packet;
+import io.socket.socketio.server.parser.Parser;
+import io.socket.socketio.server.parser.ParserFactory;
+import io.socket.socketio.server.parser.RawJson;
 import org.junit.Test;
+import org.mockito.AdditionalMatchers;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Pattern;
 
 import static org.junit.Assert.*;
@@ -75,6 +84,178 @@ public final class SocketIoServerTest {
         assertFalse(server.checkNamespace("foobaz"));
     }
 
+    @Test
+    public void test_namespaceGroup_broadcast() {
+        final List<Packet<?>> packets = new ArrayList<>();
+        final SocketIoAdapter.AdapterFactory adapterFactory = namespace -> {
+            final SocketIoAdapter adapter = Mockito.mock(SocketIoAdapter.class);
+            Mockito.doAnswer(invocationOnMock -> packets.add(invocationOnMock.getArgument(0)))
+                    .when(adapter).broadcastWithOptions(Mockito.any(Packet.class), Mockito.any(SocketIoAdapter.BroadcastOptions.class));
+            return adapter;
+        };
+        final SocketIoServer server = new SocketIoServer(
+                new EngineIoServer(),
+                SocketIoServerOptions.newFromDefault()
+                        .setAdapterFactory(adapterFactory));
+
+        final SocketIoNamespace group = server.namespace(Pattern.compile("^/foo[0-9]$"));
+        assertTrue(server.checkNamespace("foo1"));
+        assertTrue(server.checkNamespace("foo2"));
+        assertTrue(server.checkNamespace("foo2"));
+        assertTrue(group.getConnectedSockets().isEmpty());
+
+        group.broadcast().emit("bar", 1);
+
+        // Arguments are converted once and shared by the packet of every child
+        assertEquals(2, packets.size());
+        assertNotSame(packets.get(0), packets.get(1));
+        assertSame(packets.get(0).data, packets.get(1).data);
+    }
+
+    @Test
+    public void test_namespaceGroup_broadcast_encodes_once() {
+        final Parser.Encoder encoder = Mockito.spy(new IOParser.Encoder());
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(
+                engineIoServer,
+                SocketIoServerOptions.newFromDefault()
+                        .setParserFactory(createParserFactory(encoder)));
+        final SocketIoNamespace group = server.namespace(Pattern.compile("^/foo[0-9]$"));
+
+        final List<StubEngineIoWebSocket> webSockets = new ArrayList<>();
+        for (int i = 1; i <= 3; i++) {
+            final StubEngineIoWebSocket webSocket = Mockito.spy(new StubEngineIoWebSocket());
+            engineIoServer.handleWebSocket(webSocket);
+            webSocket.emitConnect("/foo" + i, null);
+            webSockets.add(webSocket);
+        }
+        assertEquals(3, group.getConnectedSockets().size());
+        Mockito.clearInvocations(encoder);
+        webSockets.forEach(Mockito::clearInvocations);
+
+        final byte[] attachment = new byte[] { 1, 2, 3 };
+        group.broadcast().emit("bar", 1, attachment);
+
+        Mockito.verify(encoder, Mockito.times(1))
+                .encode(Mockito.any(Packet.class), Mockito.any(Parser.Encoder.Callback.class));
+        for (int i = 1; i <= 3; i++) {
+            final StubEngineIoWebSocket webSocket = webSockets.get(i - 1);
+            Mockito.verify(webSocket, Mockito.times(1))
+                    .write("451-/foo" + i + ",[\"bar\",1,{\"_placeholder\":true,\"num\":0}]");
+            Mockito.verify(webSocket, Mockito.times(1))
+                    .write(AdditionalMatchers.aryEq(attachment));
+        }
+    }
+
+    @Test
+    public void test_namespaceGroup_eviction() throws InterruptedException {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setDynamicNamespaceIdleTimeout(100));
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        server.namespace(Pattern.compile("^/foo[0-9]$")).on("connection", connectionListener);
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect("/foo1", null);
+        assertTrue(server.hasNamespace("/foo1"));
+        assertEquals(1, server.getDynamicNamespaceCount());
+
+        // Namespace with sockets is kept
+        Thread.sleep(400);
+        assertTrue(server.hasNamespace("/foo1"));
+
+        webSocket.emit("close", "client close", null);
+        Thread.sleep(400);
+        assertFalse(server.hasNamespace("/foo1"));
+        assertEquals(0, server.getDynamicNamespaceCount());
+        assertEquals(1, server.getEvictedNamespaceCount());
+
+        // Next connection creates the namespace again with the listeners of the group
+        final StubEngineIoWebSocket webSocket2 = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket2);
+        webSocket2.emitConnect("/foo1", null);
+        assertTrue(server.hasNamespace("/foo1"));
+        Mockito.verify(connectionListener, Mockito.times(2))
+                .call(Mockito.any(SocketIoSocket.class));
+    }
+
+    @Test
+    public void test_broadcastAll() {
+        final List<Packet<?>> packets = new ArrayList<>();
+        final SocketIoAdapter.AdapterFactory adapterFactory = namespace -> {
+            final SocketIoAdapter adapter = Mockito.mock(SocketIoAdapter.class);
+            Mockito.doAnswer(invocationOnMock -> {
+                final Packet<?> packet = invocationOnMock.getArgument(0);
+                assertArrayEquals(new String[] { "room" }, invocationOnMock.getArgument(1));
+                packet.nsp = namespace.getName();
+                return packets.add(packet);
+            }).when(adapter).broadcast(Mockito.any(Packet.class), Mockito.any(String[].class));
+            return adapter;
+        };
+        final SocketIoServer server = new SocketIoServer(
+                new EngineIoServer(),
+                SocketIoServerOptions.newFromDefault()
+                        .setAdapterFactory(adapterFactory));
+        server.namespace("/foo");
+        server.namespace(Pattern.compile("^/bar[0-9]$"));
+        assertTrue(server.checkNamespace("/bar1"));
+
+        server.broadcastAll(new String[] { "room" }, "notice", "maintenance", 5);
+        assertEquals(3, packets.size());
+
+        // Custom adapters get the converted arguments, never a pre-serialized payload
+        assertSame(packets.get(0).data, packets.get(1).data);
+        assertSame(packets.get(0).data, packets.get(2).data);
+        assertFalse(packets.get(0).data instanceof RawJson);
+
+        final List<String> encoded = new ArrayList<>();
+        for (Packet<?> packet : packets) {
+            server.getEncoder().encode(packet, data -> encoded.add((String) data[0]));
+        }
+        assertTrue(encoded.contains("2[\"notice\",\"maintenance\",5]"));
+        assertTrue(encoded.contains("2/foo,[\"notice\",\"maintenance\",5]"));
+        assertTrue(encoded.contains("2/bar1,[\"notice\",\"maintenance\",5]"));
+    }
+
+    @Test
+    public void test_broadcastAll_encodes_once() {
+        final Parser.Encoder encoder = Mockito.spy(new IOParser.Encoder());
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(
+                engineIoServer,
+                SocketIoServerOptions.newFromDefault()
+                        .setParserFactory(createParserFactory(encoder)));
+        server.namespace("/foo");
+        server.namespace(Pattern.compile("^/bar[0-9]$"));
+
+        final String[] namespaces = new String[] { "/", "/foo", "/bar1" };
+        final List<StubEngineIoWebSocket> webSockets = new ArrayList<>();
+        for (String namespace : namespaces) {
+            final StubEngineIoWebSocket webSocket = Mockito.spy(new StubEngineIoWebSocket());
+            engineIoServer.handleWebSocket(webSocket);
+            webSocket.emitConnect(namespace, null);
+            webSockets.add(webSocket);
+        }
+        Mockito.clearInvocations(encoder);
+
+        server.broadcastAll(null, "notice", "maintenance", 5);
+
+        Mockito.verify(encoder, Mockito.times(1))
+                .encode(Mockito.any(Packet.class), Mockito.any(Parser.Encoder.Callback.class));
+        Mockito.verify(webSockets.get(0), Mockito.times(1))
+                .write("42[\"notice\",\"maintenance\",5]");
+        Mockito.verify(webSockets.get(1), Mockito.times(1))
+                .write("42/foo,[\"notice\",\"maintenance\",5]");
+        Mockito.verify(webSockets.get(2), Mockito.times(1))
+                .write("42/bar1,[\"notice\",\"maintenance\",5]");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_broadcastAll_null_event() {
+        new SocketIoServer(new EngineIoServer()).broadcastAll(null, null);
+    }
+
     @Test
     public void test_connection() {
         final EngineIoServer engineIoServer = new EngineIoServer();
@@ -126,4 +307,18 @@ public final class SocketIoServerTest {
         Mockito.verify(disconnectListener, Mockito.times(1))
                 .call(Mockito.anyString());
     }
-}
\ No newline at end of file
+
+    private static ParserFactory createParserFactory(Parser.Encoder encoder) {
+        return new ParserFactory() {
+            @Override
+            public Parser.Encoder createEncoder(JsonCodec jsonCodec) {
+                return encoder;
+            }
+
+            @Override
+            public Parser.Decoder createDecoder(JsonCodec jsonCodec, DecoderLimits limits) {
+                return IOParser.FACTORY.createDecoder(jsonCodec, limits);
+            }
+        };
+    }
+}
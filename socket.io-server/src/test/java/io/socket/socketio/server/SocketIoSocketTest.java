@@ -3,12 +3,24 @@ package io.socket.socketio.server;
 import io.socket.engineio.server.Emitter;
 import io.socket.engineio.server.EngineIoServer;
 import io.socket.engineio.server.EngineIoSocket;
+import io.socket.socketio.server.parser.DecoderLimits;
+import io.socket.socketio.server.parser.IOParser;
+import io.socket.socketio.server.parser.JacksonJsonCodec;
+import io.socket.socketio.server.parser.OrgJsonCodec;
 import io.socket.socketio.server.parser.Packet;
 import io.socket.socketio.server.parser.Parser;
 import org.json.JSONArray;
 import org.junit.Test;
+import org.mockito.ArgumentCaptor;
 import org.mockito.Mockito;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
 import static org.junit.Assert.*;
 
 public final class SocketIoSocketTest {
@@ -128,6 +140,41 @@ public final class SocketIoSocketTest {
                 .call(Mockito.any(SocketIoSocket.class));
     }
 
+    @Test
+    public void test_broadcast_operator() {
+        final LocalAdapterFactory adapterFactory = new LocalAdapterFactory();
+
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = Mockito.spy(new SocketIoServer(
+                engineIoServer,
+                SocketIoServerOptions.newFromDefault().setAdapterFactory(adapterFactory)));
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final SocketIoSocket socket = (SocketIoSocket) args[0];
+
+            socket.to("foo_room").except("bar_room").emit("foo");
+
+            final ArgumentCaptor<SocketIoAdapter.BroadcastOptions> optionsCaptor = ArgumentCaptor.forClass(SocketIoAdapter.BroadcastOptions.class);
+            Mockito.verify(adapterFactory.adapter, Mockito.times(1))
+                    .broadcastWithOptions(Mockito.any(Packet.class), optionsCaptor.capture());
+            assertEquals(Collections.singleton("foo_room"), optionsCaptor.getValue().getRooms());
+            assertEquals(Collections.singleton("bar_room"), optionsCaptor.getValue().getExceptRooms());
+            assertEquals(Collections.singleton(socket.getId()), optionsCaptor.getValue().getExceptSockets());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        namespace.on("connection", connectionListener);
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(SocketIoSocket.class));
+    }
+
     @Test
     public void test_joinRoom() {
         final LocalAdapterFactory adapterFactory = new LocalAdapterFactory();
@@ -341,6 +388,14 @@ public final class SocketIoSocketTest {
             final SocketIoClient client = Mockito.spy(new SocketIoClient(server, (EngineIoSocket) args[0]));
             final SocketIoSocket socket = new SocketIoSocket(namespace, client, null);
 
+            // Sockets are pending until the middlewares passed
+            assertFalse(socket.isConnected());
+            socket.disconnect(true);
+            Mockito.verify(client, Mockito.never())
+                    .disconnect();
+
+            socket.onConnect();
+            assertTrue(socket.isConnected());
             socket.disconnect(true);
             Mockito.verify(client, Mockito.times(1))
                     .disconnect();
@@ -367,6 +422,8 @@ public final class SocketIoSocketTest {
             final Object[] args = invocation.getArguments();
             final SocketIoClient client = Mockito.spy(new SocketIoClient(server, (EngineIoSocket) args[0]));
             final SocketIoSocket socket = new SocketIoSocket(namespace, client, null);
+            socket.onConnect();
+            Mockito.clearInvocations(client);
 
             Mockito.doAnswer(invocationOnMock -> {
                 final Packet<?> packet = invocationOnMock.getArgument(0);
@@ -602,6 +659,110 @@ public final class SocketIoSocketTest {
                 .call(Mockito.any(SocketIoSocket.class));
     }
 
+    @Test
+    public void test_onEvent_lazy() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(engineIoServer);
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final SocketIoSocket socket = (SocketIoSocket) args[0];
+
+            final IOParser.Decoder decoder = new IOParser.Decoder(OrgJsonCodec.INSTANCE, DecoderLimits.UNLIMITED, true);
+            final List<Packet<?>> packets = new ArrayList<>();
+            decoder.onDecoded(packets::add);
+            decoder.add("2[\"foo\",\"bar\"]");
+            decoder.add("2[\"foo\",\"bar\"]");
+
+            // Not parsed without listeners
+            socket.onEvent(packets.get(0));
+            assertEquals("[\"foo\",\"bar\"]".length(), server.getSkippedEventPayloadBytes());
+
+            final Emitter.Listener messageListener = Mockito.mock(Emitter.Listener.class);
+            socket.on("foo", messageListener);
+            socket.onEvent(packets.get(1));
+
+            Mockito.verify(messageListener, Mockito.times(1))
+                    .call(Mockito.eq("bar"));
+            assertEquals("[\"foo\",\"bar\"]".length(), server.getSkippedEventPayloadBytes());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        namespace.on("connection", connectionListener);
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(SocketIoSocket.class));
+    }
+
+    @Test
+    public void test_onEvent_typed() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final JacksonJsonCodec codec = new JacksonJsonCodec();
+        final SocketIoServer server = new SocketIoServer(engineIoServer, SocketIoServerOptions.newFromDefault()
+                .setJsonCodec(codec));
+        final SocketIoNamespace namespace = server.namespace("/");
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final SocketIoSocket socket = (SocketIoSocket) args[0];
+
+            final List<Order> orders = new ArrayList<>();
+            final List<SocketIoSocket.ReceivedByLocalAcknowledgementCallback> acks = new ArrayList<>();
+            final SocketIoSocket.TypedEventListener<Order> listener = (order, ack) -> {
+                orders.add(order);
+                acks.add(ack);
+            };
+            socket.on("order", Order.class, listener);
+
+            final IOParser.Decoder decoder = new IOParser.Decoder(codec, DecoderLimits.UNLIMITED, true);
+            final List<Packet<?>> packets = new ArrayList<>();
+            decoder.onDecoded(packets::add);
+
+            // Lazy payload bound straight from the frame
+            decoder.add("2[\"order\",{\"id\":\"a1\",\"quantity\":2}]");
+            socket.onEvent(packets.get(0));
+            assertEquals("a1", orders.get(0).id);
+            assertEquals(2, orders.get(0).quantity);
+            assertNull(acks.get(0));
+
+            // Parsed payload converted when untyped listeners also need it
+            final Emitter.Listener rawListener = Mockito.mock(Emitter.Listener.class);
+            socket.on("order", rawListener);
+            decoder.add("27[\"order\",{\"id\":\"b2\",\"quantity\":4}]");
+            socket.onEvent(packets.get(1));
+            assertEquals("b2", orders.get(1).id);
+            assertNotNull(acks.get(1));
+            Mockito.verify(rawListener, Mockito.times(1))
+                    .call(Mockito.any(), Mockito.any());
+
+            socket.off("order", listener);
+            decoder.add("2[\"order\",{\"id\":\"c3\",\"quantity\":1}]");
+            socket.onEvent(packets.get(2));
+            assertEquals(2, orders.size());
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        namespace.on("connection", connectionListener);
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(SocketIoSocket.class));
+    }
+
+    public static final class Order {
+
+        public String id;
+        public int quantity;
+    }
+
     @Test
     public void test_onEvent_with_ack() {
         final EngineIoServer engineIoServer = new EngineIoServer();
@@ -766,4 +927,94 @@ public final class SocketIoSocketTest {
         Mockito.verify(connectionListener, Mockito.times(1))
                 .call(Mockito.any(EngineIoSocket.class));
     }
+
+    @Test
+    public void test_onAck_timeout() {
+        class PacketId {
+            private int id;
+        }
+
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = Mockito.spy(new SocketIoServer(engineIoServer));
+        final SocketIoNamespaceImpl namespace = (SocketIoNamespaceImpl)server.namespace("/foo");
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final PacketId packetId = new PacketId();
+            final EngineIoSocket engineIoSocket = (EngineIoSocket) args[0];
+            final SocketIoClient client = Mockito.spy(new SocketIoClient(server, engineIoSocket));
+
+            Mockito.reset(client);
+            Mockito.doAnswer(invocationOnMock -> {
+                final Packet<?> packet = invocationOnMock.getArgument(0);
+                if (packet.type == Parser.EVENT) {
+                    packetId.id = packet.id;
+                }
+
+                return null;
+            }).when(client).sendPacket(Mockito.any(Packet.class));
+
+            final SocketIoSocket socket = new SocketIoSocket(namespace, client, null);
+
+            final SocketIoSocket.ReceivedByRemoteAcknowledgementCallback callback = Mockito.mock(SocketIoSocket.ReceivedByRemoteAcknowledgementCallback.class);
+            socket.send("foo", null, 50, callback);
+
+            Mockito.verify(callback, Mockito.timeout(2000).times(1))
+                    .onTimeout();
+            assertEquals(0, server.getTimingWheel().getPendingCount());
+
+            // Late acknowledgement is ignored
+            final Packet<?> ackPacket = new Packet<>(Parser.ACK);
+            ackPacket.id = packetId.id;
+
+            socket.onAck(ackPacket);
+
+            Mockito.verify(callback, Mockito.times(0))
+                    .onReceivedByRemote();
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
+
+    @Test
+    public void test_onAck_timeout_default() {
+        final EngineIoServer engineIoServer = new EngineIoServer();
+        final SocketIoServer server = new SocketIoServer(engineIoServer);
+        final SocketIoNamespaceImpl namespace = (SocketIoNamespaceImpl)server.namespace("/foo");
+
+        final Emitter.Listener connectionListener = Mockito.mock(Emitter.Listener.class);
+        Mockito.doAnswer(invocation -> {
+            final Object[] args = invocation.getArguments();
+            final EngineIoSocket engineIoSocket = (EngineIoSocket) args[0];
+            final SocketIoClient client = Mockito.spy(new SocketIoClient(server, engineIoSocket));
+            Mockito.doNothing().when(client).sendPacket(Mockito.any(Packet.class));
+
+            final SocketIoSocket socket = new SocketIoSocket(namespace, client, null);
+
+            // Lambda callbacks receive the timeout as their only argument
+            final CompletableFuture<Object[]> result = new CompletableFuture<>();
+            socket.send("foo", null, 50, result::complete);
+
+            final Object[] ackArgs = result.get(2, TimeUnit.SECONDS);
+            assertEquals(1, ackArgs.length);
+            assertTrue(ackArgs[0] instanceof TimeoutException);
+            return null;
+        }).when(connectionListener).call(Mockito.any());
+        engineIoServer.on("connection", connectionListener);
+
+        final StubEngineIoWebSocket webSocket = new StubEngineIoWebSocket();
+        engineIoServer.handleWebSocket(webSocket);
+        webSocket.emitConnect(null);
+
+        Mockito.verify(connectionListener, Mockito.times(1))
+                .call(Mockito.any(EngineIoSocket.class));
+    }
 }
@@ -44,9 +44,13 @@ public final class StubEngineIoWebSocket extends EngineIoWebSocket {
     }
 
     public void emitConnect(Object data) {
+        emitConnect("/", data);
+    }
+
+    public void emitConnect(String namespace, Object data) {
         final Packet<Object> connectionPacket = new Packet<>();
         connectionPacket.type = Parser.CONNECT;
-        connectionPacket.nsp = "/";
+        connectionPacket.nsp = namespace;
         connectionPacket.data = data;
         (new IOParser.Encoder()).encode(connectionPacket, encodedConnectionPacket -> {
             final io.socket.engineio.server.parser.Packet<String> dataPacket = new io.socket.engineio.server.parser.Packet<>(io.socket.engineio.server.parser.Packet.MESSAGE);
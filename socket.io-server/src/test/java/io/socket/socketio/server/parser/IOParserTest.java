@@ -0,0 +1,324 @@
+package io.socket.socketio.server.parser;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+public final class IOParserTest {
+
+    @Test
+    public void test_decode_connect() {
+        Packet<?> packet = decode("0");
+        assertEquals(Parser.CONNECT, packet.type);
+        assertEquals("/", packet.nsp);
+        assertNull(packet.data);
+
+        packet = decode("0/admin,{\"token\":\"foo\"}");
+        assertEquals(Parser.CONNECT, packet.type);
+        assertEquals("/admin", packet.nsp);
+        assertEquals("foo", ((JSONObject) packet.data).getString("token"));
+
+        packet = decode("0/admin");
+        assertEquals("/admin", packet.nsp);
+        assertNull(packet.data);
+    }
+
+    @Test
+    public void test_decode_event() {
+        Packet<?> packet = decode("2[\"foo\",1]");
+        assertEquals(Parser.EVENT, packet.type);
+        assertEquals("/", packet.nsp);
+        assertEquals(-1, packet.id);
+        assertEquals("foo", ((JSONArray) packet.data).getString(0));
+        assertEquals(1, ((JSONArray) packet.data).getInt(1));
+
+        packet = decode("2/admin,123[\"foo\"]");
+        assertEquals("/admin", packet.nsp);
+        assertEquals(123, packet.id);
+        assertEquals("foo", ((JSONArray) packet.data).getString(0));
+    }
+
+    @Test
+    public void test_decode_ack() {
+        final Packet<?> packet = decode("34[]");
+        assertEquals(Parser.ACK, packet.type);
+        assertEquals(4, packet.id);
+        assertEquals(0, ((JSONArray) packet.data).length());
+    }
+
+    @Test
+    public void test_decode_binary_event() {
+        final IOParser.Decoder decoder = new IOParser.Decoder();
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+
+        decoder.add("51-/admin,7[\"foo\",{\"_placeholder\":true,\"num\":0}]");
+        assertNull(result[0]);
+        decoder.add(new byte[] { 1, 2, 3 });
+
+        assertNotNull(result[0]);
+        assertEquals(Parser.BINARY_EVENT, result[0].type);
+        assertEquals("/admin", result[0].nsp);
+        assertEquals(7, result[0].id);
+        assertArrayEquals(new byte[] { 1, 2, 3 }, (byte[]) ((JSONArray) result[0].data).get(1));
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_empty() {
+        decode("");
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_unknown_type() {
+        decode("9");
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_illegal_attachments() {
+        decode("5[\"foo\"]");
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_id_overflow() {
+        decode("299999999999[\"foo\"]");
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_invalid_payload() {
+        decode("2{\"foo\":1}");
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_invalid_json() {
+        decode("2[\"foo\"");
+    }
+
+    @Test(expected = DecodingLimitException.class)
+    public void test_decode_limit_frame_size() {
+        new IOParser.Decoder(OrgJsonCodec.INSTANCE, new DecoderLimits(8, 0, 0, 0)).add("2[\"foobar\"]");
+    }
+
+    @Test(expected = DecodingLimitException.class)
+    public void test_decode_limit_attachments() {
+        new IOParser.Decoder(OrgJsonCodec.INSTANCE, new DecoderLimits(0, 2, 0, 0)).add("53-[\"foo\"]");
+    }
+
+    @Test
+    public void test_decode_large_attachment_count_unlimited() {
+        final IOParser.Decoder decoder = new IOParser.Decoder();
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+
+        // Buffers are not sized from the announced count
+        decoder.add("5999999999-[\"foo\",{\"_placeholder\":true,\"num\":0}]");
+        for (int i = 0; i < 20; i++) {
+            decoder.add(new byte[] { (byte) i });
+        }
+        assertNull(result[0]);
+    }
+
+    @Test
+    public void test_decode_many_attachments() {
+        final IOParser.Decoder decoder = new IOParser.Decoder();
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+
+        final JSONArray placeholders = new JSONArray().put("foo");
+        for (int i = 0; i < 20; i++) {
+            placeholders.put(new JSONObject().put("_placeholder", true).put("num", i));
+        }
+        decoder.add("520-" + placeholders);
+        for (int i = 0; i < 20; i++) {
+            assertNull(result[0]);
+            decoder.add(new byte[] { (byte) i });
+        }
+
+        assertNotNull(result[0]);
+        for (int i = 0; i < 20; i++) {
+            assertArrayEquals(new byte[] { (byte) i }, (byte[]) ((JSONArray) result[0].data).get(i + 1));
+        }
+    }
+
+    @Test
+    public void test_decode_limit_nesting_depth() {
+        final IOParser.Decoder decoder = new IOParser.Decoder(OrgJsonCodec.INSTANCE, new DecoderLimits(0, 0, 2, 0));
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+
+        // Brackets inside strings do not count
+        decoder.add("2[\"foo\",{\"bar\":\"[[[\\\"{{\"}]");
+        assertNotNull(result[0]);
+
+        try {
+            decoder.add("2[\"foo\",[[1]]]");
+            fail();
+        } catch (DecodingLimitException ignore) {
+        }
+    }
+
+    @Test
+    public void test_decode_limit_pending_binary() {
+        final IOParser.Decoder decoder = new IOParser.Decoder(OrgJsonCodec.INSTANCE, new DecoderLimits(0, 0, 0, 4));
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+
+        decoder.add("52-[\"foo\",{\"_placeholder\":true,\"num\":0},{\"_placeholder\":true,\"num\":1}]");
+        decoder.add(new byte[3]);
+        try {
+            decoder.add(new byte[3]);
+            fail();
+        } catch (DecodingLimitException ignore) {
+        }
+        assertNull(decoder.reconstructor);
+        assertNull(result[0]);
+
+        // Decoder accepts packets again after rejecting one
+        decoder.add("2[\"foo\"]");
+        assertNotNull(result[0]);
+    }
+
+    @Test
+    public void test_decode_lazy_event() {
+        final IOParser.Decoder decoder = new IOParser.Decoder(OrgJsonCodec.INSTANCE, DecoderLimits.UNLIMITED, true);
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+
+        decoder.add("2/admin,5[ \"foo\",{\"bar\":1}]");
+        assertEquals("/admin", result[0].nsp);
+        assertEquals(5, result[0].id);
+        final LazyEventPayload payload = (LazyEventPayload) result[0].data;
+        assertEquals("foo", payload.getEvent());
+        assertEquals(1, ((JSONArray) payload.resolve()).getJSONObject(1).getInt("bar"));
+
+        // Escaped names are parsed eagerly
+        decoder.add("2[\"fo\\\"o\"]");
+        assertEquals("fo\"o", ((JSONArray) result[0].data).getString(0));
+
+        // Invalid payloads are only detected once resolved
+        decoder.add("2[\"foo\",");
+        try {
+            ((LazyEventPayload) result[0].data).resolve();
+            fail();
+        } catch (DecodingException ignore) {
+        }
+    }
+
+    @Test
+    public void test_encode_without_binary_shares_data() {
+        final JSONArray data = new JSONArray().put("foo").put(new JSONObject().put("bar", new JSONArray().put(1)));
+        final Packet<JSONArray> packet = new Packet<>(Parser.EVENT, data);
+
+        final Object[] encoded = encode(packet);
+        assertEquals(1, encoded.length);
+        assertEquals("2[\"foo\",{\"bar\":[1]}]", encoded[0]);
+        assertSame(data, packet.data);
+    }
+
+    @Test
+    public void test_encode_binary_copies_path_only() {
+        final byte[] binary = new byte[] { 1, 2 };
+        final JSONObject plain = new JSONObject().put("bar", 1);
+        final JSONObject withBinary = new JSONObject().put("bin", binary).put("baz", plain);
+        final JSONArray data = new JSONArray().put("foo").put(plain).put(withBinary);
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, data);
+
+        final Object[] encoded = encode(packet);
+        assertEquals(2, encoded.length);
+        assertEquals(Parser.BINARY_EVENT, packet.type);
+        assertSame(binary, encoded[1]);
+
+        // Source data is untouched and subtrees without binary are shared
+        assertSame(binary, withBinary.get("bin"));
+        final JSONArray deconstructed = (JSONArray) packet.data;
+        assertNotSame(data, deconstructed);
+        assertSame(plain, deconstructed.get(1));
+        assertSame(plain, deconstructed.getJSONObject(2).get("baz"));
+        assertTrue(deconstructed.getJSONObject(2).getJSONObject("bin").getBoolean("_placeholder"));
+    }
+
+    @Test
+    public void test_encode_byte_buffer() {
+        final byte[] array = new byte[] { 1, 2, 3, 4 };
+        final ByteBuffer heap = ByteBuffer.wrap(array);
+        final ByteBuffer direct = ByteBuffer.allocateDirect(4);
+        direct.put(array).flip();
+        final ByteBuffer slice = ByteBuffer.wrap(array, 1, 2).slice().asReadOnlyBuffer();
+
+        final Object data = OrgJsonCodec.INSTANCE.createArray(new Object[] { "foo", heap, direct, slice });
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, data);
+
+        final Object[] encoded = encode(packet);
+        assertEquals(4, encoded.length);
+        assertEquals("53-[\"foo\",{\"_placeholder\":true,\"num\":0},{\"_placeholder\":true,\"num\":1},{\"_placeholder\":true,\"num\":2}]", encoded[0]);
+
+        // Backing array is used as is when it holds exactly the buffer contents
+        assertSame(array, encoded[1]);
+        assertArrayEquals(array, (byte[]) encoded[2]);
+        assertArrayEquals(new byte[] { 2, 3 }, (byte[]) encoded[3]);
+
+        // Buffers can be sent again
+        assertEquals(0, direct.position());
+        assertEquals(2, slice.remaining());
+    }
+
+    @Test
+    public void test_encode_raw_json() {
+        final Map<String, Object> map = new HashMap<>();
+        map.put("raw", new RawJson("{\"a\":[1,2]}"));
+        final Object data = OrgJsonCodec.INSTANCE.createArray(new Object[] { "foo", new RawJson("[true,null]"), OrgJsonCodec.INSTANCE.createObject(map), new byte[] { 1 } });
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, data);
+
+        final Object[] encoded = encode(packet);
+        assertEquals(2, encoded.length);
+        assertEquals("51-[\"foo\",[true,null],{\"raw\":{\"a\":[1,2]}},{\"_placeholder\":true,\"num\":0}]", encoded[0]);
+
+        // Raw json is trusted and not validated
+        final Packet<Object> invalid = new Packet<>(Parser.EVENT, OrgJsonCodec.INSTANCE.createArray(new Object[] { "foo", new RawJson("{") }));
+        assertEquals("2[\"foo\",{]", encode(invalid)[0]);
+    }
+
+    @Test
+    public void test_encode_reuses_buffer() {
+        final char[] chars = new char[100 * 1024];
+        Arrays.fill(chars, 'a');
+        final String large = new String(chars);
+
+        final Packet<Object> first = new Packet<>(Parser.EVENT, new JSONArray().put("foo").put(large));
+        first.nsp = "/chat";
+        assertEquals("2/chat,[\"foo\",\"" + large + "\"]", encode(first)[0]);
+
+        final Packet<Object> second = new Packet<>(Parser.ACK, new JSONArray().put(1));
+        second.id = 12;
+        assertEquals("312[1]", encode(second)[0]);
+
+        // Encoding from within the callback of another encode
+        final Object[][] nested = new Object[1][];
+        new IOParser.Encoder().encode(new Packet<>(Parser.EVENT, new JSONArray().put("outer").put(new byte[1])), outer -> {
+            assertEquals("51-[\"outer\",{\"_placeholder\":true,\"num\":0}]", outer[0]);
+            nested[0] = encode(new Packet<>(Parser.EVENT, new JSONArray().put("inner")));
+            assertEquals(2, outer.length);
+        });
+        assertEquals("2[\"inner\"]", nested[0][0]);
+    }
+
+    private static Object[] encode(Packet<?> packet) {
+        final Object[][] result = new Object[1][];
+        new IOParser.Encoder().encode(packet, data -> result[0] = data);
+        return result[0];
+    }
+
+    private static Packet<?> decode(String str) {
+        final IOParser.Decoder decoder = new IOParser.Decoder();
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+        decoder.add(str);
+        return result[0];
+    }
+}
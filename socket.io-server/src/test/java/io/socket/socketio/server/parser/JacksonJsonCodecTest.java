@@ -0,0 +1,181 @@
+package io.socket.socketio.server.parser;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.Test;
+
+import java.util.Collections;
+
+import static org.junit.Assert.*;
+
+public final class JacksonJsonCodecTest {
+
+    private final JacksonJsonCodec mCodec = new JacksonJsonCodec();
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_constructor_null() {
+        new JacksonJsonCodec(null);
+    }
+
+    @Test
+    public void test_createArray() {
+        final ArrayNode array = (ArrayNode) mCodec.createArray(new Object[] { "foo", 1, 2L, 1.5, true, null });
+        assertEquals("[\"foo\",1,2,1.5,true,null]", mCodec.serialize(array));
+        assertEquals(6, mCodec.getArrayLength(array));
+        assertEquals("foo", mCodec.getArrayElement(array, 0));
+        assertEquals(1, mCodec.getArrayElement(array, 1));
+        assertEquals(true, mCodec.getArrayElement(array, 4));
+        assertNull(mCodec.getArrayElement(array, 5));
+        assertEquals(-1, mCodec.getArrayLength(mCodec.createObject(Collections.emptyMap())));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_createArray_invalid() {
+        mCodec.createArray(new Object[] { new Object() });
+    }
+
+    @Test
+    public void test_parse_offset() throws DecodingException {
+        final Object value = mCodec.parse("2/admin,{\"foo\":\"bar\"}", 8);
+        assertTrue(mCodec.isObject(value));
+        assertEquals("bar", ((ObjectNode) value).get("foo").textValue());
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_parse_invalid() throws DecodingException {
+        mCodec.parse("{\"foo\"", 0);
+    }
+
+    @Test
+    public void test_encode_decode_event() {
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, mCodec.createArray(new Object[] { "foo", 1 }));
+        packet.nsp = "/admin";
+        packet.id = 3;
+
+        final Object[][] encoded = new Object[1][];
+        new IOParser.Encoder(mCodec).encode(packet, data -> encoded[0] = data);
+        assertEquals(1, encoded[0].length);
+        assertEquals("2/admin,3[\"foo\",1]", encoded[0][0]);
+
+        final Packet<?> decoded = decode((String) encoded[0][0]);
+        assertEquals(Parser.EVENT, decoded.type);
+        assertEquals("/admin", decoded.nsp);
+        assertEquals(3, decoded.id);
+        assertEquals("foo", ((JsonNode) decoded.data).get(0).textValue());
+    }
+
+    @Test
+    public void test_raw_json() {
+        final RawJson raw = new RawJson("{\"a\":[1,2]}");
+        final Object data = mCodec.createArray(new Object[] { "foo", raw });
+
+        final Object[][] encoded = new Object[1][];
+        new IOParser.Encoder(mCodec).encode(new Packet<>(Parser.EVENT, data), result -> encoded[0] = result);
+        assertEquals("2[\"foo\",{\"a\":[1,2]}]", encoded[0][0]);
+        assertEquals(raw, mCodec.getArrayElement(data, 1));
+
+        // Whole packet data
+        new IOParser.Encoder(mCodec).encode(new Packet<>(Parser.EVENT, new RawJson("[\"foo\",1]")), result -> encoded[0] = result);
+        assertEquals("2[\"foo\",1]", encoded[0][0]);
+    }
+
+    @Test
+    public void test_encode_decode_binary() {
+        final byte[] binary = new byte[] { 1, 2, 3 };
+        final Object data = mCodec.createArray(new Object[] { "foo", binary });
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, data);
+        assertTrue(mCodec.hasBinary(data));
+
+        final Object[][] encoded = new Object[1][];
+        new IOParser.Encoder(mCodec).encode(packet, result -> encoded[0] = result);
+        assertEquals(2, encoded[0].length);
+        assertEquals("51-[\"foo\",{\"_placeholder\":true,\"num\":0}]", encoded[0][0]);
+        assertArrayEquals(binary, (byte[]) encoded[0][1]);
+
+        // Source value must not be modified by encoding
+        assertArrayEquals(binary, (byte[]) mCodec.getArrayElement(data, 1));
+
+        final IOParser.Decoder decoder = new IOParser.Decoder(mCodec);
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(decoded -> result[0] = decoded);
+        decoder.add((String) encoded[0][0]);
+        decoder.add((byte[]) encoded[0][1]);
+
+        assertNotNull(result[0]);
+        assertEquals(Parser.BINARY_EVENT, result[0].type);
+        assertArrayEquals(binary, (byte[]) mCodec.getArrayElement(result[0].data, 1));
+    }
+
+    @Test
+    public void test_pojo() throws DecodingException {
+        final Order order = new Order();
+        order.id = "a1";
+        order.quantity = 3;
+
+        final Object data = mCodec.createArray(new Object[] { "order", order });
+        assertEquals("[\"order\",{\"id\":\"a1\",\"quantity\":3}]", mCodec.serialize(data));
+
+        final Order converted = mCodec.toObject(mCodec.getArrayElement(data, 1), Order.class);
+        assertEquals("a1", converted.id);
+        assertEquals(3, converted.quantity);
+
+        final Order parsed = mCodec.parseArrayElement("2[\"order\",{\"id\":\"b2\",\"quantity\":5},[1,[2]]]", 1, 1, Order.class);
+        assertEquals("b2", parsed.id);
+        assertEquals(5, parsed.quantity);
+        assertEquals(Integer.valueOf(2), mCodec.parseArrayElement("[\"foo\",{\"a\":[1]},2]", 0, 2, Integer.class));
+        assertNull(mCodec.parseArrayElement("[\"order\"]", 0, 1, Order.class));
+    }
+
+    @Test
+    public void test_pojo_written_at_encode() {
+        final Order order = new Order();
+        order.id = "a1";
+        order.quantity = 3;
+
+        // No tree is built for the object until it is written
+        final ArrayNode data = (ArrayNode) mCodec.createArray(new Object[] { "order", order });
+        assertTrue(data.get(1).isPojo());
+        assertSame(order, mCodec.getArrayElement(data, 1));
+
+        final Object[][] encoded = new Object[1][];
+        new IOParser.Encoder(mCodec).encode(new Packet<>(Parser.EVENT, data), result -> encoded[0] = result);
+        assertArrayEquals(new Object[] { "2[\"order\",{\"id\":\"a1\",\"quantity\":3}]" }, encoded[0]);
+    }
+
+    @Test
+    public void test_map_binary() {
+        final byte[] binary = new byte[] { 1, 2, 3 };
+        final Object data = mCodec.createArray(new Object[] { "file", Collections.singletonMap("content", binary) });
+        assertTrue(mCodec.hasBinary(data));
+
+        final Object[][] encoded = new Object[1][];
+        new IOParser.Encoder(mCodec).encode(new Packet<>(Parser.EVENT, data), result -> encoded[0] = result);
+        assertEquals("51-[\"file\",{\"content\":{\"_placeholder\":true,\"num\":0}}]", encoded[0][0]);
+        assertArrayEquals(binary, (byte[]) encoded[0][1]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_pojo_mismatch() throws DecodingException {
+        mCodec.parseArrayElement("[\"order\",{\"id\":\"b2\",\"quantity\":\"many\"}]", 0, 1, Order.class);
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_pojo_invalid_json() throws DecodingException {
+        mCodec.parseArrayElement("[\"order\",{\"id\"", 0, 1, Order.class);
+    }
+
+    public static final class Order {
+
+        public String id;
+        public int quantity;
+    }
+
+    private Packet<?> decode(String str) {
+        final IOParser.Decoder decoder = new IOParser.Decoder(mCodec);
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+        decoder.add(str);
+        return result[0];
+    }
+}
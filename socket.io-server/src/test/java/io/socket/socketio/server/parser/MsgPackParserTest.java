@@ -0,0 +1,235 @@
+package io.socket.socketio.server.parser;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.Assert.*;
+
+public final class MsgPackParserTest {
+
+    @Test
+    public void test_decode_event() {
+        // notepack.encode({ type: 2, data: ["hello", 1], nsp: "/" })
+        final Packet<?> packet = decode(bytes(
+                0x83,
+                0xa4, 't', 'y', 'p', 'e', 0x02,
+                0xa4, 'd', 'a', 't', 'a', 0x92, 0xa5, 'h', 'e', 'l', 'l', 'o', 0x01,
+                0xa3, 'n', 's', 'p', 0xa1, '/'));
+
+        assertEquals(Parser.EVENT, packet.type);
+        assertEquals("/", packet.nsp);
+        assertEquals(-1, packet.id);
+        assertEquals("hello", ((JSONArray) packet.data).getString(0));
+        assertEquals(1, ((JSONArray) packet.data).getInt(1));
+    }
+
+    @Test
+    public void test_decode_connect_undefined_data() {
+        // notepack.encode({ type: 0, nsp: "/admin", data: undefined }) skips undefined properties,
+        // but undefined values inside arrays use the fixext 0 extension
+        Packet<?> packet = decode(bytes(
+                0x82,
+                0xa4, 't', 'y', 'p', 'e', 0x00,
+                0xa3, 'n', 's', 'p', 0xa6, '/', 'a', 'd', 'm', 'i', 'n'));
+        assertEquals(Parser.CONNECT, packet.type);
+        assertEquals("/admin", packet.nsp);
+        assertNull(packet.data);
+
+        packet = decode(bytes(
+                0x84,
+                0xa4, 't', 'y', 'p', 'e', 0x03,
+                0xa4, 'd', 'a', 't', 'a', 0x91, 0xd4, 0x00, 0x00,
+                0xa3, 'n', 's', 'p', 0xa1, '/',
+                0xa2, 'i', 'd', 0x07));
+        assertEquals(Parser.ACK, packet.type);
+        assertEquals(7, packet.id);
+        assertTrue(((JSONArray) packet.data).isNull(0));
+    }
+
+    @Test
+    public void test_decode_invalid() {
+        assertDecodeError("invalid packet type", bytes(
+                0x82,
+                0xa4, 't', 'y', 'p', 'e', 0x05,
+                0xa3, 'n', 's', 'p', 0xa1, '/'));
+        assertDecodeError("invalid namespace", bytes(
+                0x81,
+                0xa4, 't', 'y', 'p', 'e', 0x01));
+        assertDecodeError("invalid payload", bytes(
+                0x83,
+                0xa4, 't', 'y', 'p', 'e', 0x02,
+                0xa4, 'd', 'a', 't', 'a', 0x90,
+                0xa3, 'n', 's', 'p', 0xa1, '/'));
+        assertDecodeError("invalid packet id", bytes(
+                0x84,
+                0xa4, 't', 'y', 'p', 'e', 0x03,
+                0xa4, 'd', 'a', 't', 'a', 0x90,
+                0xa3, 'n', 's', 'p', 0xa1, '/',
+                0xa2, 'i', 'd', 0xa1, '1'));
+        assertDecodeError("invalid packet format", bytes(0x92, 0x01, 0x02));
+        assertDecodeError("invalid packet format", bytes(0x83, 0xa4));
+    }
+
+    @Test
+    public void test_decode_limits() {
+        final MsgPackParser.Decoder decoder = new MsgPackParser.Decoder(OrgJsonCodec.INSTANCE, new DecoderLimits(0, 0, 1, 0));
+        try {
+            // { type: 2, data: ["a", [1]], nsp: "/" }
+            decoder.add(bytes(
+                    0x83,
+                    0xa4, 't', 'y', 'p', 'e', 0x02,
+                    0xa4, 'd', 'a', 't', 'a', 0x92, 0xa1, 'a', 0x91, 0x01,
+                    0xa3, 'n', 's', 'p', 0xa1, '/'));
+            fail();
+        } catch (DecodingLimitException ignore) {
+        }
+
+        try {
+            new MsgPackParser.Decoder(OrgJsonCodec.INSTANCE, new DecoderLimits(4, 0, 0, 0)).add(new byte[5]);
+            fail();
+        } catch (DecodingLimitException ignore) {
+        }
+
+        // Array header claiming 2^32-1 items in a tiny frame
+        assertDecodeError("invalid packet format", bytes(
+                0x81,
+                0xa4, 'd', 'a', 't', 'a', 0xdd, 0xff, 0xff, 0xff, 0xff));
+    }
+
+    @Test(expected = DecodingException.class)
+    public void test_decode_string() {
+        new MsgPackParser.Decoder().add("2[\"foo\"]");
+    }
+
+    @Test
+    public void test_encode_decode_binary() {
+        final byte[] binary = new byte[] { 1, 2, 3 };
+        final JSONObject object = new JSONObject();
+        object.put("bin", binary);
+        object.put("num", 1.5);
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, new JSONArray().put("foo").put(object));
+        packet.nsp = "/admin";
+        packet.id = 9;
+
+        final Object[] encoded = encode(new MsgPackParser.Encoder(), packet);
+        assertEquals(1, encoded.length);
+        assertTrue(encoded[0] instanceof byte[]);
+
+        final Packet<?> decoded = decode((byte[]) encoded[0]);
+        assertEquals(Parser.EVENT, decoded.type);
+        assertEquals("/admin", decoded.nsp);
+        assertEquals(9, decoded.id);
+
+        final JSONArray data = (JSONArray) decoded.data;
+        assertEquals("foo", data.getString(0));
+        assertArrayEquals(binary, (byte[]) data.getJSONObject(1).get("bin"));
+        assertEquals(1.5, data.getJSONObject(1).getDouble("num"), 0);
+    }
+
+    @Test
+    public void test_encode_byte_buffer() {
+        final ByteBuffer direct = ByteBuffer.allocateDirect(3);
+        direct.put(new byte[] { 7, 8, 9 }).flip();
+        final ByteBuffer slice = ByteBuffer.wrap(new byte[] { 1, 2, 3, 4 }, 1, 2).slice();
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, OrgJsonCodec.INSTANCE.createArray(new Object[] { "foo", direct, slice }));
+
+        final JSONArray data = (JSONArray) decode((byte[]) encode(new MsgPackParser.Encoder(), packet)[0]).data;
+        assertArrayEquals(new byte[] { 7, 8, 9 }, (byte[]) data.get(1));
+        assertArrayEquals(new byte[] { 2, 3 }, (byte[]) data.get(2));
+        assertEquals(0, direct.position());
+    }
+
+    @Test
+    public void test_encode_raw_json() {
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, OrgJsonCodec.INSTANCE.createArray(new Object[] { "foo", new RawJson("{\"a\":[1,2]}"), new RawJson("null") }));
+
+        final JSONArray data = (JSONArray) decode((byte[]) encode(new MsgPackParser.Encoder(), packet)[0]).data;
+        assertEquals(2, data.getJSONObject(1).getJSONArray("a").getInt(1));
+        assertTrue(data.isNull(2));
+
+        final Packet<Object> invalid = new Packet<>(Parser.EVENT, OrgJsonCodec.INSTANCE.createArray(new Object[] { "foo", new RawJson("{") }));
+        try {
+            encode(new MsgPackParser.Encoder(), invalid);
+            fail();
+        } catch (IllegalArgumentException ignore) {
+        }
+    }
+
+    @Test
+    public void test_encode_binary_type() {
+        final Packet<Object> packet = new Packet<>(Parser.BINARY_ACK, new JSONArray().put(new byte[1]));
+        packet.id = 1;
+
+        final Packet<?> decoded = decode((byte[]) encode(new MsgPackParser.Encoder(), packet)[0]);
+        assertEquals(Parser.ACK, decoded.type);
+        assertEquals(1, decoded.id);
+    }
+
+    @Test
+    public void test_encode_size() {
+        final byte[] binary = new byte[256];
+        final Packet<Object> ioPacket = new Packet<>(Parser.EVENT, new JSONArray().put("foo").put(binary).put(binary));
+        final Packet<Object> msgPackPacket = new Packet<>(Parser.EVENT, new JSONArray().put("foo").put(binary).put(binary));
+
+        final Object[] ioEncoded = encode(new IOParser.Encoder(), ioPacket);
+        final Object[] msgPackEncoded = encode(new MsgPackParser.Encoder(), msgPackPacket);
+        assertEquals(3, ioEncoded.length);
+        assertEquals(1, msgPackEncoded.length);
+
+        int ioSize = 0;
+        for (Object frame : ioEncoded) {
+            ioSize += (frame instanceof String)? ((String) frame).length() : ((byte[]) frame).length;
+        }
+        assertTrue(((byte[]) msgPackEncoded[0]).length < ioSize);
+    }
+
+    @Test
+    public void test_jackson_codec() {
+        final JacksonJsonCodec codec = new JacksonJsonCodec();
+        final Packet<Object> packet = new Packet<>(Parser.EVENT, codec.createArray(new Object[] { "foo", 1, new byte[] { 4 } }));
+
+        final Object[] encoded = encode(new MsgPackParser.Encoder(codec), packet);
+        final Packet<?>[] result = new Packet<?>[1];
+        final MsgPackParser.Decoder decoder = new MsgPackParser.Decoder(codec);
+        decoder.onDecoded(decoded -> result[0] = decoded);
+        decoder.add((byte[]) encoded[0]);
+
+        assertEquals("foo", codec.getArrayElement(result[0].data, 0));
+        assertEquals(1, codec.getArrayElement(result[0].data, 1));
+        assertArrayEquals(new byte[] { 4 }, (byte[]) codec.getArrayElement(result[0].data, 2));
+    }
+
+    private static Object[] encode(Parser.Encoder encoder, Packet<?> packet) {
+        final Object[][] result = new Object[1][];
+        encoder.encode(packet, data -> result[0] = data);
+        return result[0];
+    }
+
+    private static Packet<?> decode(byte[] bytes) {
+        final MsgPackParser.Decoder decoder = new MsgPackParser.Decoder();
+        final Packet<?>[] result = new Packet<?>[1];
+        decoder.onDecoded(packet -> result[0] = packet);
+        decoder.add(bytes);
+        return result[0];
+    }
+
+    private static void assertDecodeError(String message, byte[] bytes) {
+        try {
+            decode(bytes);
+            fail("Expected decoding to fail with " + message);
+        } catch (DecodingException e) {
+            assertEquals(message, e.getMessage());
+        }
+    }
+
+    private static byte[] bytes(int... values) {
+        final byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+}
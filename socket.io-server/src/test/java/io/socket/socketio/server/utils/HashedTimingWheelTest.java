@@ -0,0 +1,146 @@
+package io.socket.socketio.server.utils;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public final class HashedTimingWheelTest {
+
+    private ScheduledExecutorService mExecutor;
+
+    @Before
+    public void setUp() {
+        mExecutor = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @After
+    public void tearDown() {
+        mExecutor.shutdownNow();
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void test_constructor_invalid_tick() {
+        new HashedTimingWheel(mExecutor, 0, TimeUnit.MILLISECONDS, 16);
+    }
+
+    @Test
+    public void test_timeout_fires_after_deadline() throws InterruptedException {
+        final HashedTimingWheel wheel = new HashedTimingWheel(mExecutor, 10, TimeUnit.MILLISECONDS, 8);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final long start = System.nanoTime();
+        // Longer than one revolution of the wheel
+        wheel.newTimeout(latch::countDown, 150, TimeUnit.MILLISECONDS);
+        assertEquals(1, wheel.getPendingCount());
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) >= 150);
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void test_cancel() throws InterruptedException {
+        final HashedTimingWheel wheel = new HashedTimingWheel(mExecutor, 10, TimeUnit.MILLISECONDS, 8);
+        final AtomicInteger cancelledRuns = new AtomicInteger(0);
+        final CountDownLatch latch = new CountDownLatch(1);
+
+        final HashedTimingWheel.Timeout timeout = wheel.newTimeout(cancelledRuns::incrementAndGet, 20, TimeUnit.MILLISECONDS);
+        wheel.newTimeout(latch::countDown, 60, TimeUnit.MILLISECONDS);
+        assertTrue(timeout.cancel());
+        assertFalse(timeout.cancel());
+        assertEquals(1, wheel.getPendingCount());
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+        assertEquals(0, cancelledRuns.get());
+    }
+
+    @Test
+    public void test_restart_after_idle() throws InterruptedException {
+        final HashedTimingWheel wheel = new HashedTimingWheel(mExecutor, 10, TimeUnit.MILLISECONDS, 8);
+
+        final CountDownLatch latch1 = new CountDownLatch(1);
+        wheel.newTimeout(latch1::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(latch1.await(2, TimeUnit.SECONDS));
+
+        Thread.sleep(100);
+
+        final CountDownLatch latch2 = new CountDownLatch(1);
+        wheel.newTimeout(latch2::countDown, 10, TimeUnit.MILLISECONDS);
+        assertTrue(latch2.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_many_timeouts() throws InterruptedException {
+        final HashedTimingWheel wheel = new HashedTimingWheel(mExecutor, 1, TimeUnit.MILLISECONDS, 64);
+        final int count = 100000;
+        final CountDownLatch latch = new CountDownLatch(count / 2);
+
+        for (int i = 0; i < count; i++) {
+            final HashedTimingWheel.Timeout timeout = wheel.newTimeout(latch::countDown, i % 100, TimeUnit.MILLISECONDS);
+            if ((i % 2) == 1) {
+                timeout.cancel();
+            }
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, wheel.getPendingCount());
+    }
+
+    @Test
+    public void test_task_runs_outside_lock() throws InterruptedException {
+        final HashedTimingWheel wheel = new HashedTimingWheel(mExecutor, 10, TimeUnit.MILLISECONDS, 8);
+        final CountDownLatch running = new CountDownLatch(1);
+        final CountDownLatch scheduled = new CountDownLatch(1);
+
+        wheel.newTimeout(() -> {
+            running.countDown();
+            try {
+                scheduled.await(2, TimeUnit.SECONDS);
+            } catch (InterruptedException ignore) {
+            }
+        }, 10, TimeUnit.MILLISECONDS);
+        assertTrue(running.await(2, TimeUnit.SECONDS));
+
+        // Restarts the wheel while the task is running
+        final CountDownLatch latch = new CountDownLatch(1);
+        wheel.newTimeout(latch::countDown, 10, TimeUnit.MILLISECONDS);
+        scheduled.countDown();
+
+        assertTrue(latch.await(2, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void test_concurrent_timeouts() throws InterruptedException {
+        final HashedTimingWheel wheel = new HashedTimingWheel(mExecutor, 1, TimeUnit.MILLISECONDS, 8);
+        final int threadCount = 4;
+        final int count = 10000;
+        final CountDownLatch latch = new CountDownLatch(threadCount * count);
+
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < threadCount; i++) {
+            final Thread thread = new Thread(() -> {
+                for (int j = 0; j < count; j++) {
+                    wheel.newTimeout(latch::countDown, j % 3, TimeUnit.MILLISECONDS);
+                }
+            });
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        assertTrue(latch.await(5, TimeUnit.SECONDS));
+        assertEquals(0, wheel.getPendingCount());
+    }
+}